@@ -0,0 +1,55 @@
+package com.example.ems.benchmarks;
+
+import com.example.ems.dto.EmployeeData;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Jackson cost of an EmployeeData request or response body, reading goes through the @JsonDeserialize builder
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+    private ObjectReader reader;
+
+    private ObjectWriter writer;
+
+    private EmployeeData employeeData;
+
+    private byte[] json;
+
+    @Setup
+    public void setUp() throws IOException {
+        // configured like the application's ObjectMapper, the builder's constructor needs the parameter names module
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().modulesToInstall(new ParameterNamesModule()).build();
+        reader = objectMapper.readerFor(EmployeeData.class);
+        writer = objectMapper.writerFor(EmployeeData.class);
+
+        employeeData = new EmployeeData.EmployeeDataBuilder(1L, "John", "Doe", "John.Doe@gmail.com")
+                .setAge(25)
+                .setPhone("012345678910")
+                .setVersion(3L)
+                .build();
+        json = writer.writeValueAsBytes(employeeData);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return writer.writeValueAsBytes(employeeData);
+    }
+
+    @Benchmark
+    public EmployeeData deserialize() throws IOException {
+        return reader.readValue(json);
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.ems.benchmarks;
+
+import com.example.ems.dto.EmployeeData;
+import com.example.ems.entity.Employee;
+import com.example.ems.mapper.EmployeeMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Cost of copying between the entity and the DTO, paid for every employee of every response
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapperBenchmark {
+
+    private Employee employee;
+
+    private EmployeeData employeeData;
+
+    @Setup
+    public void setUp() {
+        employee = new Employee(1L, "John", "Doe", "John.Doe@gmail.com", 25, "012345678910", 3L);
+        employeeData = EmployeeMapper.mapToEmployeeData(employee);
+    }
+
+    @Benchmark
+    public EmployeeData mapToEmployeeData() {
+        return EmployeeMapper.mapToEmployeeData(employee);
+    }
+
+    @Benchmark
+    public Employee mapToEmployee() {
+        return EmployeeMapper.mapToEmployee(employeeData);
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.ems.benchmarks;
+
+import com.example.ems.dto.EmployeeData;
+import com.example.ems.entity.Employee;
+import com.example.ems.offheap.OffHeapEmployeeStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// What holding 1M employees costs the heap and the garbage collector: the OffHeapEmployeeStore of the offheap profile
+// against a HashMap<Long, Employee> of entities. Setup prints the heap and direct memory each one retains. fullGc times a
+// full collection while they are alive, which has to trace every object of the map, and get reads one employee by id.
+// The map's strings are separate copies per employee, like rows read from JDBC
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class OffHeapStoreBenchmark {
+
+    private static final String[] FIRST_NAMES = {"James", "Mary", "John", "Patricia", "Robert", "Jennifer", "Michael",
+            "Linda", "William", "Elizabeth", "David", "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas", "Sarah",
+            "Charles", "Karen", "Daniel", "Nancy", "Matthew", "Lisa", "Anthony", "Betty", "Mark", "Margaret", "Donald", "Sandra"};
+
+    private static final String[] LAST_NAMES = {"Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller",
+            "Davis", "Rodriguez", "Martinez", "Hernandez", "Lopez", "Gonzalez", "Wilson", "Anderson", "Thomas", "Taylor",
+            "Moore", "Jackson", "Martin", "Lee", "Perez", "Thompson", "White", "Harris", "Sanchez", "Clark", "Ramirez"};
+
+    @Param("1000000")
+    public int employees;
+
+    @Param({"heap", "offheap"})
+    public String store;
+
+    private Map<Long, Employee> map;
+
+    private OffHeapEmployeeStore offHeapStore;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        long heapBefore = usedHeap();
+        long directBefore = directMemory();
+
+        Random random = new Random(42);
+        if (store.equals("heap")) {
+            map = new HashMap<>();
+            for (long id = 1; id <= employees; id++) {
+                EmployeeData employee = employee(id, random);
+                map.put(id, new Employee(id, new String(employee.getFirstName()), new String(employee.getLastName()),
+                        employee.getEmail(), employee.getAge(), employee.getPhone(), 0L));
+            }
+        } else {
+            offHeapStore = new OffHeapEmployeeStore(employees);
+            for (long id = 1; id <= employees; id++) {
+                offHeapStore.insert(employee(id, random));
+            }
+        }
+
+        System.out.printf("%n%s: %d employees retain %d MB of heap and %d MB of direct memory%n", store, employees,
+                (usedHeap() - heapBefore) / (1024 * 1024), (directMemory() - directBefore) / (1024 * 1024));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 10)
+    public void fullGc() {
+        System.gc();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Object get() {
+        long id = ThreadLocalRandom.current().nextLong(1, employees + 1);
+        return map != null ? map.get(id) : offHeapStore.get(id);
+    }
+
+    private static EmployeeData employee(long id, Random random) {
+        String firstName = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+        String lastName = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+        return new EmployeeData.EmployeeDataBuilder(id, firstName, lastName,
+                firstName.toLowerCase() + "." + lastName.toLowerCase() + id + "@gmail.com")
+                .setAge(20 + random.nextInt(45))
+                .setPhone(String.format("0123%08d", id))
+                .build();
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long directMemory() {
+        return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> pool.getName().equals("direct"))
+                .mapToLong(BufferPoolMXBean::getMemoryUsed)
+                .sum();
+    }
+}
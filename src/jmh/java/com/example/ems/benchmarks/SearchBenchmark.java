@@ -0,0 +1,66 @@
+package com.example.ems.benchmarks;
+
+import com.example.ems.dto.EmployeeData;
+import com.example.ems.dto.EmployeeSearchResult;
+import com.example.ems.search.EmployeeSearchIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Latency of GET /api/employees/search at 1M employees, from a one letter prefix that matches a large part of the
+// table down to a full name. Names are drawn from small pools so that common prefixes have many employees behind them
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SearchBenchmark {
+
+    private static final String[] FIRST_NAMES = {"James", "Mary", "John", "Patricia", "Robert", "Jennifer", "Michael",
+            "Linda", "William", "Elizabeth", "David", "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas", "Sarah",
+            "Charles", "Karen", "Daniel", "Nancy", "Matthew", "Lisa", "Anthony", "Betty", "Mark", "Margaret", "Donald", "Sandra"};
+
+    private static final String[] DOMAINS = {"gmail.com", "yahoo.com", "outlook.com", "example.com", "acme.org"};
+
+    @Param("1000000")
+    public int employees;
+
+    @Param({"j", "jo", "john", "john smi", "john.smith12@gm"})
+    public String query;
+
+    private EmployeeSearchIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        index = new EmployeeSearchIndex();
+        Random random = new Random(42);
+        for (long id = 1; id <= employees; id++) {
+            String firstName = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+            String lastName = lastName(random.nextInt(5000));
+            String email = firstName.toLowerCase() + "." + lastName.toLowerCase() + id + "@" + DOMAINS[random.nextInt(DOMAINS.length)];
+            index.put(new EmployeeData.EmployeeDataBuilder(id, firstName, lastName, email).build());
+        }
+    }
+
+    @Benchmark
+    public List<EmployeeSearchResult> search() {
+        return index.search(query, 10);
+    }
+
+    // pronounceable last names, Smith among them
+    private static String lastName(int n) {
+        if (n == 0) {
+            return "Smith";
+        }
+        String[] syllables = {"ba", "ko", "ri", "sen", "ta", "mul", "der", "ve", "lan", "son", "ham", "ti"};
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 3; i++) {
+            name.append(syllables[n % syllables.length]);
+            n /= syllables.length;
+        }
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.ems.benchmarks;
+
+import com.example.ems.EmployeeManagementSystem;
+import com.example.ems.dto.EmployeeData;
+import com.example.ems.dto.EmployeeFields;
+import com.example.ems.dto.EmployeeFilter;
+import com.example.ems.dto.EmployeeLookup;
+import com.example.ems.dto.EmployeePage;
+import com.example.ems.service.EmployeeService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+// EmployeeService methods end to end through JPA against an in-memory H2 database seeded with EMPLOYEES employees
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceBenchmark {
+
+    private static final int EMPLOYEES = 10_000;
+
+    private static final EmployeeFilter NO_FILTER = new EmployeeFilter(null, null, null, null, null);
+
+    private static final List<String> ID_AND_EMAIL = List.of("id", "email");
+
+    private ConfigurableApplicationContext context;
+
+    private EmployeeService employeeService;
+
+    private List<Long> employeeIds;
+
+    @Setup
+    public void setUp() {
+        // command line arguments, so they win over the test application.properties on the benchmark classpath
+        context = new SpringApplicationBuilder(EmployeeManagementSystem.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:benchmark",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.jpa.show-sql=false",
+                        "--spring.jpa.properties.hibernate.generate_statistics=false",
+                        "--ems.batch.chunk-size=500",
+                        "--logging.level.root=WARN");
+        employeeService = context.getBean(EmployeeService.class);
+
+        List<EmployeeData> employees = new ArrayList<>(EMPLOYEES);
+        for (int i = 0; i < EMPLOYEES; i++) {
+            employees.add(new EmployeeData.EmployeeDataBuilder(null, "First" + i, "Last" + i, "employee" + i + "@example.com")
+                    .setAge(20 + i % 45)
+                    .setPhone("012345678910")
+                    .build());
+        }
+        employeeIds = employeeService.createEmployees(employees).stream()
+                .map(EmployeeData::getId)
+                .collect(Collectors.toList());
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public EmployeeData getEmployeeById() {
+        return employeeService.getEmployeeById(randomId());
+    }
+
+    @Benchmark
+    public List<EmployeeData> getAllEmployees() {
+        return employeeService.getAllEmployees();
+    }
+
+    @Benchmark
+    public List<EmployeeFields> findEmployeeFields() {
+        return employeeService.findEmployeeFields(NO_FILTER, ID_AND_EMAIL);
+    }
+
+    @Benchmark
+    public EmployeePage getEmployeePage() {
+        return employeeService.getEmployeePage(ThreadLocalRandom.current().nextInt(EMPLOYEES / 50), 50);
+    }
+
+    @Benchmark
+    public EmployeeLookup getEmployeesByIds() {
+        return employeeService.getEmployeesByIds(LongStream.range(0, 50)
+                .mapToObj(i -> randomId())
+                .collect(Collectors.toList()));
+    }
+
+    @Benchmark
+    public EmployeeData updateEmployee() {
+        Long employeeId = randomId();
+        return employeeService.updateEmployee(employeeId,
+                new EmployeeData.EmployeeDataBuilder(employeeId, "First", "Last", "employee" + employeeId + "@example.org")
+                        .setAge(30)
+                        .build());
+    }
+
+    private Long randomId() {
+        return employeeIds.get(ThreadLocalRandom.current().nextInt(employeeIds.size()));
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.ems.benchmarks;
+
+import com.example.ems.dto.EmployeeData;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.ValidatorFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Bean Validation of the DTO as done for POST /api/employees and every element of POST /api/employees/batch
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+
+    private ValidatorFactory validatorFactory;
+
+    private Validator validator;
+
+    private EmployeeData validEmployee;
+
+    private EmployeeData invalidEmployee;
+
+    @Setup
+    public void setUp() {
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        validator = validatorFactory.getValidator();
+
+        validEmployee = new EmployeeData.EmployeeDataBuilder(null, "John", "Doe", "John.Doe@gmail.com")
+                .setAge(25)
+                .build();
+        // failing constraints build messages through expression interpolation, which is the expensive path
+        invalidEmployee = new EmployeeData.EmployeeDataBuilder(null, "Jo", "D", "not-an-email")
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        validatorFactory.close();
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<EmployeeData>> validateValidEmployee() {
+        return validator.validate(validEmployee);
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<EmployeeData>> validateInvalidEmployee() {
+        return validator.validate(invalidEmployee);
+    }
+}
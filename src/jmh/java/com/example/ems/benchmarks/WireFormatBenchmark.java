@@ -0,0 +1,128 @@
+package com.example.ems.benchmarks;
+
+import com.example.ems.dto.EmployeeData;
+import com.example.ems.wireformat.EmployeeProtobufHttpMessageConverter;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.GenericHttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Encoding and decoding an employee and a list of employees in each format /api/employees speaks, through the same
+// message converters as the controller. The payload sizes are printed at setup
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    private static final int LIST_SIZE = 1000;
+
+    private static final Type LIST_TYPE = new ParameterizedTypeReference<List<EmployeeData>>() {
+    }.getType();
+
+    @Param({"application/json", "application/x-jackson-smile", "application/cbor", "application/x-protobuf"})
+    public String format;
+
+    private GenericHttpMessageConverter<Object> converter;
+
+    private MediaType mediaType;
+
+    private EmployeeData employeeData;
+
+    private List<EmployeeData> employees;
+
+    private byte[] employeeBytes;
+
+    private byte[] listBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        mediaType = MediaType.parseMediaType(format);
+        converter = converter(mediaType);
+
+        employeeData = employee(1);
+        employees = new ArrayList<>();
+        for (int i = 1; i <= LIST_SIZE; i++) {
+            employees.add(employee(i));
+        }
+
+        employeeBytes = writeEmployee();
+        listBytes = writeList();
+        System.out.printf("%n%s: one employee %d bytes, %d employees %d bytes%n", format, employeeBytes.length,
+                LIST_SIZE, listBytes.length);
+    }
+
+    @Benchmark
+    public byte[] writeEmployee() throws IOException {
+        return write(employeeData, EmployeeData.class);
+    }
+
+    @Benchmark
+    public Object readEmployee() throws IOException {
+        return converter.read(EmployeeData.class, null, input(employeeBytes));
+    }
+
+    @Benchmark
+    public byte[] writeList() throws IOException {
+        return write(employees, LIST_TYPE);
+    }
+
+    @Benchmark
+    public Object readList() throws IOException {
+        return converter.read(LIST_TYPE, null, input(listBytes));
+    }
+
+    private byte[] write(Object body, Type type) throws IOException {
+        MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
+        converter.write(body, type, mediaType, outputMessage);
+        return outputMessage.getBodyAsBytes();
+    }
+
+    private MockHttpInputMessage input(byte[] body) {
+        MockHttpInputMessage inputMessage = new MockHttpInputMessage(body);
+        inputMessage.getHeaders().setContentType(mediaType);
+        return inputMessage;
+    }
+
+    // configured like the application's converters, see WireFormatConfig
+    private static GenericHttpMessageConverter<Object> converter(MediaType mediaType) {
+        return switch (mediaType.toString()) {
+            case "application/x-jackson-smile" -> new MappingJackson2SmileHttpMessageConverter(builder().factory(new SmileFactory()).build());
+            case "application/cbor" -> new MappingJackson2CborHttpMessageConverter(builder().factory(new CBORFactory()).build());
+            case "application/x-protobuf" -> new EmployeeProtobufHttpMessageConverter(builder());
+            default -> new MappingJackson2HttpMessageConverter(builder().build());
+        };
+    }
+
+    private static Jackson2ObjectMapperBuilder builder() {
+        return new Jackson2ObjectMapperBuilder()
+                .serializationInclusion(JsonInclude.Include.NON_NULL)
+                .modulesToInstall(new ParameterNamesModule());
+    }
+
+    private static EmployeeData employee(int i) {
+        return new EmployeeData.EmployeeDataBuilder((long) i, "First" + i, "Last" + i, "first.last" + i + "@gmail.com")
+                .setAge(20 + i % 45)
+                .setPhone(String.format("0123%08d", i))
+                .setVersion((long) i % 5)
+                .build();
+    }
+}
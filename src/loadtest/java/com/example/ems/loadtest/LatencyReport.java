@@ -0,0 +1,139 @@
+package com.example.ems.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Latency histogram and error count of every operation, recorded in microseconds with 3 significant digits
+class LatencyReport {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private static final double[] PERCENTILES = {50.0, 90.0, 99.0, 99.9};
+
+    // the percentiles compared against the baseline
+    private static final String[] COMPARED = {"p50Ms", "p99Ms", "p999Ms"};
+
+    // differences smaller than this are noise at any tolerance, so they never count as a regression
+    private static final double MIN_REGRESSION_MS = 1.0;
+
+    private final Map<Operation, Histogram> histograms = new EnumMap<>(Operation.class);
+
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+
+    LatencyReport() {
+        for (Operation operation : Operation.values()) {
+            histograms.put(operation, new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3));
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    void record(Operation operation, long latencyNanos, boolean failed) {
+        long micros = Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), HIGHEST_TRACKABLE_MICROS);
+        histograms.get(operation).recordValue(micros);
+        if (failed) {
+            errors.get(operation).increment();
+        }
+    }
+
+    // drops everything recorded so far, used at the end of the warmup
+    void reset() {
+        histograms.values().forEach(Histogram::reset);
+        errors.values().forEach(LongAdder::reset);
+    }
+
+    ObjectNode toJson(ObjectMapper objectMapper) {
+        ObjectNode operations = objectMapper.createObjectNode();
+        for (Operation operation : Operation.values()) {
+            Histogram histogram = histograms.get(operation);
+            if (histogram.getTotalCount() == 0) {
+                continue;
+            }
+
+            ObjectNode node = operations.putObject(operation.key());
+            node.put("count", histogram.getTotalCount());
+            node.put("errors", errors.get(operation).sum());
+            for (double percentile : PERCENTILES) {
+                node.put(percentileKey(percentile), toMillis(histogram.getValueAtPercentile(percentile)));
+            }
+            node.put("maxMs", toMillis(histogram.getMaxValue()));
+        }
+        return operations;
+    }
+
+    void print(ObjectNode operations) {
+        System.out.printf("%-8s %9s %7s %9s %9s %9s %9s %9s%n",
+                "", "count", "errors", "p50 ms", "p90 ms", "p99 ms", "p999 ms", "max ms");
+        operations.fields().forEachRemaining(entry -> {
+            JsonNode node = entry.getValue();
+            System.out.printf("%-8s %9d %7d %9.2f %9.2f %9.2f %9.2f %9.2f%n", entry.getKey(),
+                    node.get("count").asLong(), node.get("errors").asLong(),
+                    node.get("p50Ms").asDouble(), node.get("p90Ms").asDouble(), node.get("p99Ms").asDouble(),
+                    node.get("p999Ms").asDouble(), node.get("maxMs").asDouble());
+        });
+    }
+
+    // The compared percentiles of two runs next to each other, one line per operation
+    static void printSideBySide(String leftName, JsonNode left, String rightName, JsonNode right) {
+        System.out.printf("%-8s", "");
+        for (String percentile : COMPARED) {
+            String name = percentile.replace("Ms", "");
+            System.out.printf(" %14s %14s", name + " " + leftName, name + " " + rightName);
+        }
+        System.out.println("   (ms)");
+        left.fields().forEachRemaining(entry -> {
+            JsonNode other = right.get(entry.getKey());
+            if (other == null) {
+                return;
+            }
+            System.out.printf("%-8s", entry.getKey());
+            for (String percentile : COMPARED) {
+                System.out.printf(" %14.2f %14.2f", entry.getValue().get(percentile).asDouble(), other.get(percentile).asDouble());
+            }
+            System.out.println();
+        });
+    }
+
+    // Compares the operations of this run with those of a baseline report and returns one line per percentile that
+    // got slower than the baseline by more than the tolerance (0.25 = 25%)
+    static List<String> regressions(JsonNode operations, JsonNode baselineOperations, double tolerance) {
+        List<String> regressions = new ArrayList<>();
+
+        operations.fields().forEachRemaining(entry -> {
+            JsonNode baseline = baselineOperations.get(entry.getKey());
+            if (baseline == null) {
+                return;
+            }
+
+            for (String percentile : COMPARED) {
+                double current = entry.getValue().get(percentile).asDouble();
+                double previous = baseline.get(percentile).asDouble();
+                String line = String.format("%-8s %-7s %9.2f -> %9.2f ms (%+.0f%%)", entry.getKey(), percentile,
+                        previous, current, previous > 0 ? (current / previous - 1) * 100 : 0.0);
+                System.out.println(line);
+                if (current > previous * (1 + tolerance) && current - previous > MIN_REGRESSION_MS) {
+                    regressions.add(line);
+                }
+            }
+        });
+
+        return regressions;
+    }
+
+    private static String percentileKey(double percentile) {
+        return "p" + String.valueOf(percentile).replace(".0", "").replace(".", "") + "Ms";
+    }
+
+    private static double toMillis(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,380 @@
+package com.example.ems.loadtest;
+
+import com.example.ems.EmployeeManagementSystem;
+import com.example.ems.dto.EmployeeData;
+import com.example.ems.service.EmployeeService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Replays a mix of create, read, update, delete and list requests against the API running on an in-memory H2
+// database and reports the latency percentiles of every operation.
+//
+// Requests are sent on a fixed schedule (open model): request n is due at start + n / rate whether or not the
+// earlier ones have completed, and its latency is measured from when it was due rather than from when it was sent.
+// A server that stalls therefore shows up as higher latency instead of silently lowering the request rate, which
+// is the coordinated omission a closed loop of clients would hide.
+//
+// Settings, as system properties:
+//   loadtest.employees        employees seeded before the run (10000)
+//   loadtest.rate             requests per second (500)
+//   loadtest.warmup           seconds of load before recording starts (10)
+//   loadtest.duration         seconds of recorded load (30)
+//   loadtest.connections      maximum requests in flight (256)
+//   loadtest.mix              relative weight of each operation (read=70,list=10,create=8,update=10,delete=2)
+//   loadtest.report           where the JSON report is written (target/loadtest-report.json)
+//   loadtest.baseline         report of an earlier run to compare with, if it exists (src/loadtest/baseline.json)
+//   loadtest.tolerance        slowdown of p50, p99 and p999 over the baseline that fails the run (0.25)
+//   loadtest.update-baseline  also write the report as the new baseline (false)
+//   loadtest.virtual-threads  run the application with ems.threads.virtual=true (false)
+//   loadtest.db-latency       milliseconds every statement and commit waits before it runs, see SlowDataSource (0)
+//   loadtest.compare-threads  run the same load on platform threads and then on virtual threads, each in a fresh
+//                             application, and print their percentiles side by side. A first, unrecorded pair of runs
+//                             warms up the JVM. The report holds both runs and no baseline is read or written (false)
+// Any other argument is passed on to the application, e.g. --ems.cache.employee.maximum-size=0
+//
+// A baseline only counts when it was recorded with the same employees, rate, mix, database latency and thread mode.
+// Otherwise the run fails, unless it is writing a new baseline anyway
+public class LoadTest {
+
+    private static final int LIST_PAGE_SIZE = 50;
+
+    // the settings a baseline must share with the run to be compared with it
+    private static final List<String> COMPARED_SETTINGS = List.of("employees", "rate", "mix", "dbLatencyMs", "virtualThreads");
+
+    private final HttpClient httpClient;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final String baseUrl;
+
+    private final List<EmployeeData> seededEmployees;
+
+    // employees created by the run, deleted by later DELETE requests so the seeded ones stay in place
+    private final ConcurrentLinkedQueue<Long> createdIds = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong createdCount = new AtomicLong();
+
+    private final LatencyReport report = new LatencyReport();
+
+    private LoadTest(HttpClient httpClient, String baseUrl, List<EmployeeData> seededEmployees) {
+        this.httpClient = httpClient;
+        this.baseUrl = baseUrl;
+        this.seededEmployees = seededEmployees;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Settings settings = new Settings(
+                Integer.getInteger("loadtest.employees", 10_000),
+                Integer.getInteger("loadtest.rate", 500),
+                Integer.getInteger("loadtest.warmup", 10),
+                Integer.getInteger("loadtest.duration", 30),
+                Integer.getInteger("loadtest.connections", 256),
+                System.getProperty("loadtest.mix", "read=70,list=10,create=8,update=10,delete=2"),
+                Integer.getInteger("loadtest.db-latency", 0));
+        Path reportPath = Path.of(System.getProperty("loadtest.report", "target/loadtest-report.json"));
+        Path baselinePath = Path.of(System.getProperty("loadtest.baseline", "src/loadtest/baseline.json"));
+        double tolerance = Double.parseDouble(System.getProperty("loadtest.tolerance", "0.25"));
+        boolean updateBaseline = Boolean.getBoolean("loadtest.update-baseline");
+        boolean virtualThreads = Boolean.getBoolean("loadtest.virtual-threads");
+        ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+        if (Boolean.getBoolean("loadtest.compare-threads")) {
+            // both modes share the JVM, so the one recorded first would also pay for the JIT and class loading
+            System.out.println("Warming up the JVM with a run in each mode that isn't recorded");
+            record(settings, false, args);
+            record(settings, true, args);
+
+            ObjectNode result = objectMapper.createObjectNode();
+            result.set("platform", record(settings, false, args));
+            result.set("virtual", record(settings, true, args));
+            LatencyReport.printSideBySide("platform", result.get("platform").get("operations"),
+                    "virtual", result.get("virtual").get("operations"));
+            write(objectMapper, result, reportPath);
+            System.out.println("Report written to " + reportPath);
+            failOnErrors(result.get("platform"));
+            failOnErrors(result.get("virtual"));
+            return;
+        }
+
+        ObjectNode result = record(settings, virtualThreads, args);
+        write(objectMapper, result, reportPath);
+        System.out.println("Report written to " + reportPath);
+        failOnErrors(result);
+        compareWithBaseline(objectMapper, result, baselinePath, tolerance, updateBaseline);
+
+        if (updateBaseline) {
+            write(objectMapper, result, baselinePath);
+            System.out.println("Baseline written to " + baselinePath);
+        }
+    }
+
+    // Starts the application, seeds it, warms it up and returns the settings and latencies of the recorded run
+    private static ObjectNode record(Settings settings, boolean virtualThreads, String[] args) throws InterruptedException {
+        Map<Operation, Integer> mix = parseMix(settings.mix());
+        ExecutorService httpExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try (ConfigurableApplicationContext context = startApplication(virtualThreads, settings.dbLatencyMs(), args)) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            List<EmployeeData> seeded = seed(context.getBean(EmployeeService.class), settings.employees());
+            HttpClient httpClient = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .executor(httpExecutor)
+                    .build();
+            LoadTest loadTest = new LoadTest(httpClient, "http://localhost:" + port + "/api/employees", seeded);
+
+            System.out.printf("%s threads: seeded %d employees, warming up for %ds at %d requests/s%n",
+                    virtualThreads ? "Virtual" : "Platform", settings.employees(), settings.warmupSeconds(), settings.rate());
+            loadTest.run(settings.rate(), settings.warmupSeconds(), settings.connections(), mix);
+            loadTest.report.reset();
+
+            System.out.printf("Recording for %ds at %d requests/s%n", settings.durationSeconds(), settings.rate());
+            long achievedRate = loadTest.run(settings.rate(), settings.durationSeconds(), settings.connections(), mix);
+
+            ObjectNode result = loadTest.objectMapper.createObjectNode();
+            ObjectNode settingsNode = result.putObject("settings");
+            settingsNode.put("employees", settings.employees());
+            settingsNode.put("rate", settings.rate());
+            settingsNode.put("achievedRate", achievedRate);
+            settingsNode.put("durationSeconds", settings.durationSeconds());
+            settingsNode.put("virtualThreads", virtualThreads);
+            settingsNode.put("mix", settings.mix());
+            settingsNode.put("dbLatencyMs", settings.dbLatencyMs());
+            ObjectNode operations = loadTest.report.toJson(loadTest.objectMapper);
+            result.set("operations", operations);
+            loadTest.report.print(operations);
+            return result;
+        } finally {
+            httpExecutor.shutdownNow();
+        }
+    }
+
+    // Sends requests at the given rate for the given time and returns the rate at which they completed
+    private long run(int rate, int seconds, int connections, Map<Operation, Integer> mix) throws InterruptedException {
+        Semaphore inFlight = new Semaphore(connections);
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long requests = (long) rate * seconds;
+        int totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+
+        long start = System.nanoTime();
+        for (long n = 0; n < requests; n++) {
+            long due = start + n * intervalNanos;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            // when every connection is busy we wait here, but the latency still counts from when the request was due
+            inFlight.acquire();
+            Operation operation = pick(mix, totalWeight);
+            pending.add(send(operation, due).whenComplete((ignored, e) -> inFlight.release()));
+
+            if (pending.size() > connections * 4) {
+                pending.removeIf(CompletableFuture::isDone);
+            }
+        }
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+
+        long elapsedNanos = System.nanoTime() - start;
+        return requests * TimeUnit.SECONDS.toNanos(1) / Math.max(elapsedNanos, 1);
+    }
+
+    private CompletableFuture<Void> send(Operation operation, long due) {
+        Long deletableId = operation == Operation.DELETE ? createdIds.poll() : null;
+        if (operation == Operation.DELETE && deletableId == null) {
+            // nothing created yet that we could delete, so this slot becomes a read
+            operation = Operation.READ;
+        }
+
+        Operation recorded = operation;
+        return httpClient.sendAsync(request(operation, deletableId), HttpResponse.BodyHandlers.ofString())
+                .handle((response, e) -> {
+                    boolean failed = e != null || response.statusCode() >= 400;
+                    report.record(recorded, System.nanoTime() - due, failed);
+                    if (!failed && recorded == Operation.CREATE) {
+                        createdIds.add(readId(response.body()));
+                    }
+                    return null;
+                });
+    }
+
+    private HttpRequest request(Operation operation, Long deletableId) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        EmployeeData seeded = seededEmployees.get(random.nextInt(seededEmployees.size()));
+
+        return switch (operation) {
+            case READ -> HttpRequest.newBuilder(URI.create(baseUrl + "/" + seeded.getId())).GET().build();
+            case LIST -> HttpRequest.newBuilder(URI.create(baseUrl + "?size=" + LIST_PAGE_SIZE + "&page="
+                    + random.nextInt(Math.max(seededEmployees.size() / LIST_PAGE_SIZE, 1)))).GET().build();
+            case CREATE -> json(HttpRequest.newBuilder(URI.create(baseUrl)), "POST",
+                    employeeJson("Load", "Test", "loadtest" + createdCount.incrementAndGet() + "@example.com", 30));
+            case UPDATE -> json(HttpRequest.newBuilder(URI.create(baseUrl + "/" + seeded.getId())), "PUT",
+                    employeeJson(seeded.getFirstName(), seeded.getLastName(), seeded.getEmail(), 20 + random.nextInt(45)));
+            case DELETE -> HttpRequest.newBuilder(URI.create(baseUrl + "/" + deletableId)).DELETE().build();
+        };
+    }
+
+    private static HttpRequest json(HttpRequest.Builder builder, String method, String body) {
+        return builder.header("Content-Type", "application/json")
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private String employeeJson(String firstName, String lastName, String email, int age) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("firstName", firstName);
+        node.put("lastName", lastName);
+        node.put("email", email);
+        node.put("age", age);
+        return node.toString();
+    }
+
+    private Long readId(String body) {
+        try {
+            return objectMapper.readTree(body).get("id").asLong();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unexpected create response: " + body, e);
+        }
+    }
+
+    private static Operation pick(Map<Operation, Integer> mix, int totalWeight) {
+        int roll = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+            roll -= entry.getValue();
+            if (roll < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("Empty mix");
+    }
+
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String weight : mix.split(",")) {
+            String[] parts = weight.split("=");
+            weights.put(Operation.of(parts[0]), Integer.parseInt(parts[1].trim()));
+        }
+        if (weights.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+            throw new IllegalArgumentException("loadtest.mix needs at least one positive weight: " + mix);
+        }
+        return weights;
+    }
+
+    private static ConfigurableApplicationContext startApplication(boolean virtualThreads, int dbLatencyMs, String[] args) {
+        List<String> arguments = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:loadtest",
+                "--spring.jpa.hibernate.ddl-auto=create-drop",
+                "--spring.jpa.show-sql=false",
+                "--spring.jpa.properties.hibernate.generate_statistics=false",
+                "--ems.batch.chunk-size=500",
+                "--logging.level.root=WARN",
+                "--ems.threads.virtual=" + virtualThreads));
+        arguments.addAll(List.of(args));
+
+        SpringApplicationBuilder application = new SpringApplicationBuilder(EmployeeManagementSystem.class);
+        if (dbLatencyMs > 0) {
+            application.initializers(context -> context.getBeanFactory().addBeanPostProcessor(new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource dataSource && !(bean instanceof SlowDataSource)
+                            ? new SlowDataSource(dataSource, Duration.ofMillis(dbLatencyMs))
+                            : bean;
+                }
+            }));
+        }
+        return application.run(arguments.toArray(String[]::new));
+    }
+
+    private static List<EmployeeData> seed(EmployeeService employeeService, int employees) {
+        List<EmployeeData> newEmployees = new ArrayList<>(employees);
+        for (int i = 0; i < employees; i++) {
+            newEmployees.add(new EmployeeData.EmployeeDataBuilder(null, "First" + i, "Last" + i, "employee" + i + "@example.com")
+                    .setAge(20 + i % 45)
+                    .setPhone("012345678910")
+                    .build());
+        }
+        return employeeService.createEmployees(newEmployees);
+    }
+
+    private static void write(ObjectMapper objectMapper, JsonNode report, Path path) throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        objectMapper.writeValue(path.toFile(), report);
+    }
+
+    private static void failOnErrors(JsonNode result) {
+        long errors = 0;
+        for (JsonNode operation : result.get("operations")) {
+            errors += operation.get("errors").asLong();
+        }
+        if (errors > 0) {
+            throw new IllegalStateException(errors + " requests failed");
+        }
+    }
+
+    private static void compareWithBaseline(ObjectMapper objectMapper, JsonNode result, Path baselinePath,
+                                            double tolerance, boolean updateBaseline) throws IOException {
+        if (!Files.exists(baselinePath)) {
+            System.out.println("No baseline at " + baselinePath + ", skipping the comparison");
+            return;
+        }
+
+        JsonNode baseline = objectMapper.readTree(baselinePath.toFile());
+        List<String> differences = new ArrayList<>();
+        for (String setting : COMPARED_SETTINGS) {
+            JsonNode current = result.get("settings").get(setting);
+            JsonNode previous = baseline.path("settings").get(setting);
+            if (!Objects.equals(current, previous)) {
+                differences.add(setting + " " + previous + " -> " + current);
+            }
+        }
+        if (!differences.isEmpty()) {
+            if (updateBaseline) {
+                System.out.println("The baseline was recorded with other settings (" + String.join(", ", differences)
+                        + "), skipping the comparison");
+                return;
+            }
+            throw new IllegalStateException("The baseline at " + baselinePath + " was recorded with other settings, "
+                    + "compare runs with the same settings or update the baseline: " + String.join(", ", differences));
+        }
+
+        System.out.printf("Compared with %s (tolerance %.0f%%):%n", baselinePath, tolerance * 100);
+        List<String> regressions = LatencyReport.regressions(result.get("operations"), baseline.get("operations"), tolerance);
+        if (!regressions.isEmpty()) {
+            throw new IllegalStateException("Latency regressed against the baseline:\n" + String.join("\n", regressions));
+        }
+    }
+
+    private record Settings(int employees, int rate, int warmupSeconds, int durationSeconds, int connections, String mix,
+                            int dbLatencyMs) {
+    }
+}
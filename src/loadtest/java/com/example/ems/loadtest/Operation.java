@@ -0,0 +1,20 @@
+package com.example.ems.loadtest;
+
+import java.util.Locale;
+
+// The requests a load test mixes, named in loadtest.mix and in the report by their lower case name
+enum Operation {
+    READ,     // GET /api/employees/{id} of a seeded employee
+    LIST,     // GET /api/employees?size=50&page=... of a random page
+    CREATE,   // POST /api/employees of a new employee
+    UPDATE,   // PUT /api/employees/{id} of a seeded employee
+    DELETE;   // DELETE /api/employees/{id} of an employee created during the run
+
+    String key() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    static Operation of(String key) {
+        return valueOf(key.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.ems.loadtest;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.locks.LockSupport;
+
+// Makes the in-memory database answer like one across the network: every statement execution and every commit waits
+// for the given latency first, while holding its connection. The wait parks the thread, so a virtual thread gives its
+// carrier back during it just as it would while waiting on a socket
+class SlowDataSource extends DelegatingDataSource {
+
+    private final long latencyNanos;
+
+    SlowDataSource(DataSource targetDataSource, Duration latency) {
+        super(targetDataSource);
+        this.latencyNanos = latency.toNanos();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return slow(super.getConnection(), Connection.class);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return slow(super.getConnection(username, password), Connection.class);
+    }
+
+    private <T> T slow(T target, Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            String name = method.getName();
+            if (name.startsWith("execute") || name.equals("commit")) {
+                LockSupport.parkNanos(latencyNanos);
+            }
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            // the most specific interface of each statement, Hibernate needs a PreparedStatement to stay one
+            if (result instanceof CallableStatement statement) {
+                return slow(statement, CallableStatement.class);
+            }
+            if (result instanceof PreparedStatement statement) {
+                return slow(statement, PreparedStatement.class);
+            }
+            if (result instanceof Statement statement && method.getReturnType() == Statement.class) {
+                return slow(statement, Statement.class);
+            }
+            return result;
+        }));
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.ems.cache;
+
+import com.example.ems.dto.EmployeeData;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+// In-process cache of employees by id, bounded by size and age. EmployeeData is immutable,
+// so the same cached instance can be handed to every request without copying it. Hits, misses and evictions are
+// exported as the cache_* meters tagged cache=employees, and the loads behind the misses as ems.cache.employee.*
+@Component
+public class EmployeeCache {
+
+    private final Cache<Long, EmployeeData> cache;
+
+    private final SingleFlight<Long, EmployeeData> loads = new SingleFlight<>();
+
+    public EmployeeCache(@Value("${ems.cache.employee.maximum-size:10000}") long maximumSize,
+                         @Value("${ems.cache.employee.expire-after-write:10m}") Duration expireAfterWrite,
+                         MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "employees");
+        FunctionCounter.builder("ems.cache.employee.loads", loads, SingleFlight::executions)
+                .description("Database loads run on an employee cache miss")
+                .register(meterRegistry);
+        FunctionCounter.builder("ems.cache.employee.coalesced-loads", loads, SingleFlight::coalesced)
+                .description("Employee cache misses that waited for another request's load instead of running their own")
+                .register(meterRegistry);
+    }
+
+    // returns the cached employee or loads and caches it. Concurrent misses for the same id share a single load.
+    // Exceptions thrown by the loader (e.g. employee not found) are passed on to every caller sharing that load
+    // and nothing is cached for that id
+    public EmployeeData get(Long employeeId, Function<Long, EmployeeData> loader) {
+        EmployeeData employeeData = cache.getIfPresent(employeeId);
+        if (employeeData != null) {
+            return employeeData;
+        }
+
+        return loads.execute(employeeId, () -> loader.apply(employeeId), loaded -> cache.put(employeeId, loaded));
+    }
+
+    public EmployeeData getIfPresent(Long employeeId) {
+        return cache.getIfPresent(employeeId);
+    }
+
+    public void invalidate(Long employeeId) {
+        // forget the in-flight load first, it may have read the row before the write that triggered this
+        loads.forget(employeeId);
+        cache.invalidate(employeeId);
+    }
+
+    // hit, miss, load and eviction counts since startup
+    public CacheStats stats() {
+        return cache.stats();
+    }
+}
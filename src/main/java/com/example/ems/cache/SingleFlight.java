@@ -0,0 +1,82 @@
+package com.example.ems.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Runs at most one load per key at a time. Callers that ask for a key while its load is in flight wait for that
+// load and get its result, or its exception, instead of running their own. Keys never block each other: the only
+// shared state is a ConcurrentHashMap of in-flight loads and nothing is locked while a load runs.
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder executions = new LongAdder();
+
+    private final LongAdder coalesced = new LongAdder();
+
+    // onSuccess is called by the caller that ran the load, before the load is finished for the others, unless
+    // forget(key) was called while it ran. That's where a cache can store the value without racing an invalidation
+    public V execute(K key, Supplier<V> loader, Consumer<V> onSuccess) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalesced.increment();
+            return join(existing);
+        }
+
+        executions.increment();
+        try {
+            V value = loader.get();
+            // computeIfPresent runs atomically with forget(key), so a value loaded before an invalidation can't be
+            // published after it
+            inFlight.computeIfPresent(key, (k, current) -> {
+                if (current != flight) {
+                    return current;
+                }
+                onSuccess.accept(value);
+                return null;
+            });
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    // detaches the in-flight load of key, if any: callers already waiting still get its result, but it won't be
+    // published and new callers start a fresh load
+    public void forget(K key) {
+        inFlight.remove(key);
+    }
+
+    // number of loads actually run
+    public long executions() {
+        return executions.sum();
+    }
+
+    // number of calls that joined a load another caller was already running
+    public long coalesced() {
+        return coalesced.sum();
+    }
+
+    private static <V> V join(CompletableFuture<V> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.ems.changes;
+
+import com.example.ems.dto.EmployeeChangeData;
+import com.example.ems.service.impl.OffHeapEmployeeService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Pushes new changes of the EmployeeChangeLog to the clients following GET /api/employees/changes as Server-Sent Events.
+// A single thread does the sending. It wakes up when a change commits and reads the log once for all subscribers,
+// from the one furthest behind, then gives each subscriber the part it hasn't had yet. Every event carries its seq as
+// the event id, so a client that reconnects with Last-Event-ID continues where it stopped.
+// Idle streams get a comment every heartbeat-interval, which also finds the clients that went away.
+// A subscriber that is still behind when its changes are purged (the purge ran before its first read, or reads kept
+// failing) gets an EXPIRED event and its stream is closed instead of holding up the read for everyone else
+@Component
+@Profile("!" + OffHeapEmployeeService.PROFILE)
+public class EmployeeChangeFeed implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(EmployeeChangeFeed.class);
+
+    // changes read from the log per query, a subscriber that is further behind catches up in several rounds
+    static final int BATCH_SIZE = 500;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    private final AtomicBoolean dispatchScheduled = new AtomicBoolean();
+
+    private final EmployeeChangeLog changeLog;
+
+    private final Duration heartbeatInterval;
+
+    private ScheduledExecutorService dispatcher;
+
+    private volatile boolean running;
+
+    public EmployeeChangeFeed(EmployeeChangeLog changeLog, MeterRegistry meterRegistry,
+                              @Value("${ems.changes.heartbeat-interval:15s}") Duration heartbeatInterval) {
+        this.changeLog = changeLog;
+        this.heartbeatInterval = heartbeatInterval;
+        changeLog.addCommitListener(this::wakeUp);
+
+        Gauge.builder("ems.changes.subscribers", subscribers, Set::size)
+                .description("Clients following the employee change feed")
+                .register(meterRegistry);
+    }
+
+    // Streams every change after since, first the ones already in the log and then new ones as they commit
+    public SseEmitter subscribe(long since) {
+        changeLog.requireRetained(since);
+        // no timeout of its own, the stream lasts as long as spring.mvc.async.request-timeout
+        SseEmitter emitter = new SseEmitter();
+        Subscriber subscriber = new Subscriber(emitter, since);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        wakeUp();
+        return emitter;
+    }
+
+    @Override
+    public void start() {
+        dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "employee-change-feed");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dispatcher.scheduleWithFixedDelay(this::heartbeat, heartbeatInterval.toMillis(), heartbeatInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        dispatcher.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        subscribers.clear();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void wakeUp() {
+        if (running && !subscribers.isEmpty() && dispatchScheduled.compareAndSet(false, true)) {
+            dispatcher.execute(this::dispatch);
+        }
+    }
+
+    private void dispatch() {
+        dispatchScheduled.set(false);
+        try {
+            List<EmployeeChangeData> changes;
+            do {
+                dropExpired();
+                long from = subscribers.stream().mapToLong(subscriber -> subscriber.lastSeq).min().orElse(Long.MAX_VALUE);
+                if (from == Long.MAX_VALUE) {
+                    return;
+                }
+                changes = changeLog.findSince(from, BATCH_SIZE);
+                for (Subscriber subscriber : subscribers) {
+                    send(subscriber, changes);
+                }
+            } while (changes.size() == BATCH_SIZE);
+        } catch (RuntimeException e) {
+            // the subscribers keep their position, the next commit or heartbeat tries again
+            log.warn("Could not read employee changes for the change feed: {}", e.getMessage());
+        }
+    }
+
+    private void dropExpired() {
+        for (Subscriber subscriber : subscribers) {
+            if (changeLog.isRetained(subscriber.lastSeq)) {
+                continue;
+            }
+            subscribers.remove(subscriber);
+            try {
+                subscriber.emitter.send(SseEmitter.event()
+                        .name("EXPIRED")
+                        .data(changeLog.expiredMessage(), MediaType.TEXT_PLAIN));
+                subscriber.emitter.complete();
+            } catch (IOException | IllegalStateException e) {
+                subscriber.emitter.completeWithError(e);
+            }
+        }
+    }
+
+    private void send(Subscriber subscriber, List<EmployeeChangeData> changes) {
+        try {
+            for (EmployeeChangeData change : changes) {
+                if (change.getSeq() > subscriber.lastSeq) {
+                    subscriber.emitter.send(SseEmitter.event()
+                            .id(Long.toString(change.getSeq()))
+                            .name(change.getType().name())
+                            .data(change, MediaType.APPLICATION_JSON));
+                    subscriber.lastSeq = change.getSeq();
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            // the client went away, or the stream has already completed
+            disconnect(subscriber, e);
+        }
+    }
+
+    private void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            try {
+                subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+            } catch (IOException | IllegalStateException e) {
+                disconnect(subscriber, e);
+            }
+        }
+        // also picks up what a failed dispatch left behind
+        dispatch();
+    }
+
+    private void disconnect(Subscriber subscriber, Exception e) {
+        subscribers.remove(subscriber);
+        subscriber.emitter.completeWithError(e);
+    }
+
+    private static final class Subscriber {
+
+        private final SseEmitter emitter;
+
+        // the last seq sent, only the dispatcher thread moves it on
+        private volatile long lastSeq;
+
+        private Subscriber(SseEmitter emitter, long lastSeq) {
+            this.emitter = emitter;
+            this.lastSeq = lastSeq;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.ems.changes;
+
+import com.example.ems.dto.EmployeeChangeData;
+import com.example.ems.dto.EmployeeData;
+import com.example.ems.entity.EmployeeChange;
+import com.example.ems.exception.ChangesExpiredException;
+import com.example.ems.exception.InvalidRequestException;
+import com.example.ems.repository.EmployeeChangeRepository;
+import com.example.ems.service.impl.OffHeapEmployeeService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+// Append-only log of every employee write (transactional outbox): each change is inserted in the transaction that
+// makes it, so the log has a change exactly when the employees table does.
+//
+// Sequence numbers are handed out here rather than by the database, continuing from the newest row at startup, which
+// like the collection ETag assumes this instance is the only one writing. A transaction can commit after one that took
+// a higher number, so reads stop just before the lowest number whose transaction is still open: a client that
+// continues from the last seq it read never skips a change that commits later.
+// Changes older than ems.changes.retention are deleted every ems.changes.cleanup-interval
+@Component
+@Profile("!" + OffHeapEmployeeService.PROFILE)
+public class EmployeeChangeLog implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(EmployeeChangeLog.class);
+
+    private final EmployeeChangeRepository repository;
+
+    private final EntityManager entityManager;
+
+    private final ObjectMapper objectMapper;
+
+    private final Duration retention;
+
+    // held while taking a sequence number and registering it as open, so no reader sees one without the other
+    private final ReentrantLock sequenceLock = new ReentrantLock();
+
+    private final ConcurrentSkipListSet<Long> open = new ConcurrentSkipListSet<>();
+
+    private final List<Runnable> commitListeners = new CopyOnWriteArrayList<>();
+
+    private long lastSeq;
+
+    // changes up to and including this one have been purged
+    private volatile long purgedThrough;
+
+    public EmployeeChangeLog(EmployeeChangeRepository repository, EntityManager entityManager, ObjectMapper objectMapper,
+                             @Value("${ems.changes.retention:7d}") Duration retention) {
+        this.repository = repository;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        this.retention = retention;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        Long maxSeq = repository.findMaxSeq();
+        Long minSeq = repository.findMinSeq();
+        sequenceLock.lock();
+        try {
+            lastSeq = maxSeq != null ? maxSeq : 0;
+        } finally {
+            sequenceLock.unlock();
+        }
+        purgedThrough = minSeq != null ? minSeq - 1 : 0;
+    }
+
+    // Adds the change to the caller's transaction. employeeData is null for a delete
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void append(EmployeeChange.Type type, Long employeeId, EmployeeData employeeData) {
+        long seq;
+        sequenceLock.lock();
+        try {
+            seq = ++lastSeq;
+            open.add(seq);
+        } finally {
+            sequenceLock.unlock();
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                open.remove(seq);
+                if (status == STATUS_COMMITTED) {
+                    commitListeners.forEach(Runnable::run);
+                }
+            }
+        });
+
+        entityManager.persist(new EmployeeChange(seq, type, employeeId, toJson(employeeData), Instant.now()));
+    }
+
+    // Up to limit committed changes after since, oldest first
+    public List<EmployeeChangeData> findSince(long since, int limit) {
+        requireRetained(since);
+        return repository.findBySeqGreaterThanAndSeqLessThanOrderBySeqAsc(since, visibleBefore(), PageRequest.of(0, limit))
+                .stream()
+                .map(this::toChangeData)
+                .collect(Collectors.toList());
+    }
+
+    public void requireRetained(long since) {
+        if (since < 0) {
+            throw new InvalidRequestException("since must not be negative: " + since);
+        }
+        if (!isRetained(since)) {
+            throw new ChangesExpiredException(expiredMessage());
+        }
+    }
+
+    // whether the log still has every change after since
+    public boolean isRetained(long since) {
+        return since >= purgedThrough;
+    }
+
+    public String expiredMessage() {
+        return "Changes up to " + purgedThrough + " have been purged, read the employees again";
+    }
+
+    // runs after every transaction that appended a change has committed
+    public void addCommitListener(Runnable listener) {
+        commitListeners.add(listener);
+    }
+
+    @Scheduled(fixedDelayString = "${ems.changes.cleanup-interval:PT1H}")
+    public void deleteExpiredChanges() {
+        Long maxSeq = repository.findMaxSeq();
+        if (maxSeq == null) {
+            return;
+        }
+        int deleted = repository.deleteChangedBefore(Instant.now().minus(retention), maxSeq);
+        if (deleted > 0) {
+            Long minSeq = repository.findMinSeq();
+            purgedThrough = minSeq != null ? minSeq - 1 : maxSeq;
+            log.info("Deleted {} employee changes older than {}, changes up to {} are gone", deleted, retention, purgedThrough);
+        }
+    }
+
+    // the lowest sequence number a reader must not go past yet
+    private long visibleBefore() {
+        sequenceLock.lock();
+        try {
+            return open.isEmpty() ? lastSeq + 1 : open.first();
+        } finally {
+            sequenceLock.unlock();
+        }
+    }
+
+    private String toJson(EmployeeData employeeData) {
+        if (employeeData == null) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsString(employeeData);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private EmployeeChangeData toChangeData(EmployeeChange change) {
+        try {
+            EmployeeData employeeData = change.getEmployee() == null ? null
+                    : objectMapper.readValue(change.getEmployee(), EmployeeData.class);
+            return new EmployeeChangeData(change.getSeq(), change.getType(), change.getEmployeeId(), employeeData,
+                    change.getChangedAt());
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
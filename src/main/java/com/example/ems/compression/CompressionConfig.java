@@ -0,0 +1,24 @@
+package com.example.ems.compression;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+// Tomcat gzips the responses server.compression.* describes. MinResponseSizeFilter makes min-response-size hold for
+// the API responses too, which Spring MVC would otherwise commit before their length is known
+@Configuration
+@ConditionalOnProperty(name = "server.compression.enabled", havingValue = "true")
+public class CompressionConfig {
+
+    @Bean
+    public FilterRegistrationBean<MinResponseSizeFilter> minResponseSizeFilter(
+            @Value("${server.compression.min-response-size:2KB}") DataSize minResponseSize) {
+        FilterRegistrationBean<MinResponseSizeFilter> registration =
+                new FilterRegistrationBean<>(new MinResponseSizeFilter((int) minResponseSize.toBytes()));
+        registration.addUrlPatterns("/api/*");
+        return registration;
+    }
+}
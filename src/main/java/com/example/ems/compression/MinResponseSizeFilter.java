@@ -0,0 +1,241 @@
+package com.example.ems.compression;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Holds a response back until it is complete or reaches minResponseSize bytes. The message converters flush once
+// they have written the body, which commits the response before its length is known, and Tomcat compresses a response
+// of unknown length whatever its size. Held back, a small response is sent with a Content-Length and Tomcat leaves it
+// alone. Only up to minResponseSize bytes are ever held: a longer body, and a flush before the first byte (how the
+// streaming endpoints send their headers straight away), go through as they are written
+public class MinResponseSizeFilter extends OncePerRequestFilter {
+
+    private final int minResponseSize;
+
+    public MinResponseSizeFilter(int minResponseSize) {
+        this.minResponseSize = minResponseSize;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        HoldingResponse holdingResponse = new HoldingResponse(response, minResponseSize);
+        filterChain.doFilter(request, holdingResponse);
+        if (request.isAsyncStarted()) {
+            // the rest is written on another thread after we return, and a flush may have been put off already
+            holdingResponse.release();
+        } else {
+            holdingResponse.complete();
+        }
+    }
+
+    private static final class HoldingResponse extends HttpServletResponseWrapper {
+
+        private final int minResponseSize;
+
+        private final ByteArrayOutputStream held = new ByteArrayOutputStream();
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private volatile boolean passingThrough;
+
+        private ServletOutputStream outputStream;
+
+        private PrintWriter writer;
+
+        private HoldingResponse(HttpServletResponse response, int minResponseSize) {
+            super(response);
+            this.minResponseSize = minResponseSize;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called on this response");
+            }
+            return stream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (outputStream != null) {
+                    throw new IllegalStateException("getOutputStream() has already been called on this response");
+                }
+                writer = new PrintWriter(new OutputStreamWriter(stream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            flush();
+        }
+
+        @Override
+        public void resetBuffer() {
+            held.reset();
+            super.resetBuffer();
+        }
+
+        @Override
+        public void reset() {
+            held.reset();
+            super.reset();
+        }
+
+        private ServletOutputStream stream() {
+            if (outputStream == null) {
+                outputStream = new HoldingOutputStream();
+            }
+            return outputStream;
+        }
+
+        // Called from the request thread and from the thread an async response is written on. Once passing through,
+        // writes go straight to the response without taking the lock. The lock is a ReentrantLock rather than a
+        // monitor because it is held while the held bytes are written to the client, which can block on a slow one,
+        // and a virtual thread blocking inside synchronized would pin its carrier
+        private void write(byte[] bytes, int offset, int length) throws IOException {
+            if (passingThrough) {
+                getResponse().getOutputStream().write(bytes, offset, length);
+                return;
+            }
+            lock.lock();
+            try {
+                if (!passingThrough && held.size() + length < minResponseSize) {
+                    held.write(bytes, offset, length);
+                    return;
+                }
+                passThrough();
+                getResponse().getOutputStream().write(bytes, offset, length);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void flush() throws IOException {
+            if (passingThrough) {
+                getResponse().getOutputStream().flush();
+                return;
+            }
+            lock.lock();
+            try {
+                if (passingThrough || held.size() == 0) {
+                    passThrough();
+                    getResponse().getOutputStream().flush();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void release() throws IOException {
+            lock.lock();
+            try {
+                boolean flushPutOff = held.size() > 0;
+                passThrough();
+                if (flushPutOff) {
+                    getResponse().getOutputStream().flush();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // only called holding the lock. passingThrough is set once the held bytes are out, so that a write that
+        // doesn't take the lock can't get ahead of them
+        private void passThrough() throws IOException {
+            if (passingThrough) {
+                return;
+            }
+            if (held.size() > 0) {
+                getResponse().getOutputStream().write(held.toByteArray());
+                held.reset();
+            }
+            passingThrough = true;
+        }
+
+        // sends what is still held, now that its length is known
+        private void complete() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            lock.lock();
+            try {
+                if (passingThrough || held.size() == 0 || isCommitted()) {
+                    return;
+                }
+                setContentLength(held.size());
+                getResponse().getOutputStream().write(held.toByteArray());
+                held.reset();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void setWriteListener(WriteListener writeListener) throws IOException {
+            lock.lock();
+            try {
+                passThrough();
+            } finally {
+                lock.unlock();
+            }
+            getResponse().getOutputStream().setWriteListener(writeListener);
+        }
+
+        private final class HoldingOutputStream extends ServletOutputStream {
+
+            @Override
+            public void write(int b) throws IOException {
+                HoldingResponse.this.write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                HoldingResponse.this.write(bytes, offset, length);
+            }
+
+            // a flush commits the response, so it is put off while anything is held
+            @Override
+            public void flush() throws IOException {
+                HoldingResponse.this.flush();
+            }
+
+            // held bytes go to memory, so only a stream that passes through can be not ready
+            @Override
+            public boolean isReady() {
+                if (!passingThrough) {
+                    return true;
+                }
+                try {
+                    return getResponse().getOutputStream().isReady();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            // non-blocking writes can't be held back, the response passes through from here on
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                try {
+                    HoldingResponse.this.setWriteListener(writeListener);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.ems.controller;
+
+import com.example.ems.exception.VersionConflictException;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Strong ETags of single employees are their version in quotes, e.g. "3". Lists of employees are tagged with
+// the collection version, e.g. W/"list-lq0x3k2a-17", which changes with every write. List tags are weak: they are only
+// compared by If-None-Match, and the same tag then covers the gzipped and the plain body (Tomcat doesn't compress a
+// response with a strong ETag)
+final class ETags {
+
+    private static final Pattern VERSION_TAG = Pattern.compile("\"(\\d+)\"");
+
+    private ETags() {
+    }
+
+    static String ofVersion(Long version) {
+        return version != null ? "\"" + version + "\"" : null;
+    }
+
+    static String ofCollectionVersion(String collectionVersion) {
+        return collectionVersion != null ? "W/\"list-" + collectionVersion + "\"" : null;
+    }
+
+    // Returns the version an If-Match header requires, or null for "*" which matches any existing employee.
+    // A tag that can't be one of our versions (weak, a list, garbage) can never match, so it fails the precondition
+    static Long requiredVersion(String ifMatch) {
+        String tag = ifMatch.trim();
+        if (tag.equals("*")) {
+            return null;
+        }
+
+        Matcher matcher = VERSION_TAG.matcher(tag);
+        if (!matcher.matches()) {
+            throw new VersionConflictException("If-Match does not match any version: " + ifMatch);
+        }
+        return Long.valueOf(matcher.group(1));
+    }
+}
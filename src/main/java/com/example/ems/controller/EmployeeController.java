@@ -1,48 +1,313 @@
 package com.example.ems.controller;
 
+import com.example.ems.changes.EmployeeChangeFeed;
+import com.example.ems.dto.BatchItemError;
+import com.example.ems.dto.EmployeeChangeData;
 import com.example.ems.dto.EmployeeData;
+import com.example.ems.dto.EmployeeFields;
+import com.example.ems.dto.EmployeeFilter;
+import com.example.ems.dto.EmployeeLookup;
+import com.example.ems.dto.EmployeePage;
+import com.example.ems.dto.EmployeeSearchResult;
+import com.example.ems.dto.EmployeeStats;
+import com.example.ems.exception.BatchValidationException;
+import com.example.ems.exception.ChangesUnavailableException;
+import com.example.ems.exception.IdempotencyKeyInUseException;
+import com.example.ems.exception.IdempotencyKeyMismatchException;
+import com.example.ems.exception.InvalidRequestException;
+import com.example.ems.idempotency.IdempotencyRecord;
+import com.example.ems.idempotency.IdempotencyStore;
 import com.example.ems.service.EmployeeService;
+import com.example.ems.snapshot.EmployeeListSnapshot;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.stream.Collectors;
 
+import static com.example.ems.wireformat.WireFormatConfig.APPLICATION_CBOR_VALUE;
+import static com.example.ems.wireformat.WireFormatConfig.APPLICATION_PROTOBUF_VALUE;
+import static com.example.ems.wireformat.WireFormatConfig.APPLICATION_SMILE_VALUE;
+
+// Bodies are JSON unless the client asks for another format with Accept or Content-Type: Smile and CBOR everywhere,
+// Protobuf where the body is an employee or a list of employees (see WireFormatConfig)
 @RestController
 @RequestMapping("/api/employees")
 public class EmployeeController {
 
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    public static final int MAX_BATCH_SIZE = 10_000;
+
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    public static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+
+    public static final int MAX_IDEMPOTENCY_KEY_LENGTH = 100;
+
+    private static final int STREAM_FLUSH_INTERVAL = 1000;
+
+    private static final List<MediaType> BINARY_FORMATS =
+            MediaType.parseMediaTypes(List.of(APPLICATION_SMILE_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_PROTOBUF_VALUE));
+
+    private static final List<String> LIST_PARAMETERS = List.of("lastName", "minAge", "maxAge", "emailDomain", "sort", "fields");
+
     @Autowired
     EmployeeService employeeService;
 
-    @PostMapping(produces = {"application/json"}, consumes={"application/json"})
-    public ResponseEntity<EmployeeData> createEmployee(@RequestBody @Valid EmployeeData employeeData) {
-        EmployeeData savedEmployee = employeeService.createEmployee(employeeData);
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    Validator validator;
+
+    @Autowired
+    IdempotencyStore idempotencyStore;
+
+    // null in the offheap profile, which has no change log
+    @Autowired(required = false)
+    EmployeeChangeFeed changeFeed;
+
+    // null with ems.list-snapshot.enabled=false
+    @Autowired(required = false)
+    EmployeeListSnapshot listSnapshot;
+
+    // With an Idempotency-Key header a retried request gets the response of the first one back, marked with
+    // Idempotent-Replayed: true, and the employees table isn't touched. The same key with a different body is
+    // rejected with 422, and a retry while the first request is still running gets 409
+    @PostMapping(produces = {"application/json", APPLICATION_SMILE_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_PROTOBUF_VALUE}, consumes = {"application/json", APPLICATION_SMILE_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_PROTOBUF_VALUE})
+    public ResponseEntity<EmployeeData> createEmployee(@RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+                                                       @RequestBody @Valid EmployeeData employeeData) {
+        if (idempotencyKey == null) {
+            EmployeeData savedEmployee = employeeService.createEmployee(employeeData);
+            return withETag(ResponseEntity.status(HttpStatus.CREATED), savedEmployee).body(savedEmployee);
+        }
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            throw new InvalidRequestException(IDEMPOTENCY_KEY + " must be 1 to " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters");
+        }
+
+        String fingerprint = fingerprint(employeeData);
+        IdempotencyRecord previous = idempotencyStore.claim(idempotencyKey, fingerprint);
+        if (previous != null) {
+            if (!previous.getFingerprint().equals(fingerprint)) {
+                throw new IdempotencyKeyMismatchException(IDEMPOTENCY_KEY + " was already used for a different employee");
+            }
+            if (!previous.isCompleted()) {
+                throw new IdempotencyKeyInUseException("A request with this " + IDEMPOTENCY_KEY + " is still being processed");
+            }
+            return withETag(ResponseEntity.status(HttpStatus.CREATED), previous.getResponse())
+                    .header(IDEMPOTENT_REPLAYED, "true")
+                    .body(previous.getResponse());
+        }
+
+        EmployeeData savedEmployee;
+        try {
+            savedEmployee = employeeService.createEmployee(employeeData);
+        } catch (RuntimeException e) {
+            idempotencyStore.release(idempotencyKey);
+            throw e;
+        }
+        idempotencyStore.complete(idempotencyKey, fingerprint, savedEmployee);
+
+        return withETag(ResponseEntity.status(HttpStatus.CREATED), savedEmployee).body(savedEmployee);
+    }
+
+    // Every element is validated before anything is written. If any of them is invalid nothing is created and
+    // the response lists the failures of each invalid element by its index in the request array
+    @PostMapping(value = "batch", produces = {"application/json", APPLICATION_SMILE_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_PROTOBUF_VALUE}, consumes = {"application/json", APPLICATION_SMILE_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_PROTOBUF_VALUE})
+    public ResponseEntity<List<EmployeeData>> createEmployees(@RequestBody List<EmployeeData> employees) {
+        if (employees.isEmpty() || employees.size() > MAX_BATCH_SIZE) {
+            throw new InvalidRequestException("A batch must contain between 1 and " + MAX_BATCH_SIZE + " employees");
+        }
+
+        List<BatchItemError> errors = validateBatch(employees);
+        if (!errors.isEmpty()) {
+            throw new BatchValidationException(errors);
+        }
+
+        List<EmployeeData> savedEmployees = employeeService.createEmployees(employees);
 
-        return new ResponseEntity<>(savedEmployee, HttpStatus.CREATED);
+        return new ResponseEntity<>(savedEmployees, HttpStatus.CREATED);
     }
 
-    @GetMapping("{id}")
+    // A GET with If-None-Match set to the current ETag gets 304 Not Modified and the body isn't serialized
+    @GetMapping(value = "{id}", produces = {"application/json", APPLICATION_SMILE_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_PROTOBUF_VALUE})
     public ResponseEntity<EmployeeData> getEmployeeById(@PathVariable("id") Long employeeId) {
         EmployeeData employeeData = employeeService.getEmployeeById(employeeId);
 
-        return ResponseEntity.ok(employeeData);
+        return withETag(ResponseEntity.ok(), employeeData).body(employeeData);
     }
 
-    @GetMapping(produces = "application/json")
-    public ResponseEntity<List<EmployeeData>> getAllEmployees() {
-        List<EmployeeData> employees = employeeService.getAllEmployees();
+    // Resolves many ids in one request, e.g. a team roster. Duplicate ids are returned once, in the order they
+    // were first requested, and ids without an employee are listed in missingIds instead of failing the request
+    @PostMapping(value = "lookup", produces = {"application/json", APPLICATION_SMILE_VALUE, APPLICATION_CBOR_VALUE}, consumes = {"application/json", APPLICATION_SMILE_VALUE, APPLICATION_CBOR_VALUE})
+    public ResponseEntity<EmployeeLookup> getEmployeesByIds(@RequestBody List<Long> employeeIds) {
+        EmployeeLookup employees = employeeService.getEmployeesByIds(employeeIds);
 
         return ResponseEntity.ok(employees);
     }
 
-    @PutMapping("{id}")
+    // Aggregates for reporting, kept up to date by every write instead of computed from the list
+    @GetMapping(value = "stats", produces = {"application/json", APPLICATION_SMILE_VALUE, APPLICATION_CBOR_VALUE})
+    public ResponseEntity<EmployeeStats> getStatistics() {
+        return ResponseEntity.ok(employeeService.getStatistics());
+    }
+
+    // Type-ahead over first name, last name and email, e.g. GET /api/employees/search?q=dan%20sm&limit=10.
+    // Every word must be the start of a name, email or email domain
+    @GetMapping(value = "search", produces = {"application/json", APPLICATION_SMILE_VALUE, APPLICATION_CBOR_VALUE})
+    public ResponseEntity<List<EmployeeSearchResult>> searchEmployees(@RequestParam("q") String query,
+                                                                      @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        List<EmployeeSearchResult> results = employeeService.searchEmployees(query, limit);
+
+        return ResponseEntity.ok(results);
+    }
+
+    // The list endpoints are tagged with the collection version, so a poll with an up-to-date If-None-Match
+    // gets 304 Not Modified without querying the database at all. The unfiltered list goes out from the gzipped
+    // EmployeeListSnapshot when it is current and the client takes gzipped JSON.
+    // Filters narrow the list in the database, e.g. GET /api/employees?lastName=Smith&minAge=30&maxAge=40,
+    // GET /api/employees?emailDomain=gmail.com&sort=-age,lastName (a leading '-' sorts descending)
+    // size and fields belong to the endpoints below. Asked for in a format those can't produce (Protobuf), they are
+    // a 400 instead of falling through to this full list
+    @GetMapping(produces = {"application/json", APPLICATION_SMILE_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_PROTOBUF_VALUE},
+            params = {"!fields", "!size"})
+    public ResponseEntity<List<EmployeeData>> getAllEmployees(@RequestParam(value = "lastName", required = false) String lastName,
+                                                              @RequestParam(value = "minAge", required = false) Integer minAge,
+                                                              @RequestParam(value = "maxAge", required = false) Integer maxAge,
+                                                              @RequestParam(value = "emailDomain", required = false) String emailDomain,
+                                                              @RequestParam(value = "sort", required = false) List<String> sort,
+                                                              WebRequest webRequest,
+                                                              HttpServletResponse response) throws IOException {
+        EmployeeFilter filter = new EmployeeFilter(lastName, minAge, maxAge, emailDomain, sort);
+        String collectionVersion = employeeService.getCollectionVersion();
+        if (isCollectionNotModified(webRequest, collectionVersion)) {
+            return null;
+        }
+        if (filter.isEmpty() && sendListSnapshot(webRequest, response, collectionVersion)) {
+            return null;
+        }
+
+        List<EmployeeData> employees = filter.isEmpty()
+                ? employeeService.getAllEmployees()
+                : employeeService.findEmployees(filter);
+
+        return ResponseEntity.ok(employees);
+    }
+
+    // Sparse fieldsets: GET /api/employees?fields=id,email only selects and returns those fields of each employee,
+    // e.g. [{"id":1,"email":"John@gmail.com"}]. Takes the same filters as the full list
+    @GetMapping(produces = {"application/json", APPLICATION_SMILE_VALUE, APPLICATION_CBOR_VALUE}, params = {"fields", "!size"})
+    public ResponseEntity<List<EmployeeFields>> getEmployeeFields(@RequestParam("fields") List<String> fields,
+                                                                  @RequestParam(value = "lastName", required = false) String lastName,
+                                                                  @RequestParam(value = "minAge", required = false) Integer minAge,
+                                                                  @RequestParam(value = "maxAge", required = false) Integer maxAge,
+                                                                  @RequestParam(value = "emailDomain", required = false) String emailDomain,
+                                                                  @RequestParam(value = "sort", required = false) List<String> sort,
+                                                                  WebRequest webRequest) {
+        EmployeeFilter filter = new EmployeeFilter(lastName, minAge, maxAge, emailDomain, sort);
+        if (isCollectionNotModified(webRequest)) {
+            return null;
+        }
+
+        List<EmployeeFields> employees = employeeService.findEmployeeFields(filter, fields);
+
+        return ResponseEntity.ok(employees);
+    }
+
+    // GET /api/employees?size=50&page=3 pages by offset, GET /api/employees?size=50&cursor=... seeks by id.
+    // Deep pages should follow the nextCursor of the previous response, which costs the same as the first page.
+    @GetMapping(produces = {"application/json", APPLICATION_SMILE_VALUE, APPLICATION_CBOR_VALUE}, params = "size")
+    public ResponseEntity<EmployeePage> getEmployeePage(@RequestParam("size") int size,
+                                                        @RequestParam(value = "page", required = false) Integer page,
+                                                        @RequestParam(value = "cursor", required = false) String cursor,
+                                                        WebRequest webRequest) {
+        if (page != null && cursor != null) {
+            throw new InvalidRequestException("Use either page or cursor, not both");
+        }
+        if (LIST_PARAMETERS.stream().anyMatch(parameter -> webRequest.getParameter(parameter) != null)) {
+            throw new InvalidRequestException("Filters and fields can't be combined with size, page or cursor");
+        }
+        if (isCollectionNotModified(webRequest)) {
+            return null;
+        }
+
+        EmployeePage employees = cursor != null
+                ? employeeService.getEmployeesAfter(cursor, size)
+                : employeeService.getEmployeePage(page != null ? page : 0, size);
+
+        return ResponseEntity.ok(employees);
+    }
+
+    // Writes every employee as one JSON document per line while the rows are still being read from the database,
+    // so memory stays flat however big the table is. Headers and the first line are flushed right away.
+    @GetMapping(value = "stream", produces = APPLICATION_NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamAllEmployees() {
+        StreamingResponseBody body = outputStream -> {
+            int[] written = {0};
+            outputStream.flush();
+
+            employeeService.streamAllEmployees(employeeData -> {
+                writeLine(outputStream, employeeData);
+                if (++written[0] % STREAM_FLUSH_INTERVAL == 1) {
+                    flush(outputStream);
+                }
+            });
+        };
+
+        return ResponseEntity.ok().header("Content-Type", APPLICATION_NDJSON).body(body);
+    }
+
+    // Every create, update and delete after the change numbered since, oldest first. A client keeps the seq of the
+    // last change it got and asks for the ones after it next time. 410 Gone when those have been purged already
+    @GetMapping(value = "changes", produces = {"application/json", APPLICATION_SMILE_VALUE, APPLICATION_CBOR_VALUE})
+    public ResponseEntity<List<EmployeeChangeData>> getChanges(@RequestParam("since") long since,
+                                                               @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        return ResponseEntity.ok(employeeService.getChangesSince(since, limit));
+    }
+
+    // The same changes as Server-Sent Events, then every new one as it commits. The event id is the seq, so a client
+    // reconnecting with Last-Event-ID (which EventSource does by itself) carries on after the last change it got
+    @GetMapping(value = "changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter followChanges(@RequestParam(value = "since", defaultValue = "0") long since,
+                                    @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        if (changeFeed == null) {
+            throw new ChangesUnavailableException("There is no change log without a database");
+        }
+        return changeFeed.subscribe(lastEventId != null ? lastEventId : since);
+    }
+
+    // Send the ETag of the last GET as If-Match to only update the employee if nobody changed it in the meantime,
+    // otherwise the response is 412 Precondition Failed. The version field of the body works the same way
+    @PutMapping(value = "{id}", produces = {"application/json", APPLICATION_SMILE_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_PROTOBUF_VALUE})
     public ResponseEntity<EmployeeData> updateEmployee(@PathVariable("id") Long employeeID,
+                                                       @RequestHeader(value = "If-Match", required = false) String ifMatch,
                                                        @RequestBody EmployeeData updatedEmployee) {
+        if (ifMatch != null) {
+            updatedEmployee = withVersion(updatedEmployee, ETags.requiredVersion(ifMatch));
+        }
+
         EmployeeData employeeData = employeeService.updateEmployee(employeeID, updatedEmployee);
-        return ResponseEntity.ok(employeeData);
+        return withETag(ResponseEntity.ok(), employeeData).body(employeeData);
     }
 
     @DeleteMapping("{id}")
@@ -51,4 +316,144 @@ public class EmployeeController {
 
         return ResponseEntity.ok("Employee deleted successfully!");
     }
+
+    private void writeLine(OutputStream outputStream, EmployeeData employeeData) {
+        try {
+            outputStream.write(objectMapper.writeValueAsBytes(employeeData));
+            outputStream.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void flush(OutputStream outputStream) {
+        try {
+            outputStream.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @ExceptionHandler(BatchValidationException.class)
+    public ResponseEntity<List<BatchItemError>> handleBatchValidationException(BatchValidationException e) {
+        return ResponseEntity.badRequest().body(e.getErrors());
+    }
+
+    // Sets the ETag of the list on the response and tells whether the client's copy is still current, in which
+    // case the response is already a 304. The version is read before the query, so a write that commits while
+    // the list is being read makes the next request fetch it again
+    private boolean isCollectionNotModified(WebRequest webRequest) {
+        return isCollectionNotModified(webRequest, employeeService.getCollectionVersion());
+    }
+
+    private static boolean isCollectionNotModified(WebRequest webRequest, String collectionVersion) {
+        String eTag = ETags.ofCollectionVersion(collectionVersion);
+        return eTag != null && webRequest.checkNotModified(eTag);
+    }
+
+    // Writes the snapshot bytes as the response if there is a current one and the client takes it: gzip in
+    // Accept-Encoding, and an Accept that JSON satisfies without naming one of the binary formats
+    private boolean sendListSnapshot(WebRequest webRequest, HttpServletResponse response, String collectionVersion)
+            throws IOException {
+        if (listSnapshot == null || !acceptsGzip(webRequest.getHeader(HttpHeaders.ACCEPT_ENCODING))
+                || !prefersJson(webRequest.getHeader(HttpHeaders.ACCEPT))) {
+            return false;
+        }
+        byte[] snapshot = listSnapshot.getIfCurrent(collectionVersion);
+        if (snapshot == null) {
+            return false;
+        }
+
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        response.setContentLength(snapshot.length);
+        response.getOutputStream().write(snapshot);
+        return true;
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            String name = parts[0].trim();
+            if ((name.equalsIgnoreCase("gzip") || name.equals("*")) && !(parts.length > 1 && isZeroQuality(parts[1]))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isZeroQuality(String parameter) {
+        String[] nameAndValue = parameter.trim().split("=");
+        try {
+            return nameAndValue.length == 2 && nameAndValue[0].trim().equalsIgnoreCase("q")
+                    && Double.parseDouble(nameAndValue[1].trim()) == 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static boolean prefersJson(String accept) {
+        if (accept == null) {
+            return true;
+        }
+        try {
+            List<MediaType> mediaTypes = MediaType.parseMediaTypes(accept);
+            return mediaTypes.stream().anyMatch(type -> type.includes(MediaType.APPLICATION_JSON) && type.getQualityValue() > 0)
+                    && mediaTypes.stream().noneMatch(type -> BINARY_FORMATS.stream().anyMatch(type::equalsTypeAndSubtype));
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+    }
+
+    // SHA-256 of the request body as we read it, so the same employee sent with different whitespace still matches
+    private String fingerprint(EmployeeData employeeData) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(employeeData));
+            return HexFormat.of().formatHex(digest);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not fingerprint the request", e);
+        }
+    }
+
+    private static ResponseEntity.BodyBuilder withETag(ResponseEntity.BodyBuilder response, EmployeeData employeeData) {
+        String eTag = ETags.ofVersion(employeeData != null ? employeeData.getVersion() : null);
+        return eTag != null ? response.eTag(eTag) : response;
+    }
+
+    private static EmployeeData withVersion(EmployeeData employeeData, Long version) {
+        return new EmployeeData.EmployeeDataBuilder(employeeData.getId(),
+                employeeData.getFirstName(),
+                employeeData.getLastName(),
+                employeeData.getEmail())
+                .setAge(employeeData.getAge())
+                .setPhone(employeeData.getPhone())
+                .setVersion(version)
+                .build();
+    }
+
+    private List<BatchItemError> validateBatch(List<EmployeeData> employees) {
+        List<BatchItemError> errors = new ArrayList<>();
+
+        for (int i = 0; i < employees.size(); i++) {
+            EmployeeData employeeData = employees.get(i);
+            if (employeeData == null) {
+                errors.add(new BatchItemError(i, List.of("Employee must not be null")));
+                continue;
+            }
+
+            List<String> messages = validator.validate(employeeData).stream()
+                    .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.toList());
+            if (!messages.isEmpty()) {
+                errors.add(new BatchItemError(i, messages));
+            }
+        }
+
+        return errors;
+    }
 }
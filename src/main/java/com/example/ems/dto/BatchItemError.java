@@ -0,0 +1,22 @@
+package com.example.ems.dto;
+
+import java.util.List;
+
+// Validation failures of one element of a batch request, identified by its position in the request array
+public class BatchItemError {
+    private final int index;
+    private final List<String> messages;
+
+    public BatchItemError(int index, List<String> messages) {
+        this.index = index;
+        this.messages = messages;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public List<String> getMessages() {
+        return messages;
+    }
+}
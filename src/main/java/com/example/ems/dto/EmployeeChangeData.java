@@ -0,0 +1,44 @@
+package com.example.ems.dto;
+
+import com.example.ems.entity.EmployeeChange;
+
+import java.time.Instant;
+
+// One entry of GET /api/employees/changes. employee is null for a delete, and an update written without If-Match
+// carries no version
+public class EmployeeChangeData {
+    private final long seq;
+    private final EmployeeChange.Type type;
+    private final Long employeeId;
+    private final EmployeeData employee;
+    private final Instant changedAt;
+
+    public EmployeeChangeData(long seq, EmployeeChange.Type type, Long employeeId, EmployeeData employee,
+                              Instant changedAt) {
+        this.seq = seq;
+        this.type = type;
+        this.employeeId = employeeId;
+        this.employee = employee;
+        this.changedAt = changedAt;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public EmployeeChange.Type getType() {
+        return type;
+    }
+
+    public Long getEmployeeId() {
+        return employeeId;
+    }
+
+    public EmployeeData getEmployee() {
+        return employee;
+    }
+
+    public Instant getChangedAt() {
+        return changedAt;
+    }
+}
@@ -19,6 +19,19 @@ public class EmployeeData {
     private final String email;
     private final Integer age;
     private final String phone;
+    private final Long version;
+
+    // used by the projection queries of EmployeeRepository to build results straight from the JDBC result set
+    public EmployeeData(Long id, String firstName, String lastName, String email, Integer age, String phone,
+                        Long version) {
+        this.id = id;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.email = email;
+        this.age = age;
+        this.phone = phone;
+        this.version = version;
+    }
 
     private EmployeeData(EmployeeDataBuilder builder) {
         this.id = builder.id;
@@ -27,6 +40,7 @@ public class EmployeeData {
         this.email = builder.email;
         this.age = builder.age;
         this.phone = builder.phone;
+        this.version = builder.version;
     }
 
     public Long getId() {
@@ -53,6 +67,10 @@ public class EmployeeData {
         return phone;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
     @JsonPOJOBuilder(buildMethodName = "build", withPrefix = "set")
     public static class EmployeeDataBuilder {
         private final Long id;
@@ -61,6 +79,7 @@ public class EmployeeData {
         private final String email;
         private Integer age;
         private String phone;
+        private Long version;
 
         public EmployeeDataBuilder(Long id, String firstName, String lastName, String email) {
             this.id = id;
@@ -79,6 +98,11 @@ public class EmployeeData {
             return this;
         }
 
+        public EmployeeDataBuilder setVersion(Long version) {
+            this.version = version;
+            return this;
+        }
+
         public EmployeeData build() {
             return new EmployeeData(this);
         }
@@ -0,0 +1,50 @@
+package com.example.ems.dto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.List;
+
+// Some of the fields of an employee, serialized as a JSON object with just those fields in the order they were
+// selected, e.g. {"id":1,"email":"John@gmail.com"}. Wraps the row as read from the database, and every row of a
+// result shares the same list of names, so a row costs one small object instead of a map
+@JsonSerialize(using = EmployeeFields.Serializer.class)
+public class EmployeeFields {
+    private final List<String> names;
+    private final Object[] values;
+
+    public EmployeeFields(List<String> names, Object[] values) {
+        this.names = names;
+        this.values = values;
+    }
+
+    public List<String> getNames() {
+        return names;
+    }
+
+    // the value of the given field, or null if it wasn't selected
+    public Object get(String name) {
+        int index = names.indexOf(name);
+        return index >= 0 ? values[index] : null;
+    }
+
+    static class Serializer extends StdSerializer<EmployeeFields> {
+
+        Serializer() {
+            super(EmployeeFields.class);
+        }
+
+        @Override
+        public void serialize(EmployeeFields fields, JsonGenerator generator, SerializerProvider provider)
+                throws IOException {
+            generator.writeStartObject();
+            for (int i = 0; i < fields.names.size(); i++) {
+                provider.defaultSerializeField(fields.names.get(i), fields.values[i], generator);
+            }
+            generator.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.ems.dto;
+
+import java.util.List;
+
+// The filters of GET /api/employees, e.g. ?lastName=Smith&minAge=30&emailDomain=gmail.com&sort=-age,firstName.
+// A null field doesn't filter, sort lists the fields to order by with a leading '-' for descending
+public class EmployeeFilter {
+    private final String lastName;
+    private final Integer minAge;
+    private final Integer maxAge;
+    private final String emailDomain;
+    private final List<String> sort;
+
+    public EmployeeFilter(String lastName, Integer minAge, Integer maxAge, String emailDomain, List<String> sort) {
+        this.lastName = lastName;
+        this.minAge = minAge;
+        this.maxAge = maxAge;
+        this.emailDomain = emailDomain;
+        this.sort = sort != null ? sort : List.of();
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public Integer getMinAge() {
+        return minAge;
+    }
+
+    public Integer getMaxAge() {
+        return maxAge;
+    }
+
+    public String getEmailDomain() {
+        return emailDomain;
+    }
+
+    public List<String> getSort() {
+        return sort;
+    }
+
+    public boolean isEmpty() {
+        return lastName == null && minAge == null && maxAge == null && emailDomain == null && sort.isEmpty();
+    }
+}
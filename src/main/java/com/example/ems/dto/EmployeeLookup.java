@@ -0,0 +1,23 @@
+package com.example.ems.dto;
+
+import java.util.List;
+
+// Result of looking up many employees at once: the employees that exist, in the order their ids were requested,
+// and the requested ids that don't match any employee
+public class EmployeeLookup {
+    private final List<EmployeeData> employees;
+    private final List<Long> missingIds;
+
+    public EmployeeLookup(List<EmployeeData> employees, List<Long> missingIds) {
+        this.employees = employees;
+        this.missingIds = missingIds;
+    }
+
+    public List<EmployeeData> getEmployees() {
+        return employees;
+    }
+
+    public List<Long> getMissingIds() {
+        return missingIds;
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.ems.dto;
+
+import java.util.List;
+
+// One page of employees ordered by id. nextCursor is an opaque token pointing just past the last employee
+// of this page; passing it back as ?cursor= seeks straight to the next page by id instead of using OFFSET,
+// so page 10 000 costs the same as page 1. It is absent when there are no more employees.
+public class EmployeePage {
+    private final List<EmployeeData> content;
+    private final Integer page;
+    private final int size;
+    private final boolean hasNext;
+    private final String nextCursor;
+
+    public EmployeePage(List<EmployeeData> content, Integer page, int size, boolean hasNext, String nextCursor) {
+        this.content = content;
+        this.page = page;
+        this.size = size;
+        this.hasNext = hasNext;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<EmployeeData> getContent() {
+        return content;
+    }
+
+    public Integer getPage() {
+        return page;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isHasNext() {
+        return hasNext;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
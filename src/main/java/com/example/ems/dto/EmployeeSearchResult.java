@@ -0,0 +1,38 @@
+package com.example.ems.dto;
+
+// One match of GET /api/employees/search: just what a type-ahead needs to show, plus the score it was ranked by
+public class EmployeeSearchResult {
+    private final Long id;
+    private final String firstName;
+    private final String lastName;
+    private final String email;
+    private final int score;
+
+    public EmployeeSearchResult(Long id, String firstName, String lastName, String email, int score) {
+        this.id = id;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.email = email;
+        this.score = score;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public int getScore() {
+        return score;
+    }
+}
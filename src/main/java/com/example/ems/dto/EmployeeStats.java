@@ -0,0 +1,36 @@
+package com.example.ems.dto;
+
+import java.util.Map;
+
+// Response of GET /api/employees/stats. ageHistogram has a count for every age bucket, in order, and topEmailDomains
+// the most common domains with their counts, most common first. averageAge is null without any known age
+public class EmployeeStats {
+    private final long headcount;
+    private final Double averageAge;
+    private final Map<String, Long> ageHistogram;
+    private final Map<String, Long> topEmailDomains;
+
+    public EmployeeStats(long headcount, Double averageAge, Map<String, Long> ageHistogram,
+                         Map<String, Long> topEmailDomains) {
+        this.headcount = headcount;
+        this.averageAge = averageAge;
+        this.ageHistogram = ageHistogram;
+        this.topEmailDomains = topEmailDomains;
+    }
+
+    public long getHeadcount() {
+        return headcount;
+    }
+
+    public Double getAverageAge() {
+        return averageAge;
+    }
+
+    public Map<String, Long> getAgeHistogram() {
+        return ageHistogram;
+    }
+
+    public Map<String, Long> getTopEmailDomains() {
+        return topEmailDomains;
+    }
+}
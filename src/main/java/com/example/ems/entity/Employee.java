@@ -2,14 +2,22 @@ package com.example.ems.entity;
 
 import jakarta.persistence.*;
 import lombok.Builder;
+import org.hibernate.annotations.ColumnDefault;
 
-@Builder
 @Entity
-@Table(name = "employees")
+// indexes for the filters of GET /api/employees: last name (optionally with an age range), age range and email domain
+@Table(name = "employees", indexes = {
+        @Index(name = "idx_employees_last_name_age", columnList = "last_name, age"),
+        @Index(name = "idx_employees_age", columnList = "age"),
+        @Index(name = "idx_employees_email_domain", columnList = "email_domain")
+})
 public class Employee {
 
+    // IDENTITY would make Hibernate run every INSERT on its own to read the generated key back, which disables JDBC
+    // batching. A pooled sequence hands out ids 50 at a time without touching the database, so inserts can be batched
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "employees_seq")
+    @SequenceGenerator(name = "employees_seq", sequenceName = "employees_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "first_name", nullable = false, length = 20)
@@ -21,23 +29,43 @@ public class Employee {
     @Column(name = "email_id", nullable = false, unique = true, length = 50)
     private String email;
 
+    // computed by the database from email_id, so filtering by domain can use an index instead of scanning the table
+    // with LIKE '%@domain'. Never written by us, and only read by queries
+    @Column(name = "email_domain", length = 50, insertable = false, updatable = false,
+            columnDefinition = "varchar(50) generated always as (lower(substring(email_id, locate('@', email_id) + 1)))")
+    private String emailDomain;
+
     @Column(name = "age")
     private Integer age;
 
     @Column(name = "phone")
     private String phone;
 
+    // bumped by every update, so a client can tell whether the employee changed since it last read it.
+    // The column default also gives existing rows a version when the column is added to them
+    @Version
+    @ColumnDefault("0")
+    @Column(name = "version", nullable = false)
+    private Long version;
+
     public Employee() {
 
     }
 
     public Employee(Long id, String firstName, String lastName, String email, Integer age, String phone) {
+        this(id, firstName, lastName, email, age, phone, null);
+    }
+
+    // email_domain is left out, the database fills it in
+    @Builder
+    public Employee(Long id, String firstName, String lastName, String email, Integer age, String phone, Long version) {
         this.id = id;
         this.firstName = firstName;
         this.lastName = lastName;
         this.email = email;
         this.age = age;
         this.phone = phone;
+        this.version = version;
     }
 
     public Long getId() {
@@ -72,6 +100,10 @@ public class Employee {
         this.email = email;
     }
 
+    public String getEmailDomain() {
+        return emailDomain;
+    }
+
     public Integer getAge() {
         return age;
     }
@@ -87,4 +119,12 @@ public class Employee {
     public void setPhone(String phone) {
         this.phone = phone;
     }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
 }
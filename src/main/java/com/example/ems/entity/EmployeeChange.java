@@ -0,0 +1,65 @@
+package com.example.ems.entity;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+// One row of the employee change log, written in the same transaction as the change itself. seq orders the changes
+// and is handed out by EmployeeChangeLog. employee is the employee as written, as JSON, and null for a delete
+@Entity
+@Table(name = "employee_changes", indexes = @Index(name = "idx_employee_changes_changed_at", columnList = "changed_at"))
+public class EmployeeChange {
+
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+
+    @Id
+    @Column(name = "seq")
+    private Long seq;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", nullable = false, length = 10)
+    private Type type;
+
+    @Column(name = "employee_id", nullable = false)
+    private Long employeeId;
+
+    @Column(name = "employee", length = 1000)
+    private String employee;
+
+    @Column(name = "changed_at", nullable = false)
+    private Instant changedAt;
+
+    public EmployeeChange() {
+
+    }
+
+    public EmployeeChange(Long seq, Type type, Long employeeId, String employee, Instant changedAt) {
+        this.seq = seq;
+        this.type = type;
+        this.employeeId = employeeId;
+        this.employee = employee;
+        this.changedAt = changedAt;
+    }
+
+    public Long getSeq() {
+        return seq;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Long getEmployeeId() {
+        return employeeId;
+    }
+
+    public String getEmployee() {
+        return employee;
+    }
+
+    public Instant getChangedAt() {
+        return changedAt;
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.ems.exception;
+
+import com.example.ems.dto.BatchItemError;
+
+import java.util.List;
+
+public class BatchValidationException extends RuntimeException {
+
+    private final List<BatchItemError> errors;
+
+    public BatchValidationException(List<BatchItemError> errors) {
+        super(errors.size() + " batch item(s) failed validation");
+        this.errors = errors;
+    }
+
+    public List<BatchItemError> getErrors() {
+        return errors;
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.ems.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+// the changes after the requested sequence number have been purged, the client has to read the employees again
+@ResponseStatus(value = HttpStatus.GONE)
+public class ChangesExpiredException extends RuntimeException {
+
+    public ChangesExpiredException(String message) {
+        super(message);
+    }
+}
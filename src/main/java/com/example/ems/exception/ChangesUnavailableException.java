@@ -0,0 +1,13 @@
+package com.example.ems.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+// the change log lives in the database, so there are no changes to read when the application runs without one
+@ResponseStatus(value = HttpStatus.NOT_IMPLEMENTED)
+public class ChangesUnavailableException extends RuntimeException {
+
+    public ChangesUnavailableException(String message) {
+        super(message);
+    }
+}
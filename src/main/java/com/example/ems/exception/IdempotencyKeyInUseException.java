@@ -0,0 +1,13 @@
+package com.example.ems.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+// the request that first used the Idempotency-Key hasn't finished yet, the client should retry a bit later
+@ResponseStatus(value = HttpStatus.CONFLICT)
+public class IdempotencyKeyInUseException extends RuntimeException {
+
+    public IdempotencyKeyInUseException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.ems.idempotency;
+
+import com.example.ems.dto.EmployeeData;
+import com.example.ems.entity.IdempotencyKey;
+import com.example.ems.repository.IdempotencyKeyRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+// Keys in the idempotency_keys table, shared by every instance and kept across restarts. A replay costs one SELECT by
+// primary key, and rows older than ems.idempotency.ttl are deleted every ems.idempotency.cleanup-interval.
+//
+// A claim that never got its response, because the instance died between the insert and complete, would answer every
+// retry with 409 until the ttl is up. Such a claim only holds the key for ems.idempotency.lease, after that a retry
+// takes it over, so the lease has to be longer than any create can take
+@Component
+@ConditionalOnProperty(name = "ems.idempotency.store", havingValue = "database")
+public class DatabaseIdempotencyStore implements IdempotencyStore {
+
+    private static final Logger log = LoggerFactory.getLogger(DatabaseIdempotencyStore.class);
+
+    private final IdempotencyKeyRepository repository;
+
+    private final ObjectMapper objectMapper;
+
+    private final Duration ttl;
+
+    private final Duration lease;
+
+    public DatabaseIdempotencyStore(IdempotencyKeyRepository repository, ObjectMapper objectMapper,
+                                    @Value("${ems.idempotency.ttl:24h}") Duration ttl,
+                                    @Value("${ems.idempotency.lease:1m}") Duration lease) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+        this.ttl = ttl;
+        this.lease = lease;
+    }
+
+    @Override
+    public IdempotencyRecord claim(String key, String fingerprint) {
+        Optional<IdempotencyKey> existing = repository.findById(key);
+        if (existing.isPresent()) {
+            if (!isExpired(existing.get())) {
+                return toRecord(existing.get());
+            }
+            // Expired but not cleaned up yet, or abandoned, so it no longer counts. Two retries may both get here, the
+            // delete is conditional so the second one can't delete the claim the first one has just inserted
+            Instant now = Instant.now();
+            repository.deleteExpiredKey(key, now.minus(ttl), now.minus(lease));
+        }
+
+        try {
+            repository.insertClaim(key, fingerprint, Instant.now());
+            return null;
+        } catch (DataIntegrityViolationException e) {
+            // another request claimed the key between our SELECT and INSERT, and is most likely still running
+            return repository.findById(key).map(this::toRecord)
+                    .orElseGet(() -> new IdempotencyRecord(fingerprint, null));
+        }
+    }
+
+    @Override
+    public void complete(String key, String fingerprint, EmployeeData response) {
+        try {
+            repository.completeClaim(key, objectMapper.writeValueAsString(response));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void release(String key) {
+        repository.deleteByKey(key);
+    }
+
+    @Scheduled(fixedDelayString = "${ems.idempotency.cleanup-interval:PT1M}")
+    public void deleteExpiredKeys() {
+        int deleted = repository.deleteCreatedBefore(Instant.now().minus(ttl));
+        if (deleted > 0) {
+            log.debug("Deleted {} expired idempotency keys", deleted);
+        }
+    }
+
+    private boolean isExpired(IdempotencyKey idempotencyKey) {
+        Duration heldFor = idempotencyKey.getResponse() == null ? lease : ttl;
+        return idempotencyKey.getCreatedAt().isBefore(Instant.now().minus(heldFor));
+    }
+
+    private IdempotencyRecord toRecord(IdempotencyKey idempotencyKey) {
+        if (idempotencyKey.getResponse() == null) {
+            return new IdempotencyRecord(idempotencyKey.getRequestHash(), null);
+        }
+        try {
+            return new IdempotencyRecord(idempotencyKey.getRequestHash(),
+                    objectMapper.readValue(idempotencyKey.getResponse(), EmployeeData.class));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
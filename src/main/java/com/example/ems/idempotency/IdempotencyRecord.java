@@ -0,0 +1,27 @@
+package com.example.ems.idempotency;
+
+import com.example.ems.dto.EmployeeData;
+
+// What is stored under an Idempotency-Key: a fingerprint of the request that first used the key and, once that request
+// has succeeded, the employee it created. A record without a response belongs to a request that is still running
+public class IdempotencyRecord {
+    private final String fingerprint;
+    private final EmployeeData response;
+
+    public IdempotencyRecord(String fingerprint, EmployeeData response) {
+        this.fingerprint = fingerprint;
+        this.response = response;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public EmployeeData getResponse() {
+        return response;
+    }
+
+    public boolean isCompleted() {
+        return response != null;
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.ems.idempotency;
+
+import com.example.ems.dto.EmployeeData;
+
+// Remembers the Idempotency-Key of every POST /api/employees for a while, so a client retrying a request it didn't get
+// an answer to gets the original response back instead of a second insert. Keys expire after ems.idempotency.ttl.
+// ems.idempotency.store picks the implementation: memory (the default) or database
+public interface IdempotencyStore {
+
+    // Claims the key for a request with the given fingerprint. Returns null if the caller now owns the key and must
+    // complete or release it, otherwise the record already stored under the key
+    IdempotencyRecord claim(String key, String fingerprint);
+
+    // stores the response of the request that claimed the key, later claims get it back
+    void complete(String key, String fingerprint, EmployeeData response);
+
+    // the request that claimed the key failed, so the key can be used again
+    void release(String key);
+}
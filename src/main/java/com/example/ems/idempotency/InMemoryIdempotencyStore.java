@@ -0,0 +1,42 @@
+package com.example.ems.idempotency;
+
+import com.example.ems.dto.EmployeeData;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+// Keys held in this process only, at most ems.idempotency.maximum-size of them. Enough for a single instance: a
+// restart forgets them, and a retry that lands on another instance isn't recognised
+@Component
+@ConditionalOnProperty(name = "ems.idempotency.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryIdempotencyStore implements IdempotencyStore {
+
+    private final Cache<String, IdempotencyRecord> records;
+
+    public InMemoryIdempotencyStore(@Value("${ems.idempotency.maximum-size:100000}") long maximumSize,
+                                    @Value("${ems.idempotency.ttl:24h}") Duration ttl) {
+        this.records = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    @Override
+    public IdempotencyRecord claim(String key, String fingerprint) {
+        return records.asMap().putIfAbsent(key, new IdempotencyRecord(fingerprint, null));
+    }
+
+    @Override
+    public void complete(String key, String fingerprint, EmployeeData response) {
+        records.put(key, new IdempotencyRecord(fingerprint, response));
+    }
+
+    @Override
+    public void release(String key) {
+        records.invalidate(key);
+    }
+}
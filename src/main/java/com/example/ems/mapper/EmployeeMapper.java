@@ -13,6 +13,7 @@ public class EmployeeMapper {
                 employee.getEmail())
                 .setAge(employee.getAge())
                 .setPhone(employee.getPhone())
+                .setVersion(employee.getVersion())
                 .build();
     }
 
@@ -23,7 +24,8 @@ public class EmployeeMapper {
                 employeeData.getLastName(),
                 employeeData.getEmail(),
                 employeeData.getAge(),
-                employeeData.getPhone()
+                employeeData.getPhone(),
+                employeeData.getVersion()
         );
     }
 }
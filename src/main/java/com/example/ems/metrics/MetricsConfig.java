@@ -0,0 +1,49 @@
+package com.example.ems.metrics;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+// Besides what Spring Boot records on its own (http.server.requests per endpoint and status,
+// spring.data.repository.invocations per repository method and hikaricp.connections.acquire for the pool wait),
+// we time the service methods annotated with @Timed and every JDBC statement. Everything is served at /actuator/prometheus
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
+    }
+
+    @Bean
+    public SqlMetricsFilter sqlMetricsFilter(MeterRegistry meterRegistry,
+                                             @Value("${ems.sql.repeated-statement-threshold:10}") int repeatedStatementThreshold) {
+        return new SqlMetricsFilter(meterRegistry, repeatedStatementThreshold);
+    }
+
+    // wraps the pooled data source so every QueryExecutionListener bean (SqlMetricsListener, and in tests the
+    // statement recorder) sees every statement. The pool stays underneath, so connection pool metrics are still bound to it
+    @Bean
+    public static BeanPostProcessor sqlMetricsDataSourcePostProcessor(ObjectProvider<QueryExecutionListener> listeners) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof ProxyDataSource)) {
+                    ProxyDataSourceBuilder builder = ProxyDataSourceBuilder.create(beanName, dataSource);
+                    listeners.orderedStream().forEach(builder::listener);
+                    return builder.build();
+                }
+                return bean;
+            }
+        };
+    }
+}
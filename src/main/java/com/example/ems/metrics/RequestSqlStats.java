@@ -0,0 +1,63 @@
+package com.example.ems.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Statements run and time spent in JDBC by the request handled on the current thread.
+// SqlMetricsFilter starts and stops it around every request, SqlMetricsListener adds every statement to it
+public final class RequestSqlStats {
+
+    private static final ThreadLocal<RequestSqlStats> CURRENT = new ThreadLocal<>();
+
+    private final String endpoint;
+
+    private int statements;
+
+    private long nanos;
+
+    // how often each SQL string ran, the same SELECT running once per row is what an N+1 looks like
+    private final Map<String, Integer> executions = new HashMap<>();
+
+    private RequestSqlStats(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    static RequestSqlStats start(String endpoint) {
+        RequestSqlStats stats = new RequestSqlStats(endpoint);
+        CURRENT.set(stats);
+        return stats;
+    }
+
+    static void stop() {
+        CURRENT.remove();
+    }
+
+    // null when no request is being handled on this thread, e.g. at startup or on the /stream writer thread
+    public static RequestSqlStats current() {
+        return CURRENT.get();
+    }
+
+    void record(String sql, long elapsedNanos) {
+        statements++;
+        nanos += elapsedNanos;
+        executions.merge(sql, 1, Integer::sum);
+    }
+
+    // the SQL that ran most often in this request, or null if none ran
+    Map.Entry<String, Integer> mostRepeated() {
+        return executions.entrySet().stream().max(Map.Entry.comparingByValue()).orElse(null);
+    }
+
+    // e.g. "GET /api/employees/1"
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public int getStatements() {
+        return statements;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+}
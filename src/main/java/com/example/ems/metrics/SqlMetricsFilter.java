@@ -0,0 +1,81 @@
+package com.example.ems.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Records how many SQL statements every request ran (ems.http.sql.statements) and how long they took together
+// (ems.http.sql.time), tagged like http.server.requests so the two can be read side by side. A request that runs the
+// same SQL ems.sql.repeated-statement-threshold times or more is logged as a likely N+1.
+// Registered by MetricsConfig rather than scanned, so web slice tests don't need a MeterRegistry
+public class SqlMetricsFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(SqlMetricsFilter.class);
+
+    private final MeterRegistry meterRegistry;
+
+    private final int repeatedStatementThreshold;
+
+    public SqlMetricsFilter(MeterRegistry meterRegistry, int repeatedStatementThreshold) {
+        this.meterRegistry = meterRegistry;
+        this.repeatedStatementThreshold = repeatedStatementThreshold;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getRequestURI().startsWith("/actuator");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        RequestSqlStats stats = RequestSqlStats.start(request.getMethod() + " " + request.getRequestURI());
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            RequestSqlStats.stop();
+            record(request, response, stats);
+            checkRepeatedStatements(stats);
+        }
+    }
+
+    private void checkRepeatedStatements(RequestSqlStats stats) {
+        Map.Entry<String, Integer> mostRepeated = stats.mostRepeated();
+        if (mostRepeated != null && mostRepeated.getValue() >= repeatedStatementThreshold) {
+            log.warn("Possible N+1 on {}: ran the same statement {} times out of {}: {}", stats.getEndpoint(),
+                    mostRepeated.getValue(), stats.getStatements(), mostRepeated.getKey());
+        }
+    }
+
+    private void record(HttpServletRequest request, HttpServletResponse response, RequestSqlStats stats) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        Tags tags = Tags.of(
+                "method", request.getMethod(),
+                "uri", pattern != null ? pattern.toString() : "UNKNOWN",
+                "status", String.valueOf(response.getStatus()));
+
+        DistributionSummary.builder("ems.http.sql.statements")
+                .description("SQL statements run by a request")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(stats.getStatements());
+        Timer.builder("ems.http.sql.time")
+                .description("Time a request spent running SQL statements")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(stats.getNanos(), TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.ems.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.QueryType;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.listener.QueryUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Times every JDBC execution on the data source (a JDBC batch counts as one) in ems.sql.queries, tagged with the
+// statement type, and adds it to the statistics of the current request. Executions slower than
+// ems.sql.slow-query-threshold are logged with their bind count and the request that ran them
+@Component
+public class SqlMetricsListener implements QueryExecutionListener {
+
+    private static final Logger log = LoggerFactory.getLogger(SqlMetricsListener.class);
+
+    private static final String START_NANOS = SqlMetricsListener.class.getName() + ".start";
+
+    private final Map<QueryType, Timer> timers = new EnumMap<>(QueryType.class);
+
+    private final long slowQueryNanos;
+
+    public SqlMetricsListener(MeterRegistry meterRegistry,
+                              @Value("${ems.sql.slow-query-threshold:200ms}") Duration slowQueryThreshold) {
+        for (QueryType type : QueryType.values()) {
+            timers.put(type, Timer.builder("ems.sql.queries")
+                    .description("JDBC statement executions")
+                    .tag("type", type.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry));
+        }
+        this.slowQueryNanos = slowQueryThreshold.toNanos();
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        execInfo.addCustomValue(START_NANOS, System.nanoTime());
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        long elapsedNanos = System.nanoTime() - execInfo.getCustomValue(START_NANOS, Long.class);
+        String sql = queryInfoList.isEmpty() ? "" : queryInfoList.get(0).getQuery();
+        timers.get(queryInfoList.isEmpty() ? QueryType.OTHER : QueryUtils.getQueryType(sql))
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+
+        RequestSqlStats stats = RequestSqlStats.current();
+        if (stats != null) {
+            stats.record(sql, elapsedNanos);
+        }
+
+        if (elapsedNanos >= slowQueryNanos) {
+            log.warn("Slow query took {} ms with {} bind parameters{} on {}: {}",
+                    TimeUnit.NANOSECONDS.toMillis(elapsedNanos), bindCount(queryInfoList),
+                    execInfo.isBatch() ? " in a batch of " + execInfo.getBatchSize() : "",
+                    stats != null ? stats.getEndpoint() : "no request", sql);
+        }
+    }
+
+    // parameters bound over all the queries of the execution, and over every row of a batch
+    private static int bindCount(List<QueryInfo> queryInfoList) {
+        return queryInfoList.stream()
+                .flatMap(queryInfo -> queryInfo.getParametersList().stream())
+                .mapToInt(List::size)
+                .sum();
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.ems.offheap;
+
+// Open addressing map from long keys to int values in two parallel primitive arrays, so an entry costs 12 bytes and
+// no objects: no boxed Long, no node, nothing for the garbage collector to trace. Linear probing, kept at most half
+// full, and removal shifts the entries after the removed one back instead of leaving tombstones behind.
+// Not thread safe, OffHeapEmployeeStore guards it with its lock
+final class LongIntHashMap {
+
+    static final int NO_VALUE = -1;
+
+    private static final int MIN_CAPACITY = 16;
+
+    // key 0 marks a free bucket, so 0 itself is kept aside
+    private static final long FREE = 0;
+
+    private long[] keys;
+
+    private int[] values;
+
+    private int mask;
+
+    private int size;
+
+    private boolean hasZeroKey;
+
+    private int zeroValue;
+
+    LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expectedSize * 2 - 1)) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    // the value of key, or NO_VALUE. Values must not be negative
+    int get(long key) {
+        if (key == FREE) {
+            return hasZeroKey ? zeroValue : NO_VALUE;
+        }
+        for (int i = bucket(key); ; i = (i + 1) & mask) {
+            long candidate = keys[i];
+            if (candidate == key) {
+                return values[i];
+            }
+            if (candidate == FREE) {
+                return NO_VALUE;
+            }
+        }
+    }
+
+    void put(long key, int value) {
+        if (key == FREE) {
+            if (!hasZeroKey) {
+                size++;
+            }
+            hasZeroKey = true;
+            zeroValue = value;
+            return;
+        }
+        for (int i = bucket(key); ; i = (i + 1) & mask) {
+            long candidate = keys[i];
+            if (candidate == key) {
+                values[i] = value;
+                return;
+            }
+            if (candidate == FREE) {
+                keys[i] = key;
+                values[i] = value;
+                if (++size * 2 > keys.length) {
+                    resize(keys.length * 2);
+                }
+                return;
+            }
+        }
+    }
+
+    // the value key had, or NO_VALUE
+    int remove(long key) {
+        if (key == FREE) {
+            if (!hasZeroKey) {
+                return NO_VALUE;
+            }
+            hasZeroKey = false;
+            size--;
+            return zeroValue;
+        }
+        for (int i = bucket(key); ; i = (i + 1) & mask) {
+            long candidate = keys[i];
+            if (candidate == FREE) {
+                return NO_VALUE;
+            }
+            if (candidate == key) {
+                int value = values[i];
+                shiftBack(i);
+                size--;
+                return value;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    long memoryBytes() {
+        return (long) keys.length * Long.BYTES + (long) values.length * Integer.BYTES;
+    }
+
+    // Moves the entries of the probe run after the emptied bucket back into it where their own bucket allows, so
+    // every lookup still finds its key before the first free bucket
+    private void shiftBack(int emptied) {
+        int gap = emptied;
+        for (int i = (gap + 1) & mask; keys[i] != FREE; i = (i + 1) & mask) {
+            int home = bucket(keys[i]);
+            // the entry can move into the gap unless its home bucket lies cyclically in (gap, i]
+            boolean homeAfterGap = gap <= i ? gap < home && home <= i : gap < home || home <= i;
+            if (!homeAfterGap) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        keys[gap] = FREE;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != FREE) {
+                int j = bucket(key);
+                while (keys[j] != FREE) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = key;
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    private int bucket(long key) {
+        // the ids are sequential, mixing spreads them over the whole table instead of filling one run
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,461 @@
+package com.example.ems.offheap;
+
+import com.example.ems.dto.EmployeeData;
+import com.example.ems.exception.DuplicateEmailException;
+import com.example.ems.exception.InvalidRequestException;
+import com.example.ems.exception.ResourceNotFoundException;
+import com.example.ems.exception.VersionConflictException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Employees kept outside the Java heap, for running without a database (see OffHeapEmployeeService). Every employee
+// is a fixed 40 byte record in direct ByteBuffer chunks:
+//
+//    0  id         long
+//    8  version    long
+//   16  age        int, NO_AGE when there is none
+//   20  firstName  int, the id of the string in the OffHeapStringPool or NONE
+//   24  lastName   int
+//   28  email      int
+//   32  phone      int
+//   36  emailHash  int, hash of the lower cased email for the email index
+//
+// Record slots are looked up by employee id in a LongIntHashMap and by email in an open addressing table of slots,
+// and the ids are also kept in ascending order for lists and pages. All of them are primitive arrays, so however many
+// employees there are the heap only holds a handful of objects, and EmployeeData is built on the way out.
+//
+// Emails are unique regardless of case. A read-write lock makes every method atomic: reads run in parallel, and a
+// write has the store to itself while it checks the email and version and changes the record and the indexes
+public class OffHeapEmployeeStore {
+
+    static final int RECORD_SIZE = 40;
+
+    // like the varchar(255) columns of the employees table
+    public static final int MAX_STRING_LENGTH = 255;
+
+    // 1.25 MB chunks
+    private static final int CHUNK_SHIFT = 15;
+
+    private static final int RECORDS_PER_CHUNK = 1 << CHUNK_SHIFT;
+
+    private static final int NO_AGE = Integer.MIN_VALUE;
+
+    private static final int ID = 0;
+    private static final int VERSION = 8;
+    private static final int AGE = 16;
+    private static final int FIRST_NAME = 20;
+    private static final int LAST_NAME = 24;
+    private static final int EMAIL = 28;
+    private static final int PHONE = 32;
+    private static final int EMAIL_HASH = 36;
+
+    private final Lock readLock;
+
+    private final Lock writeLock;
+
+    private final OffHeapStringPool strings;
+
+    private final LongIntHashMap slotsById;
+
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+
+    private int nextSlot;
+
+    private int[] freeSlots = new int[16];
+
+    private int freeSlotCount;
+
+    // open addressing table of slot + 1 by emailHash, 0 marks a free bucket
+    private int[] emailTable;
+
+    private int emailCount;
+
+    // ascending, new ids are always the highest so creates append
+    private long[] orderedIds;
+
+    private int size;
+
+    private long lastId;
+
+    public OffHeapEmployeeStore(int expectedSize) {
+        ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        this.readLock = lock.readLock();
+        this.writeLock = lock.writeLock();
+        this.strings = new OffHeapStringPool(expectedSize);
+        this.slotsById = new LongIntHashMap(expectedSize);
+        this.emailTable = new int[Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1];
+        this.orderedIds = new long[Math.max(16, expectedSize)];
+    }
+
+    // the employee with this id, or null
+    public EmployeeData get(long id) {
+        readLock.lock();
+        try {
+            int slot = slotsById.get(id);
+            return slot != LongIntHashMap.NO_VALUE ? read(slot) : null;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // the employees among ids that exist, in the order of ids
+    public List<EmployeeData> getAll(List<Long> ids) {
+        readLock.lock();
+        try {
+            List<EmployeeData> employees = new ArrayList<>(ids.size());
+            for (Long id : ids) {
+                int slot = slotsById.get(id);
+                if (slot != LongIntHashMap.NO_VALUE) {
+                    employees.add(read(slot));
+                }
+            }
+            return employees;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // Up to limit employees with an id above afterId, in id order
+    public List<EmployeeData> findAfter(long afterId, int limit) {
+        readLock.lock();
+        try {
+            int from = Arrays.binarySearch(orderedIds, 0, size, afterId);
+            return readOrdered(from >= 0 ? from + 1 : -from - 1, limit);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // Up to limit employees from the offset-th one on, in id order
+    public List<EmployeeData> findFrom(long offset, int limit) {
+        readLock.lock();
+        try {
+            return readOrdered((int) Math.min(offset, size), limit);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // Stores a new employee under the next id, at version 0. The id and version of employee are ignored
+    public EmployeeData insert(EmployeeData employee) {
+        requireStorable(employee);
+        writeLock.lock();
+        try {
+            requireEmailAvailable(employee.getEmail(), -1);
+            return append(employee);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Stores all of the employees or, when one of their emails is taken or repeated in the batch, none of them
+    public List<EmployeeData> insertAll(List<EmployeeData> employees) {
+        employees.forEach(OffHeapEmployeeStore::requireStorable);
+        writeLock.lock();
+        try {
+            Set<String> seen = new HashSet<>();
+            List<String> repeated = new ArrayList<>();
+            List<String> taken = new ArrayList<>();
+            for (EmployeeData employee : employees) {
+                String email = employee.getEmail();
+                if (email == null) {
+                    continue;
+                }
+                if (!seen.add(email.toLowerCase(Locale.ROOT))) {
+                    repeated.add(email);
+                } else if (findEmailSlot(email) >= 0) {
+                    taken.add(email);
+                }
+            }
+            if (!repeated.isEmpty()) {
+                throw new DuplicateEmailException("Emails appear more than once in the batch: " + repeated);
+            }
+            if (!taken.isEmpty()) {
+                throw new DuplicateEmailException("Emails are already in use: " + taken);
+            }
+
+            List<EmployeeData> stored = new ArrayList<>(employees.size());
+            for (EmployeeData employee : employees) {
+                stored.add(append(employee));
+            }
+            return stored;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Replaces the fields of the employee and moves it to the next version. When employee carries a version the
+    // update only applies if the stored employee is still at that version
+    public EmployeeData update(long id, EmployeeData employee) {
+        requireStorable(employee);
+        writeLock.lock();
+        try {
+            int slot = slotsById.get(id);
+            if (slot == LongIntHashMap.NO_VALUE) {
+                throw new ResourceNotFoundException("Employee does not exist with the given id: " + id);
+            }
+            ByteBuffer chunk = chunk(slot);
+            int offset = offset(slot);
+            long version = chunk.getLong(offset + VERSION);
+            if (employee.getVersion() != null && employee.getVersion() != version) {
+                throw new VersionConflictException("Employee " + id + " is no longer at version " + employee.getVersion());
+            }
+            requireEmailAvailable(employee.getEmail(), slot);
+
+            // the new strings are interned before the old ones are released, so a field that didn't change keeps its
+            // string instead of dropping it from the pool and adding it again
+            int[] previous = {chunk.getInt(offset + FIRST_NAME), chunk.getInt(offset + LAST_NAME),
+                    chunk.getInt(offset + EMAIL), chunk.getInt(offset + PHONE)};
+            boolean hadEmail = previous[2] != OffHeapStringPool.NONE;
+            if (hadEmail) {
+                removeEmail(slot);
+            }
+            write(slot, id, version + 1, employee);
+            for (int string : previous) {
+                strings.release(string);
+            }
+            if (employee.getEmail() != null) {
+                addEmail(slot);
+            }
+            return read(slot);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void delete(long id) {
+        writeLock.lock();
+        try {
+            int slot = slotsById.remove(id);
+            if (slot == LongIntHashMap.NO_VALUE) {
+                throw new ResourceNotFoundException("Employee does not exist with the given id: " + id);
+            }
+            ByteBuffer chunk = chunk(slot);
+            int offset = offset(slot);
+            if (chunk.getInt(offset + EMAIL) != OffHeapStringPool.NONE) {
+                removeEmail(slot);
+            }
+            strings.release(chunk.getInt(offset + FIRST_NAME));
+            strings.release(chunk.getInt(offset + LAST_NAME));
+            strings.release(chunk.getInt(offset + EMAIL));
+            strings.release(chunk.getInt(offset + PHONE));
+
+            int index = Arrays.binarySearch(orderedIds, 0, size, id);
+            System.arraycopy(orderedIds, index + 1, orderedIds, index, size - index - 1);
+            size--;
+
+            if (freeSlotCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeSlotCount * 2);
+            }
+            freeSlots[freeSlotCount++] = slot;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public int size() {
+        readLock.lock();
+        try {
+            return size;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // distinct first names, last names, emails and phones
+    public int stringCount() {
+        readLock.lock();
+        try {
+            return strings.size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // direct memory taken by the records and the string pool
+    public long offHeapBytes() {
+        readLock.lock();
+        try {
+            return (long) chunks.length * RECORDS_PER_CHUNK * RECORD_SIZE + strings.offHeapBytes();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // heap taken by the indexes, all of it in primitive arrays
+    public long heapBytes() {
+        readLock.lock();
+        try {
+            return slotsById.memoryBytes() + strings.heapBytes()
+                    + (long) (emailTable.length + freeSlots.length) * Integer.BYTES
+                    + (long) orderedIds.length * Long.BYTES;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private List<EmployeeData> readOrdered(int from, int limit) {
+        int to = (int) Math.min((long) from + limit, size);
+        List<EmployeeData> employees = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to; i++) {
+            employees.add(read(slotsById.get(orderedIds[i])));
+        }
+        return employees;
+    }
+
+    private EmployeeData append(EmployeeData employee) {
+        int slot = newSlot();
+        long id = ++lastId;
+        write(slot, id, 0, employee);
+        slotsById.put(id, slot);
+        if (employee.getEmail() != null) {
+            addEmail(slot);
+        }
+        if (size == orderedIds.length) {
+            orderedIds = Arrays.copyOf(orderedIds, size * 2);
+        }
+        orderedIds[size++] = id;
+        return read(slot);
+    }
+
+    private void write(int slot, long id, long version, EmployeeData employee) {
+        ByteBuffer chunk = chunk(slot);
+        int offset = offset(slot);
+        chunk.putLong(offset + ID, id);
+        chunk.putLong(offset + VERSION, version);
+        chunk.putInt(offset + AGE, employee.getAge() != null ? employee.getAge() : NO_AGE);
+        chunk.putInt(offset + FIRST_NAME, strings.intern(employee.getFirstName()));
+        chunk.putInt(offset + LAST_NAME, strings.intern(employee.getLastName()));
+        chunk.putInt(offset + EMAIL, strings.intern(employee.getEmail()));
+        chunk.putInt(offset + PHONE, strings.intern(employee.getPhone()));
+        chunk.putInt(offset + EMAIL_HASH, employee.getEmail() != null ? emailHash(employee.getEmail()) : 0);
+    }
+
+    private EmployeeData read(int slot) {
+        ByteBuffer chunk = chunk(slot);
+        int offset = offset(slot);
+        int age = chunk.getInt(offset + AGE);
+        return new EmployeeData(chunk.getLong(offset + ID),
+                strings.get(chunk.getInt(offset + FIRST_NAME)),
+                strings.get(chunk.getInt(offset + LAST_NAME)),
+                strings.get(chunk.getInt(offset + EMAIL)),
+                age != NO_AGE ? age : null,
+                strings.get(chunk.getInt(offset + PHONE)),
+                chunk.getLong(offset + VERSION));
+    }
+
+    private int newSlot() {
+        if (freeSlotCount > 0) {
+            return freeSlots[--freeSlotCount];
+        }
+        int slot = nextSlot++;
+        int chunk = slot >>> CHUNK_SHIFT;
+        if (chunk == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunk + 1);
+            chunks[chunk] = ByteBuffer.allocateDirect(RECORDS_PER_CHUNK * RECORD_SIZE);
+        }
+        return slot;
+    }
+
+    // throws DuplicateEmailException if a record other than exceptSlot has the email
+    private void requireEmailAvailable(String email, int exceptSlot) {
+        if (email == null) {
+            return;
+        }
+        int slot = findEmailSlot(email);
+        if (slot >= 0 && slot != exceptSlot) {
+            throw new DuplicateEmailException("Email is already in use: " + email);
+        }
+    }
+
+    // the slot of the record with this email in any case, or -1
+    private int findEmailSlot(String email) {
+        String lowerCase = email.toLowerCase(Locale.ROOT);
+        int hash = lowerCase.hashCode();
+        int mask = emailTable.length - 1;
+        for (int bucket = mix(hash) & mask; emailTable[bucket] != 0; bucket = (bucket + 1) & mask) {
+            int slot = emailTable[bucket] - 1;
+            // only a matching hash costs decoding the stored email
+            if (chunk(slot).getInt(offset(slot) + EMAIL_HASH) == hash
+                    && lowerCase.equals(strings.get(chunk(slot).getInt(offset(slot) + EMAIL)).toLowerCase(Locale.ROOT))) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void addEmail(int slot) {
+        int mask = emailTable.length - 1;
+        int bucket = emailBucket(slot, mask);
+        while (emailTable[bucket] != 0) {
+            bucket = (bucket + 1) & mask;
+        }
+        emailTable[bucket] = slot + 1;
+        if (++emailCount * 2 > emailTable.length) {
+            int[] old = emailTable;
+            emailTable = new int[old.length * 2];
+            emailCount = 0;
+            for (int entry : old) {
+                if (entry != 0) {
+                    addEmail(entry - 1);
+                }
+            }
+        }
+    }
+
+    private void removeEmail(int slot) {
+        int mask = emailTable.length - 1;
+        int gap = emailBucket(slot, mask);
+        while (emailTable[gap] != slot + 1) {
+            gap = (gap + 1) & mask;
+        }
+        // moves the rest of the probe run back like LongIntHashMap.remove, so no tombstones are needed
+        for (int i = (gap + 1) & mask; emailTable[i] != 0; i = (i + 1) & mask) {
+            int home = emailBucket(emailTable[i] - 1, mask);
+            boolean homeAfterGap = gap <= i ? gap < home && home <= i : gap < home || home <= i;
+            if (!homeAfterGap) {
+                emailTable[gap] = emailTable[i];
+                gap = i;
+            }
+        }
+        emailTable[gap] = 0;
+        emailCount--;
+    }
+
+    private int emailBucket(int slot, int mask) {
+        return mix(chunk(slot).getInt(offset(slot) + EMAIL_HASH)) & mask;
+    }
+
+    private static void requireStorable(EmployeeData employee) {
+        for (String value : new String[]{employee.getFirstName(), employee.getLastName(), employee.getEmail(), employee.getPhone()}) {
+            if (value != null && value.length() > MAX_STRING_LENGTH) {
+                throw new InvalidRequestException("Employee fields must be at most " + MAX_STRING_LENGTH + " characters");
+            }
+        }
+    }
+
+    private ByteBuffer chunk(int slot) {
+        return chunks[slot >>> CHUNK_SHIFT];
+    }
+
+    private static int offset(int slot) {
+        return (slot & (RECORDS_PER_CHUNK - 1)) * RECORD_SIZE;
+    }
+
+    private static int emailHash(String email) {
+        return email.toLowerCase(Locale.ROOT).hashCode();
+    }
+
+    private static int mix(int hash) {
+        int mixed = hash * 0x9E3779B9;
+        return mixed ^ (mixed >>> 16);
+    }
+}
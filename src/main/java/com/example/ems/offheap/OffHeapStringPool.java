@@ -0,0 +1,270 @@
+package com.example.ems.offheap;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Interned strings in direct memory: each distinct string is stored once and referred to by an int id. Employees
+// called John or Smith all share one copy of the name. An entry is its length, hash and reference count followed by
+// the UTF-8 bytes, padded to 4 bytes, so the heap only holds the position of every id and the hash table of ids.
+//
+// Every intern takes a reference and every release gives one back. A string without references leaves the pool and
+// its id is reused; the bytes it took are only reclaimed by compaction, which copies the live strings into new chunks
+// once more than half of the memory in use is garbage. Ids stay the same, so records pointing at them don't change.
+// Reads only use absolute ByteBuffer gets and may run in parallel, anything else needs to hold off other callers.
+// OffHeapEmployeeStore guards it with its lock
+final class OffHeapStringPool {
+
+    static final int NONE = -1;
+
+    static final int CHUNK_SIZE = 1 << 20;
+
+    private static final int CHUNK_SHIFT = 20;
+
+    private static final int LENGTH = 0;
+    private static final int HASH = 4;
+    private static final int REFERENCES = 8;
+    private static final int BYTES = 12;
+
+    // positions count 4 byte units, so an int addresses 8 GB
+    private static final int POSITION_SHIFT = 2;
+
+    private static final int FREE = -1;
+
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+
+    // where the next entry goes, in bytes: chunk index in the high bits and offset in the low CHUNK_SHIFT bits
+    private long end;
+
+    private long liveBytes;
+
+    // by id, FREE for an id that isn't in use
+    private int[] positions;
+
+    private int nextId;
+
+    private int[] freeIds = new int[16];
+
+    private int freeIdCount;
+
+    // open addressing table of id + 1, 0 marks a free bucket
+    private int[] table;
+
+    private int size;
+
+    OffHeapStringPool(int expectedSize) {
+        positions = new int[Math.max(16, expectedSize)];
+        table = new int[Integer.highestOneBit(Math.max(16, positions.length * 2 - 1)) << 1];
+    }
+
+    // the id of value, stored now if the pool didn't have it yet. Every call must be matched by a release
+    int intern(String value) {
+        if (value == null) {
+            return NONE;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(bytes);
+        int mask = table.length - 1;
+        int bucket = hash & mask;
+        for (; table[bucket] != 0; bucket = (bucket + 1) & mask) {
+            int id = table[bucket] - 1;
+            if (contentEquals(id, hash, bytes)) {
+                long address = address(id);
+                chunk(address).putInt(offset(address) + REFERENCES, chunk(address).getInt(offset(address) + REFERENCES) + 1);
+                return id;
+            }
+        }
+
+        int id = newId();
+        positions[id] = append(bytes, hash);
+        table[bucket] = id + 1;
+        if (++size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return id;
+    }
+
+    void release(int id) {
+        if (id == NONE) {
+            return;
+        }
+        long address = address(id);
+        ByteBuffer chunk = chunk(address);
+        int offset = offset(address);
+        int references = chunk.getInt(offset + REFERENCES) - 1;
+        chunk.putInt(offset + REFERENCES, references);
+        if (references > 0) {
+            return;
+        }
+        removeFromTable(id, chunk.getInt(offset + HASH));
+        liveBytes -= entrySize(chunk.getInt(offset + LENGTH));
+        positions[id] = FREE;
+        if (freeIdCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeIdCount * 2);
+        }
+        freeIds[freeIdCount++] = id;
+        size--;
+        if (end - liveBytes > Math.max(liveBytes, CHUNK_SIZE)) {
+            compact();
+        }
+    }
+
+    String get(int id) {
+        if (id == NONE) {
+            return null;
+        }
+        long address = address(id);
+        ByteBuffer chunk = chunk(address);
+        int offset = offset(address);
+        byte[] bytes = new byte[chunk.getInt(offset + LENGTH)];
+        chunk.get(offset + BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // distinct strings in the pool
+    int size() {
+        return size;
+    }
+
+    long offHeapBytes() {
+        return (long) chunks.length * CHUNK_SIZE;
+    }
+
+    long heapBytes() {
+        return (long) (positions.length + freeIds.length + table.length) * Integer.BYTES;
+    }
+
+    private int newId() {
+        if (freeIdCount > 0) {
+            return freeIds[--freeIdCount];
+        }
+        if (nextId == positions.length) {
+            positions = Arrays.copyOf(positions, positions.length * 2);
+        }
+        return nextId++;
+    }
+
+    // an entry never spans two chunks, one that doesn't fit in what is left of the last chunk starts a new one
+    private int append(byte[] bytes, int hash) {
+        int size = entrySize(bytes.length);
+        if (size > CHUNK_SIZE) {
+            throw new IllegalArgumentException("A string of " + bytes.length + " bytes is too long for the pool");
+        }
+        if ((end & (CHUNK_SIZE - 1)) + size > CHUNK_SIZE) {
+            end = ((end >>> CHUNK_SHIFT) + 1) << CHUNK_SHIFT;
+        }
+        int chunkIndex = (int) (end >>> CHUNK_SHIFT);
+        if (chunkIndex == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunkIndex + 1);
+            chunks[chunkIndex] = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        }
+        ByteBuffer chunk = chunks[chunkIndex];
+        int offset = offset(end);
+        chunk.putInt(offset + LENGTH, bytes.length);
+        chunk.putInt(offset + HASH, hash);
+        chunk.putInt(offset + REFERENCES, 1);
+        chunk.put(offset + BYTES, bytes);
+
+        int position = (int) (end >>> POSITION_SHIFT);
+        end += size;
+        liveBytes += size;
+        return position;
+    }
+
+    private boolean contentEquals(int id, int hash, byte[] bytes) {
+        long address = address(id);
+        ByteBuffer chunk = chunk(address);
+        int offset = offset(address);
+        if (chunk.getInt(offset + HASH) != hash || chunk.getInt(offset + LENGTH) != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (chunk.get(offset + BYTES + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Copies the live entries to the start of new chunks, the old ones are freed once the garbage collector finds
+    // their ByteBuffers unreachable
+    private void compact() {
+        ByteBuffer[] old = chunks;
+        chunks = new ByteBuffer[0];
+        end = 0;
+        liveBytes = 0;
+        for (int id = 0; id < nextId; id++) {
+            if (positions[id] == FREE) {
+                continue;
+            }
+            long address = (long) positions[id] << POSITION_SHIFT;
+            ByteBuffer chunk = old[(int) (address >>> CHUNK_SHIFT)];
+            int offset = offset(address);
+            byte[] bytes = new byte[chunk.getInt(offset + LENGTH)];
+            chunk.get(offset + BYTES, bytes);
+            int references = chunk.getInt(offset + REFERENCES);
+            positions[id] = append(bytes, chunk.getInt(offset + HASH));
+            long moved = address(id);
+            chunk(moved).putInt(offset(moved) + REFERENCES, references);
+        }
+    }
+
+    private void removeFromTable(int id, int hash) {
+        int mask = table.length - 1;
+        int gap = hash & mask;
+        while (table[gap] != id + 1) {
+            gap = (gap + 1) & mask;
+        }
+        // moves the rest of the probe run back like LongIntHashMap.remove, so no tombstones are needed
+        for (int i = (gap + 1) & mask; table[i] != 0; i = (i + 1) & mask) {
+            int home = hashOf(table[i] - 1) & mask;
+            boolean homeAfterGap = gap <= i ? gap < home && home <= i : gap < home || home <= i;
+            if (!homeAfterGap) {
+                table[gap] = table[i];
+                gap = i;
+            }
+        }
+        table[gap] = 0;
+    }
+
+    private void rehash(int capacity) {
+        int[] old = table;
+        table = new int[capacity];
+        int mask = capacity - 1;
+        for (int entry : old) {
+            if (entry != 0) {
+                int bucket = hashOf(entry - 1) & mask;
+                while (table[bucket] != 0) {
+                    bucket = (bucket + 1) & mask;
+                }
+                table[bucket] = entry;
+            }
+        }
+    }
+
+    private int hashOf(int id) {
+        long address = address(id);
+        return chunk(address).getInt(offset(address) + HASH);
+    }
+
+    private long address(int id) {
+        return (long) positions[id] << POSITION_SHIFT;
+    }
+
+    private ByteBuffer chunk(long address) {
+        return chunks[(int) (address >>> CHUNK_SHIFT)];
+    }
+
+    private static int offset(long address) {
+        return (int) (address & (CHUNK_SIZE - 1));
+    }
+
+    private static int entrySize(int length) {
+        return (BYTES + length + 3) & ~3;
+    }
+
+    private static int hash(byte[] bytes) {
+        int hash = Arrays.hashCode(bytes) * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
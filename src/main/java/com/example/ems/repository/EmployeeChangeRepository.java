@@ -0,0 +1,32 @@
+package com.example.ems.repository;
+
+import com.example.ems.entity.EmployeeChange;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface EmployeeChangeRepository extends JpaRepository<EmployeeChange, Long> {
+
+    // a range scan of the primary key, "WHERE seq > :since AND seq < :before ORDER BY seq LIMIT :size"
+    List<EmployeeChange> findBySeqGreaterThanAndSeqLessThanOrderBySeqAsc(Long since, Long before, Pageable pageable);
+
+    @Query("select max(c.seq) from EmployeeChange c")
+    Long findMaxSeq();
+
+    @Query("select min(c.seq) from EmployeeChange c")
+    Long findMinSeq();
+
+    // the newest change is always kept, so the sequence carries on from it after a restart
+    @Modifying
+    @Transactional
+    @Query("delete from EmployeeChange c where c.changedAt < :cutoff and c.seq < :keepFrom")
+    int deleteChangedBefore(@Param("cutoff") Instant cutoff, @Param("keepFrom") Long keepFrom);
+}
@@ -0,0 +1,23 @@
+package com.example.ems.repository;
+
+import com.example.ems.dto.EmployeeData;
+import com.example.ems.dto.EmployeeFields;
+import com.example.ems.entity.Employee;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+
+// Read-only list queries that select columns instead of entities. Nothing they return is managed by the persistence
+// context, so there are no entities to hydrate, no dirty-checking snapshots and nothing to map afterwards
+public interface EmployeeProjections {
+
+    // the fields of EmployeeData that can be selected on their own, by name of the Employee attribute
+    List<String> PROJECTABLE_FIELDS = List.of("id", "firstName", "lastName", "email", "age", "phone", "version");
+
+    // specification may be null to select every employee
+    List<EmployeeData> findAllAsEmployeeData(Specification<Employee> specification, Sort sort);
+
+    // only the given fields (from PROJECTABLE_FIELDS) are selected, in that order
+    List<EmployeeFields> findAllFields(Specification<Employee> specification, Sort sort, List<String> fields);
+}
@@ -0,0 +1,73 @@
+package com.example.ems.repository;
+
+import com.example.ems.dto.EmployeeData;
+import com.example.ems.dto.EmployeeFields;
+import com.example.ems.entity.Employee;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Spring Data finds this implementation by its name and adds its methods to EmployeeRepository
+class EmployeeProjectionsImpl implements EmployeeProjections {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<EmployeeData> findAllAsEmployeeData(Specification<Employee> specification, Sort sort) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<EmployeeData> query = builder.createQuery(EmployeeData.class);
+        Root<Employee> root = query.from(Employee.class);
+
+        // "select new EmployeeData(e.id, ...)": Hibernate calls the constructor with each row of the result set
+        query.select(builder.construct(EmployeeData.class,
+                root.get("id"), root.get("firstName"), root.get("lastName"), root.get("email"),
+                root.get("age"), root.get("phone"), root.get("version")));
+        restrict(query, root, builder, specification, sort);
+
+        return entityManager.createQuery(query).getResultList();
+    }
+
+    @Override
+    public List<EmployeeFields> findAllFields(Specification<Employee> specification, Sort sort,
+                                              List<String> fields) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        // plain Object[] rows, a Tuple would add an object and an alias lookup per row
+        CriteriaQuery<Object[]> query = builder.createQuery(Object[].class);
+        Root<Employee> root = query.from(Employee.class);
+
+        List<Selection<?>> selections = new ArrayList<>(fields.size());
+        for (String field : fields) {
+            selections.add(root.get(field));
+        }
+        query.multiselect(selections);
+        restrict(query, root, builder, specification, sort);
+
+        List<Object[]> results = entityManager.createQuery(query).getResultList();
+        List<String> names = List.copyOf(fields);
+        List<EmployeeFields> rows = new ArrayList<>(results.size());
+        for (Object[] result : results) {
+            rows.add(new EmployeeFields(names, result));
+        }
+        return rows;
+    }
+
+    private static void restrict(CriteriaQuery<?> query, Root<Employee> root, CriteriaBuilder builder,
+                                 Specification<Employee> specification, Sort sort) {
+        Predicate predicate = specification != null ? specification.toPredicate(root, query, builder) : null;
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.orderBy(QueryUtils.toOrders(sort, root, builder));
+    }
+}
@@ -1,8 +1,22 @@
 package com.example.ems.repository;
 
 import com.example.ems.entity.Employee;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
 
 // when working with JPA, the repository MUST BE an interface that extends JpaRepository
 // JpaRepository accepts 2 arguments <T, ID> where T is type of entity and ID is type of its primary key
@@ -12,7 +26,60 @@ import org.springframework.stereotype.Repository;
 // has this annotation. It also has the transactional annotation, so all the methods are already transactional
 
 // SimpleJpaRepository implements JpaRepository interface
+// JpaSpecificationExecutor runs the filters built from EmployeeSpecifications, EmployeeProjections runs them without
+// loading entities
 
 @Repository
-public interface EmployeeRepository extends JpaRepository<Employee, Long> {
+public interface EmployeeRepository extends JpaRepository<Employee, Long>, JpaSpecificationExecutor<Employee>,
+        EmployeeProjections {
+
+    int STREAM_FETCH_SIZE = 500;
+
+    // a Slice fetches size + 1 rows to know whether there is a next page, so unlike Page it never runs a COUNT(*)
+    Slice<Employee> findAllBy(Pageable pageable);
+
+    // keyset pagination: "WHERE id > :id ORDER BY id LIMIT :size" seeks on the primary key index, no OFFSET scan
+    Slice<Employee> findByIdGreaterThan(Long id, Pageable pageable);
+
+    // uniqueness checks for emails the EmailBloomFilter couldn't rule out, answered from the unique index on email_id
+    boolean existsByEmail(String email);
+
+    boolean existsByEmailAndIdNot(String email, Long id);
+
+    @Query("select e.email from Employee e where e.email in :emails")
+    List<String> findExistingEmails(@Param("emails") Collection<String> emails);
+
+    // rows are pulled from the JDBC cursor STREAM_FETCH_SIZE at a time as the stream is consumed, and read-only
+    // entities skip the dirty-checking snapshot. The stream must be closed and consumed inside a transaction
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<Employee> streamAllByOrderByIdAsc();
+
+    // single-statement writes: no SELECT to load the entity first, the returned row count tells whether the
+    // employee existed. Query methods are read-only transactional by default, so these need their own @Transactional.
+    // Bulk updates don't bump @Version by themselves, so the queries do it
+    @Modifying
+    @Transactional
+    @Query("update Employee e set e.firstName = :firstName, e.lastName = :lastName, e.email = :email, " +
+            "e.age = :age, e.phone = :phone, e.version = e.version + 1 where e.id = :id")
+    int updateEmployeeById(@Param("id") Long id, @Param("firstName") String firstName,
+                           @Param("lastName") String lastName, @Param("email") String email,
+                           @Param("age") Integer age, @Param("phone") String phone);
+
+    // optimistic update: only applies if nobody changed the employee since the client read the given version
+    @Modifying
+    @Transactional
+    @Query("update Employee e set e.firstName = :firstName, e.lastName = :lastName, e.email = :email, " +
+            "e.age = :age, e.phone = :phone, e.version = e.version + 1 where e.id = :id and e.version = :version")
+    int updateEmployeeByIdAndVersion(@Param("id") Long id, @Param("version") Long version,
+                                     @Param("firstName") String firstName, @Param("lastName") String lastName,
+                                     @Param("email") String email, @Param("age") Integer age,
+                                     @Param("phone") String phone);
+
+    @Modifying
+    @Transactional
+    @Query("delete from Employee e where e.id = :id")
+    int deleteEmployeeById(@Param("id") Long id);
 }
@@ -0,0 +1,29 @@
+package com.example.ems.repository;
+
+import com.example.ems.entity.Employee;
+import org.springframework.data.jpa.domain.Specification;
+
+// WHERE clauses for EmployeeRepository.findAll(Specification, Sort). Each of them is backed by an index declared on
+// Employee, combine them with Specification.where(...).and(...)
+public final class EmployeeSpecifications {
+
+    private EmployeeSpecifications() {
+    }
+
+    public static Specification<Employee> hasLastName(String lastName) {
+        return (root, query, builder) -> builder.equal(root.get("lastName"), lastName);
+    }
+
+    public static Specification<Employee> isAtLeast(int age) {
+        return (root, query, builder) -> builder.greaterThanOrEqualTo(root.get("age"), age);
+    }
+
+    public static Specification<Employee> isAtMost(int age) {
+        return (root, query, builder) -> builder.lessThanOrEqualTo(root.get("age"), age);
+    }
+
+    // emailDomain must be lower case, like the column it is compared with
+    public static Specification<Employee> hasEmailDomain(String emailDomain) {
+        return (root, query, builder) -> builder.equal(root.get("emailDomain"), emailDomain);
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.ems.repository;
+
+import com.example.ems.entity.IdempotencyKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+// Single-statement writes like EmployeeRepository, a claim is a plain INSERT whose primary key tells two concurrent
+// claims of the same key apart
+@Repository
+public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKey, String> {
+
+    @Modifying
+    @Transactional
+    @Query(value = "insert into idempotency_keys (idempotency_key, request_hash, created_at) values (:key, :requestHash, :createdAt)",
+            nativeQuery = true)
+    int insertClaim(@Param("key") String key, @Param("requestHash") String requestHash,
+                    @Param("createdAt") Instant createdAt);
+
+    @Modifying
+    @Transactional
+    @Query("update IdempotencyKey k set k.response = :response where k.idempotencyKey = :key")
+    int completeClaim(@Param("key") String key, @Param("response") String response);
+
+    @Modifying
+    @Transactional
+    @Query("delete from IdempotencyKey k where k.idempotencyKey = :key")
+    int deleteByKey(@Param("key") String key);
+
+    // only deletes the key if it is still expired or abandoned, not a claim another request has made since
+    @Modifying
+    @Transactional
+    @Query("delete from IdempotencyKey k where k.idempotencyKey = :key and (k.createdAt < :expiredBefore " +
+            "or k.response is null and k.createdAt < :abandonedBefore)")
+    int deleteExpiredKey(@Param("key") String key, @Param("expiredBefore") Instant expiredBefore,
+                         @Param("abandonedBefore") Instant abandonedBefore);
+
+    @Modifying
+    @Transactional
+    @Query("delete from IdempotencyKey k where k.createdAt < :cutoff")
+    int deleteCreatedBefore(@Param("cutoff") Instant cutoff);
+}
@@ -0,0 +1,289 @@
+package com.example.ems.search;
+
+import com.example.ems.dto.EmployeeData;
+import com.example.ems.dto.EmployeeSearchResult;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+// In-memory prefix index over the names and emails of every employee, for type-ahead search.
+// Every employee is indexed under the words of its first and last name, its email and its email domain, lower cased
+// and without accents. Tokens are kept sorted, so the tokens starting with a prefix are one contiguous range of the
+// map and a lookup costs O(log tokens) plus the candidates it reads, independent of the number of employees.
+//
+// Reads take no lock. Writes are serialized by a lock so that adding and removing ids can't race on the same token.
+// EmployeeServiceImpl keeps it up to date after every committed write, EmployeeWarmup fills it at startup.
+@Component
+public class EmployeeSearchIndex {
+
+    // matches of the whole query ranked at most. Bounds the work of a short prefix like "a" that matches most of the
+    // table, at the price of ranking only the first matches in token order. Employees behind the most selective word
+    // that miss another word don't count, so a common first name can't use up the candidates before a rarer last name
+    static final int MAX_CANDIDATES = 1000;
+
+    private static final Pattern ACCENTS = Pattern.compile("\\p{M}+");
+
+    private static final Pattern WORD_SEPARATORS = Pattern.compile("[\\s\\-']+");
+
+    // the documents themselves rather than their ids, so ranking a candidate needs no second lookup
+    private final ConcurrentSkipListMap<String, Set<Document>> postings = new ConcurrentSkipListMap<>();
+
+    private final ConcurrentHashMap<Long, Document> documents = new ConcurrentHashMap<>();
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    // adds the employee, or replaces what was indexed for it before
+    public void put(EmployeeData employee) {
+        Document document = new Document(employee);
+        writeLock.lock();
+        try {
+            Document previous = documents.put(employee.getId(), document);
+            if (previous != null) {
+                previous.tokens().forEach(token -> removePosting(token, previous));
+            }
+            document.tokens().forEach(token -> postings.computeIfAbsent(token, t -> ConcurrentHashMap.newKeySet()).add(document));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void remove(Long employeeId) {
+        writeLock.lock();
+        try {
+            Document previous = documents.remove(employeeId);
+            if (previous != null) {
+                previous.tokens().forEach(token -> removePosting(token, previous));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void clear() {
+        writeLock.lock();
+        try {
+            documents.clear();
+            postings.clear();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    // Every word of the query must be a prefix of one of the employee's tokens. Matches are ranked by score, then
+    // shorter names first, then by id. A word scores more when it matches a name than an email, and more when it
+    // matches a whole token than part of one
+    public List<EmployeeSearchResult> search(String query, int limit) {
+        String[] terms = terms(query);
+        if (terms.length == 0) {
+            return List.of();
+        }
+
+        String driver = terms.length == 1 ? terms[0] : mostSelective(terms);
+        Map<Document, Integer> candidates = new IdentityHashMap<>();
+        Set<Document> exact = postings.get(driver);
+        if (exact != null) {
+            addCandidates(candidates, exact, terms);
+        }
+        for (Set<Document> documents : prefixRange(driver).values()) {
+            if (candidates.size() >= MAX_CANDIDATES) {
+                break;
+            }
+            addCandidates(candidates, documents, terms);
+        }
+
+        // keeps the best `limit` matches seen so far with the worst of them on top, a candidate that can't beat
+        // the worst is dropped before anything is allocated for it
+        PriorityQueue<Match> best = new PriorityQueue<>(limit + 1, Comparator.reverseOrder());
+        for (Map.Entry<Document, Integer> candidate : candidates.entrySet()) {
+            Document document = candidate.getKey();
+            int score = candidate.getValue();
+            if (best.size() == limit && best.peek().compareTo(score, document) <= 0) {
+                continue;
+            }
+            best.add(new Match(document, score));
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+
+        return best.stream()
+                .sorted()
+                .map(match -> new EmployeeSearchResult(match.document.id, match.document.firstName,
+                        match.document.lastName, match.document.email, match.score))
+                .toList();
+    }
+
+    // the word with the fewest employees behind it, counting each only up to MAX_CANDIDATES
+    private String mostSelective(String[] terms) {
+        String mostSelective = terms[0];
+        int fewest = Integer.MAX_VALUE;
+        for (String term : terms) {
+            int count = 0;
+            Set<Document> exact = postings.get(term);
+            if (exact != null) {
+                count += exact.size();
+            }
+            for (Set<Document> documents : prefixRange(term).values()) {
+                if (count >= fewest || count >= MAX_CANDIDATES) {
+                    break;
+                }
+                count += documents.size();
+            }
+            if (count < fewest) {
+                fewest = count;
+                mostSelective = term;
+            }
+        }
+        return mostSelective;
+    }
+
+    // the tokens that start with prefix, apart from prefix itself
+    private ConcurrentNavigableMap<String, Set<Document>> prefixRange(String prefix) {
+        return postings.subMap(prefix, false, prefix + Character.MAX_VALUE, false);
+    }
+
+    // the documents matching every term, with their score
+    private static void addCandidates(Map<Document, Integer> candidates, Set<Document> documents, String[] terms) {
+        for (Document document : documents) {
+            if (candidates.size() >= MAX_CANDIDATES) {
+                return;
+            }
+            if (!candidates.containsKey(document)) {
+                int score = document.score(terms);
+                if (score > 0) {
+                    candidates.put(document, score);
+                }
+            }
+        }
+    }
+
+    private void removePosting(String token, Document document) {
+        Set<Document> documents = postings.get(token);
+        if (documents != null) {
+            documents.remove(document);
+            if (documents.isEmpty()) {
+                postings.remove(token, documents);
+            }
+        }
+    }
+
+    static String[] terms(String query) {
+        String normalized = normalize(query).trim();
+        return normalized.isEmpty() ? new String[0] : normalized.split("\\s+");
+    }
+
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        return ACCENTS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    // a scored candidate. Sorts best first: higher score, then shorter name, then lower id
+    private record Match(Document document, int score) implements Comparable<Match> {
+
+        @Override
+        public int compareTo(Match other) {
+            return -other.compareTo(score, document);
+        }
+
+        // how this match sorts against another candidate, without creating a Match for it
+        int compareTo(int otherScore, Document other) {
+            if (score != otherScore) {
+                return Integer.compare(otherScore, score);
+            }
+            if (document.nameLength != other.nameLength) {
+                return Integer.compare(document.nameLength, other.nameLength);
+            }
+            return Long.compare(document.id, other.id);
+        }
+    }
+
+    // what the index knows about one employee. Compared by identity, every put creates a new one
+    private static final class Document {
+
+        private static final int NAME_EXACT = 4;
+        private static final int NAME_PREFIX = 2;
+        private static final int EMAIL_EXACT = 2;
+        private static final int EMAIL_PREFIX = 1;
+
+        private final Long id;
+        private final String firstName;
+        private final String lastName;
+        private final String email;
+        private final String[] nameTokens;
+        private final String[] emailTokens;
+        private final int nameLength;
+
+        private Document(EmployeeData employee) {
+            this.id = employee.getId();
+            this.firstName = employee.getFirstName() != null ? employee.getFirstName() : "";
+            this.lastName = employee.getLastName() != null ? employee.getLastName() : "";
+            this.nameLength = firstName.length() + lastName.length();
+            this.email = employee.getEmail() != null ? employee.getEmail() : "";
+            this.nameTokens = WORD_SEPARATORS.splitAsStream(normalize(firstName + " " + lastName))
+                    .filter(token -> !token.isEmpty())
+                    .distinct()
+                    .toArray(String[]::new);
+            String normalizedEmail = normalize(email);
+            int at = normalizedEmail.indexOf('@');
+            this.emailTokens = normalizedEmail.isEmpty() ? new String[0]
+                    : at >= 0 && at < normalizedEmail.length() - 1
+                    ? new String[]{normalizedEmail, normalizedEmail.substring(at + 1)}
+                    : new String[]{normalizedEmail};
+        }
+
+        private Set<String> tokens() {
+            Set<String> tokens = new HashSet<>(Arrays.asList(nameTokens));
+            tokens.addAll(Arrays.asList(emailTokens));
+            return tokens;
+        }
+
+        // 0 unless every term matches
+        private int score(String[] terms) {
+            int score = 0;
+            for (String term : terms) {
+                int termScore = Math.max(
+                        best(term, nameTokens, NAME_EXACT, NAME_PREFIX),
+                        best(term, emailTokens, EMAIL_EXACT, EMAIL_PREFIX));
+                if (termScore == 0) {
+                    return 0;
+                }
+                score += termScore;
+            }
+            return score;
+        }
+
+        private static int best(String term, String[] tokens, int exact, int prefix) {
+            int best = 0;
+            for (String token : tokens) {
+                if (token.equals(term)) {
+                    return exact;
+                }
+                if (token.startsWith(term)) {
+                    best = prefix;
+                }
+            }
+            return best;
+        }
+    }
+}
@@ -1,16 +1,52 @@
 package com.example.ems.service;
 
+import com.example.ems.dto.EmployeeChangeData;
 import com.example.ems.dto.EmployeeData;
+import com.example.ems.dto.EmployeeFields;
+import com.example.ems.dto.EmployeeFilter;
+import com.example.ems.dto.EmployeeLookup;
+import com.example.ems.dto.EmployeePage;
+import com.example.ems.dto.EmployeeSearchResult;
+import com.example.ems.dto.EmployeeStats;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface EmployeeService {
     EmployeeData createEmployee(EmployeeData employeeData);
 
+    List<EmployeeData> createEmployees(List<EmployeeData> employees);
+
     EmployeeData getEmployeeById(Long employeeId);
 
+    EmployeeLookup getEmployeesByIds(List<Long> employeeIds);
+
+    // ranked type-ahead matches on names and emails, served from memory
+    List<EmployeeSearchResult> searchEmployees(String query, int limit);
+
+    // up to limit committed creates, updates and deletes after the change numbered since, oldest first
+    List<EmployeeChangeData> getChangesSince(long since, int limit);
+
+    // headcount, age histogram and top email domains, without querying the database
+    EmployeeStats getStatistics();
+
+    // changes whenever an employee is created, updated or deleted, without querying the database
+    String getCollectionVersion();
+
     List<EmployeeData> getAllEmployees();
 
+    // the employees matching every filter that is set, in the requested order
+    List<EmployeeData> findEmployees(EmployeeFilter filter);
+
+    // like findEmployees, but only the given fields of each employee are read and returned
+    List<EmployeeFields> findEmployeeFields(EmployeeFilter filter, List<String> fields);
+
+    EmployeePage getEmployeePage(int page, int size);
+
+    EmployeePage getEmployeesAfter(String cursor, int size);
+
+    void streamAllEmployees(Consumer<EmployeeData> consumer);
+
     EmployeeData updateEmployee(Long employeeId, EmployeeData updatedEmployee);
 
     void deleteEmployee(Long employeeId);
@@ -1,76 +1,664 @@
 package com.example.ems.service.impl;
 
+import com.example.ems.cache.EmployeeCache;
+import com.example.ems.changes.EmployeeChangeLog;
+import com.example.ems.dto.EmployeeChangeData;
 import com.example.ems.dto.EmployeeData;
+import com.example.ems.dto.EmployeeFields;
+import com.example.ems.dto.EmployeeFilter;
+import com.example.ems.dto.EmployeeLookup;
+import com.example.ems.dto.EmployeePage;
+import com.example.ems.dto.EmployeeSearchResult;
+import com.example.ems.dto.EmployeeStats;
 import com.example.ems.entity.Employee;
+import com.example.ems.entity.EmployeeChange;
+import com.example.ems.exception.DuplicateEmailException;
+import com.example.ems.exception.InvalidRequestException;
 import com.example.ems.exception.ResourceNotFoundException;
+import com.example.ems.exception.VersionConflictException;
 import com.example.ems.mapper.EmployeeMapper;
 import com.example.ems.repository.EmployeeRepository;
+import com.example.ems.repository.EmployeeSpecifications;
+import com.example.ems.search.EmployeeSearchIndex;
 import com.example.ems.service.EmployeeService;
+import com.example.ems.stats.EmployeeStatistics;
+import com.example.ems.uniqueness.EmailBloomFilter;
+import com.example.ems.writebehind.WriteBehindBuffer;
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+// every public method is timed in ems.service, tagged with its name
+@Timed(value = "ems.service", description = "EmployeeService calls")
 @Service
+@Profile("!" + OffHeapEmployeeService.PROFILE)
 public class EmployeeServiceImpl implements EmployeeService {
 
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    public static final int MAX_LOOKUP_SIZE = 1000;
+
+    public static final int MAX_SEARCH_LIMIT = 50;
+
+    public static final int MAX_SEARCH_QUERY_LENGTH = 100;
+
+    public static final int MAX_CHANGES_LIMIT = 1000;
+
+    // keeps the IN (...) list of each findAllById query short enough for the database to plan and cache it
+    static final int LOOKUP_CHUNK_SIZE = 200;
+
+    private static final Sort ID_ORDER = Sort.by(Sort.Direction.ASC, "id");
+
+    // the fields a filtered list can be sorted by, anything else would let a client order by columns we don't index
+    // or expose
+    private static final Set<String> SORTABLE_FIELDS = Set.of("id", "firstName", "lastName", "email", "age");
+
     private final EmployeeRepository employeeRepository;
 
+    private final EntityManager entityManager;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final EmployeeCache employeeCache;
+
+    private final EmployeeSearchIndex searchIndex;
+
+    private final EmailBloomFilter emailFilter;
+
+    private final EmployeeChangeLog changeLog;
+
+    private final EmployeeStatistics statistics;
+
+    // null unless ems.write-behind.enabled=true
+    private final WriteBehindBuffer writeBehind;
+
+    // counts the writes made through this service since startup. Together with the startup time it identifies the
+    // current state of the table, as long as this instance is the only one writing to it. A buffered update only
+    // counts once it is written, see markWritten
+    private final AtomicLong writeCount = new AtomicLong();
+
+    private final String startupId = Long.toString(System.currentTimeMillis(), 36);
+
+    @Value("${ems.batch.chunk-size:500}")
+    private int batchChunkSize = 500;
+
     @Autowired
-    public EmployeeServiceImpl(EmployeeRepository employeeRepository) {
+    public EmployeeServiceImpl(EmployeeRepository employeeRepository, EntityManager entityManager,
+                               PlatformTransactionManager transactionManager, EmployeeCache employeeCache,
+                               EmployeeSearchIndex searchIndex, EmailBloomFilter emailFilter,
+                               EmployeeChangeLog changeLog, EmployeeStatistics statistics,
+                               ObjectProvider<WriteBehindBuffer> writeBehind) {
         this.employeeRepository = employeeRepository;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.employeeCache = employeeCache;
+        this.searchIndex = searchIndex;
+        this.emailFilter = emailFilter;
+        this.changeLog = changeLog;
+        this.statistics = statistics;
+        this.writeBehind = writeBehind.getIfAvailable();
+        if (this.writeBehind != null) {
+            this.writeBehind.onWritten(this::markWritten);
+        }
     }
 
     @Override
     public EmployeeData createEmployee(EmployeeData employeeData) {
+        checkEmailAvailable(null, employeeData.getEmail());
         Employee employee = EmployeeMapper.mapToEmployee(employeeData);
-        Employee savedEmployee = employeeRepository.save(employee);
+        // id and version are always assigned by us. Spring Data also treats an entity with a null version as new,
+        // so it must not carry a client supplied id either or persist would reject it as detached
+        employee.setId(null);
+        employee.setVersion(null);
+        EmployeeData savedEmployee;
+        try {
+            savedEmployee = transactionTemplate.execute(status -> {
+                EmployeeData saved = EmployeeMapper.mapToEmployeeData(employeeRepository.save(employee));
+                changeLog.append(EmployeeChange.Type.CREATED, saved.getId(), saved);
+                return saved;
+            });
+        } catch (DataIntegrityViolationException e) {
+            throw duplicateEmailOr(e, null, employeeData.getEmail());
+        }
+        employeeWritten(savedEmployee);
+
+        return savedEmployee;
+    }
+
+    // Each chunk is inserted with JDBC batching and committed in its own transaction, so a failure in one chunk
+    // leaves the chunks before it committed. The persistence context is cleared after every chunk to keep it small.
+    // Emails that are already taken, or repeated in the batch, are rejected before the first chunk is inserted
+    @Override
+    public List<EmployeeData> createEmployees(List<EmployeeData> employees) {
+        checkEmailsAvailable(employees);
+        List<EmployeeData> savedEmployees = new ArrayList<>(employees.size());
+
+        for (int from = 0; from < employees.size(); from += batchChunkSize) {
+            List<EmployeeData> chunk = employees.subList(from, Math.min(from + batchChunkSize, employees.size()));
+            List<EmployeeData> savedChunk = transactionTemplate.execute(status -> insertChunk(chunk));
+            savedChunk.forEach(this::employeeWritten);
+            savedEmployees.addAll(savedChunk);
+        }
 
-        return EmployeeMapper.mapToEmployeeData(savedEmployee);
+        return savedEmployees;
     }
 
     @Override
     public EmployeeData getEmployeeById(Long employeeId) {
-        Employee employee = employeeRepository.findById(employeeId)
-                .orElseThrow(() ->
-                        new ResourceNotFoundException("Employee does not exist with the given id: " + employeeId));
+        EmployeeData pending = getPendingUpdate(employeeId);
+        if (pending != null) {
+            return pending;
+        }
+        return employeeCache.get(employeeId, this::findEmployeeById);
+    }
 
-        return EmployeeMapper.mapToEmployeeData(employee);
+    @Override
+    public EmployeeLookup getEmployeesByIds(List<Long> employeeIds) {
+        validateLookup(employeeIds);
+
+        Map<Long, EmployeeData> found = new HashMap<>();
+        List<Long> uncached = new ArrayList<>();
+        for (Long employeeId : new LinkedHashSet<>(employeeIds)) {
+            EmployeeData cached = getPendingUpdate(employeeId);
+            if (cached == null) {
+                cached = employeeCache.getIfPresent(employeeId);
+            }
+            if (cached != null) {
+                found.put(employeeId, cached);
+            } else {
+                uncached.add(employeeId);
+            }
+        }
+
+        // rows loaded here are not put in the cache, a write committing in between could leave a stale entry behind
+        for (int from = 0; from < uncached.size(); from += LOOKUP_CHUNK_SIZE) {
+            List<Long> chunk = uncached.subList(from, Math.min(from + LOOKUP_CHUNK_SIZE, uncached.size()));
+            employeeRepository.findAllById(chunk)
+                    .forEach(employee -> found.put(employee.getId(), EmployeeMapper.mapToEmployeeData(employee)));
+        }
+
+        List<EmployeeData> employees = new ArrayList<>(found.size());
+        List<Long> missingIds = new ArrayList<>();
+        for (Long employeeId : new LinkedHashSet<>(employeeIds)) {
+            EmployeeData employeeData = found.get(employeeId);
+            if (employeeData != null) {
+                employees.add(employeeData);
+            } else {
+                missingIds.add(employeeId);
+            }
+        }
+
+        return new EmployeeLookup(employees, missingIds);
+    }
+
+    @Override
+    public List<EmployeeSearchResult> searchEmployees(String query, int limit) {
+        validateSearch(query, limit);
+
+        return searchIndex.search(query, limit);
+    }
+
+    @Override
+    public List<EmployeeChangeData> getChangesSince(long since, int limit) {
+        if (limit < 1 || limit > MAX_CHANGES_LIMIT) {
+            throw new InvalidRequestException("Limit must be between 1 and " + MAX_CHANGES_LIMIT + ": " + limit);
+        }
+        return changeLog.findSince(since, limit);
+    }
+
+    // served from memory, see EmployeeStatistics
+    @Override
+    public EmployeeStats getStatistics() {
+        return statistics.get();
     }
 
+    @Override
+    public String getCollectionVersion() {
+        return startupId + "-" + writeCount.get();
+    }
+
+    // the list endpoints select EmployeeData straight from the result set, they never need managed entities
     @Override
     public List<EmployeeData> getAllEmployees() {
-        List<Employee> employees = employeeRepository.findAll();
+        return employeeRepository.findAllAsEmployeeData(null, ID_ORDER);
+    }
 
-        return employees.stream().map(EmployeeMapper::mapToEmployeeData)
-                .collect(Collectors.toList());
+    @Override
+    public List<EmployeeData> findEmployees(EmployeeFilter filter) {
+        return employeeRepository.findAllAsEmployeeData(toSpecification(filter), toSort(filter.getSort()));
     }
 
     @Override
-    public EmployeeData updateEmployee(Long employeeId, EmployeeData updatedEmployee) {
-        Employee employee = employeeRepository.findById(employeeId)
-                .orElseThrow(() ->
-                        new ResourceNotFoundException("Employee does not exist with the given id: " + employeeId));
+    public List<EmployeeFields> findEmployeeFields(EmployeeFilter filter, List<String> fields) {
+        return employeeRepository.findAllFields(toSpecification(filter), toSort(filter.getSort()), selectFields(fields));
+    }
+
+    @Override
+    public EmployeePage getEmployeePage(int page, int size) {
+        validatePage(page, size);
+
+        Slice<Employee> employees = employeeRepository.findAllBy(PageRequest.of(page, size, ID_ORDER));
+
+        return toEmployeePage(employees, page, size);
+    }
+
+    @Override
+    public EmployeePage getEmployeesAfter(String cursor, int size) {
+        validatePageSize(size);
+
+        // the cursor is the id of the last employee the client saw, so we seek past it instead of skipping rows
+        Slice<Employee> employees = employeeRepository.findByIdGreaterThan(decodeCursor(cursor),
+                PageRequest.of(0, size, ID_ORDER));
+
+        return toEmployeePage(employees, null, size);
+    }
 
-        employee.setFirstName(updatedEmployee.getFirstName());
-        employee.setLastName(updatedEmployee.getLastName());
-        employee.setEmail(updatedEmployee.getEmail());
-        employee.setAge(updatedEmployee.getAge());
-        employee.setPhone(updatedEmployee.getPhone());
+    @Override
+    @Transactional(readOnly = true)
+    public void streamAllEmployees(Consumer<EmployeeData> consumer) {
+        try (Stream<Employee> employees = employeeRepository.streamAllByOrderByIdAsc()) {
+            employees.forEach(employee -> {
+                consumer.accept(EmployeeMapper.mapToEmployeeData(employee));
+                // without this the persistence context keeps every row we've streamed, so memory grows with the table
+                entityManager.detach(employee);
+            });
+        }
+    }
 
-        Employee updatedEmployeeObj = employeeRepository.save(employee);
+    // When updatedEmployee carries a version the update only applies if the employee is still at that version,
+    // otherwise we throw VersionConflictException. Without a version the last write wins, and since we then don't
+    // know which version we wrote the returned employee has no version.
+    // In write-behind mode an update without a version is only buffered (see WriteBehindBuffer for what that means
+    // for durability), everything else is written right away after the employee's buffered update
+    @Override
+    public EmployeeData updateEmployee(Long employeeId, EmployeeData updatedEmployee) {
+        // also keeps a buffered update from being dropped later for a taken email
+        checkEmailAvailable(employeeId, updatedEmployee.getEmail());
+        if (writeBehind == null) {
+            return writeUpdate(employeeId, updatedEmployee);
+        }
 
-        return EmployeeMapper.mapToEmployeeData(updatedEmployeeObj);
+        if (updatedEmployee.getVersion() == null) {
+            // the client hears back before the row is written, so a missing employee has to be caught now. This is
+            // usually served by the cache or the buffer itself
+            getEmployeeById(employeeId);
+            EmployeeData employeeData = new EmployeeData.EmployeeDataBuilder(employeeId,
+                    updatedEmployee.getFirstName(),
+                    updatedEmployee.getLastName(),
+                    updatedEmployee.getEmail())
+                    .setAge(updatedEmployee.getAge())
+                    .setPhone(updatedEmployee.getPhone())
+                    .build();
+            if (writeBehind.offer(employeeData)) {
+                employeeChanged(employeeData);
+                return employeeData;
+            }
+        }
+        return writeBehind.runExclusive(employeeId, () -> writeUpdate(employeeId, updatedEmployee));
     }
 
     @Override
     public void deleteEmployee(Long employeeId) {
-        // the findById method returns an Optional employee. If it doesn't exist then we throw our custom exception
+        if (writeBehind == null) {
+            writeDelete(employeeId);
+            return;
+        }
+        writeBehind.runExclusive(employeeId, () -> {
+            writeDelete(employeeId);
+            return null;
+        });
+    }
+
+    private EmployeeData writeUpdate(Long employeeId, EmployeeData updatedEmployee) {
+        Long expectedVersion = updatedEmployee.getVersion();
+        // the UPDATE writes exactly these values, so there's no need to read the row back
+        EmployeeData employeeData = new EmployeeData.EmployeeDataBuilder(employeeId,
+                updatedEmployee.getFirstName(),
+                updatedEmployee.getLastName(),
+                updatedEmployee.getEmail())
+                .setAge(updatedEmployee.getAge())
+                .setPhone(updatedEmployee.getPhone())
+                .setVersion(expectedVersion != null ? expectedVersion + 1 : null)
+                .build();
+
+        int updatedRows;
+        try {
+            updatedRows = transactionTemplate.execute(status -> {
+                int rows = expectedVersion == null
+                        ? employeeRepository.updateEmployeeById(employeeId,
+                                updatedEmployee.getFirstName(),
+                                updatedEmployee.getLastName(),
+                                updatedEmployee.getEmail(),
+                                updatedEmployee.getAge(),
+                                updatedEmployee.getPhone())
+                        : employeeRepository.updateEmployeeByIdAndVersion(employeeId, expectedVersion,
+                                updatedEmployee.getFirstName(),
+                                updatedEmployee.getLastName(),
+                                updatedEmployee.getEmail(),
+                                updatedEmployee.getAge(),
+                                updatedEmployee.getPhone());
+                if (rows > 0) {
+                    changeLog.append(EmployeeChange.Type.UPDATED, employeeId, employeeData);
+                }
+                return rows;
+            });
+        } catch (DataIntegrityViolationException e) {
+            throw duplicateEmailOr(e, employeeId, updatedEmployee.getEmail());
+        }
+        if (updatedRows == 0) {
+            // only a failed update pays for this extra query, to tell a missing employee from a stale version
+            if (expectedVersion == null || !employeeRepository.existsById(employeeId)) {
+                throw new ResourceNotFoundException("Employee does not exist with the given id: " + employeeId);
+            }
+            throw new VersionConflictException("Employee " + employeeId + " is no longer at version " + expectedVersion);
+        }
+        employeeWritten(employeeData);
+
+        return employeeData;
+    }
+
+    private void writeDelete(Long employeeId) {
+        // a single DELETE, if no row was affected the employee didn't exist and we throw our custom exception
+        int deletedRows = transactionTemplate.execute(status -> {
+            int rows = employeeRepository.deleteEmployeeById(employeeId);
+            if (rows > 0) {
+                changeLog.append(EmployeeChange.Type.DELETED, employeeId, null);
+            }
+            return rows;
+        });
+        if (deletedRows == 0) {
+            throw new ResourceNotFoundException("Employee does not exist with the given id: " + employeeId);
+        }
+        employeeCache.invalidate(employeeId);
+        searchIndex.remove(employeeId);
+        statistics.remove(employeeId);
+        markWritten();
+    }
+
+    private EmployeeData getPendingUpdate(Long employeeId) {
+        return writeBehind != null ? writeBehind.getPending(employeeId) : null;
+    }
+
+    // Throws DuplicateEmailException if an employee other than employeeId (null for a new one) has the email.
+    // Most emails are new, the filter rules those out without a query. An update that keeps the email of the
+    // cached employee doesn't need one either
+    private void checkEmailAvailable(Long employeeId, String email) {
+        if (!emailFilter.mightContain(email)) {
+            return;
+        }
+        if (employeeId != null) {
+            EmployeeData current = getPendingUpdate(employeeId);
+            if (current == null) {
+                current = employeeCache.getIfPresent(employeeId);
+            }
+            if (current != null && email.equals(current.getEmail())) {
+                return;
+            }
+        }
+
+        boolean taken = employeeId == null
+                ? employeeRepository.existsByEmail(email)
+                : employeeRepository.existsByEmailAndIdNot(email, employeeId);
+        if (taken) {
+            emailFilter.duplicate();
+            throw new DuplicateEmailException("Email is already in use: " + email);
+        }
+        emailFilter.falsePositive();
+    }
+
+    // the batch version of checkEmailAvailable: one query per LOOKUP_CHUNK_SIZE emails the filter can't rule out
+    private void checkEmailsAvailable(List<EmployeeData> employees) {
+        Set<String> seen = new HashSet<>();
+        List<String> repeated = new ArrayList<>();
+        List<String> possiblyTaken = new ArrayList<>();
+        for (EmployeeData employeeData : employees) {
+            String email = employeeData.getEmail();
+            if (email == null) {
+                continue;
+            }
+            // compared like the filter does, so that the batch can't rely on a case sensitive collation
+            if (!seen.add(email.toLowerCase(Locale.ROOT))) {
+                repeated.add(email);
+            } else if (emailFilter.mightContain(email)) {
+                possiblyTaken.add(email);
+            }
+        }
+        if (!repeated.isEmpty()) {
+            throw new DuplicateEmailException("Emails appear more than once in the batch: " + repeated);
+        }
+
+        List<String> taken = new ArrayList<>();
+        for (int from = 0; from < possiblyTaken.size(); from += LOOKUP_CHUNK_SIZE) {
+            List<String> chunk = possiblyTaken.subList(from, Math.min(from + LOOKUP_CHUNK_SIZE, possiblyTaken.size()));
+            taken.addAll(employeeRepository.findExistingEmails(chunk));
+        }
+        for (int i = 0; i < possiblyTaken.size(); i++) {
+            if (i < taken.size()) {
+                emailFilter.duplicate();
+            } else {
+                emailFilter.falsePositive();
+            }
+        }
+        if (!taken.isEmpty()) {
+            throw new DuplicateEmailException("Emails are already in use: " + taken);
+        }
+    }
+
+    // The filter only knows the emails written through this instance, and two requests for the same email can both
+    // pass the check before either one commits. The unique constraint catches those, and they get the same 409
+    private RuntimeException duplicateEmailOr(DataIntegrityViolationException e, Long employeeId, String email) {
+        boolean taken = employeeId == null
+                ? employeeRepository.existsByEmail(email)
+                : employeeRepository.existsByEmailAndIdNot(email, employeeId);
+        if (!taken) {
+            return e;
+        }
+        emailFilter.put(email);
+        return new DuplicateEmailException("Email is already in use: " + email);
+    }
+
+    // called once a create or update has committed, with what was written
+    private void employeeWritten(EmployeeData employeeData) {
+        employeeChanged(employeeData);
+        markWritten();
+    }
+
+    // The cache, search index and statistics follow an update as soon as it is buffered. List reads go to the
+    // database, so for them it has only happened once it is written
+    private void employeeChanged(EmployeeData employeeData) {
+        employeeCache.invalidate(employeeData.getId());
+        searchIndex.put(employeeData);
+        emailFilter.put(employeeData.getEmail());
+        statistics.put(employeeData);
+    }
+
+    // Moves the collection version on. WriteBehindBuffer calls it after a batch of buffered updates has committed and
+    // after reverting a dropped one, so a list read while they were pending is never tagged with a version after them
+    private void markWritten() {
+        writeCount.incrementAndGet();
+    }
+
+    private EmployeeData findEmployeeById(Long employeeId) {
         Employee employee = employeeRepository.findById(employeeId)
                 .orElseThrow(() ->
                         new ResourceNotFoundException("Employee does not exist with the given id: " + employeeId));
 
-        employeeRepository.deleteById(employeeId);
+        return EmployeeMapper.mapToEmployeeData(employee);
+    }
+
+    private List<EmployeeData> insertChunk(List<EmployeeData> chunk) {
+        List<Employee> employees = chunk.stream().map(EmployeeMapper::mapToEmployee).collect(Collectors.toList());
+        // ids always come from the sequence, a null id also makes saveAll persist instead of merge (no SELECT first)
+        employees.forEach(employee -> {
+            employee.setId(null);
+            employee.setVersion(null);
+        });
+
+        List<EmployeeData> savedEmployees = employeeRepository.saveAll(employees).stream()
+                .map(EmployeeMapper::mapToEmployeeData)
+                .collect(Collectors.toList());
+        // batched with the employees, the change log is written in the same flush
+        savedEmployees.forEach(employeeData -> changeLog.append(EmployeeChange.Type.CREATED, employeeData.getId(), employeeData));
+        entityManager.flush();
+        entityManager.clear();
+
+        return savedEmployees;
+    }
+
+    private static Specification<Employee> toSpecification(EmployeeFilter filter) {
+        validateAges(filter);
+        Integer minAge = filter.getMinAge();
+        Integer maxAge = filter.getMaxAge();
+
+        Specification<Employee> specification = Specification.where(null);
+        if (filter.getLastName() != null) {
+            specification = specification.and(EmployeeSpecifications.hasLastName(filter.getLastName()));
+        }
+        if (minAge != null) {
+            specification = specification.and(EmployeeSpecifications.isAtLeast(minAge));
+        }
+        if (maxAge != null) {
+            specification = specification.and(EmployeeSpecifications.isAtMost(maxAge));
+        }
+        if (filter.getEmailDomain() != null) {
+            String emailDomain = filter.getEmailDomain().toLowerCase(Locale.ROOT);
+            specification = specification.and(EmployeeSpecifications.hasEmailDomain(emailDomain));
+        }
+        return specification;
+    }
+
+    // "-age", "lastName" is ORDER BY age DESC, last_name ASC. Ties are always broken by id so the order is stable
+    private static Sort toSort(List<String> fields) {
+        Sort sort = Sort.unsorted();
+        for (String field : fields) {
+            boolean descending = field.startsWith("-");
+            String property = sortProperty(field);
+            sort = sort.and(descending ? Sort.by(Sort.Direction.DESC, property) : Sort.by(Sort.Direction.ASC, property));
+        }
+        return sort.getOrderFor("id") != null ? sort : sort.and(ID_ORDER);
+    }
+
+    // The checks below are shared with OffHeapEmployeeService, so both answer a bad request the same way
+
+    static void validateLookup(List<Long> employeeIds) {
+        if (employeeIds.size() > MAX_LOOKUP_SIZE) {
+            throw new InvalidRequestException("At most " + MAX_LOOKUP_SIZE + " ids can be looked up at once");
+        }
+        if (employeeIds.stream().anyMatch(Objects::isNull)) {
+            throw new InvalidRequestException("Ids must not be null");
+        }
+    }
+
+    static void validateSearch(String query, int limit) {
+        if (query == null || query.isBlank()) {
+            throw new InvalidRequestException("Search query must not be blank");
+        }
+        if (query.length() > MAX_SEARCH_QUERY_LENGTH) {
+            throw new InvalidRequestException("Search query must be at most " + MAX_SEARCH_QUERY_LENGTH + " characters");
+        }
+        if (limit < 1 || limit > MAX_SEARCH_LIMIT) {
+            throw new InvalidRequestException("Search limit must be between 1 and " + MAX_SEARCH_LIMIT + ": " + limit);
+        }
+    }
+
+    static void validateAges(EmployeeFilter filter) {
+        Integer minAge = filter.getMinAge();
+        Integer maxAge = filter.getMaxAge();
+        if (minAge != null && minAge < 0 || maxAge != null && maxAge < 0) {
+            throw new InvalidRequestException("Ages must not be negative");
+        }
+        if (minAge != null && maxAge != null && minAge > maxAge) {
+            throw new InvalidRequestException("minAge must not be greater than maxAge: " + minAge + " > " + maxAge);
+        }
+    }
+
+    // the property a sort field orders by, "-age" orders by age
+    static String sortProperty(String field) {
+        String property = field.startsWith("-") ? field.substring(1) : field;
+        if (!SORTABLE_FIELDS.contains(property)) {
+            throw new InvalidRequestException("Cannot sort by " + property + ", sortable fields are " + SORTABLE_FIELDS);
+        }
+        return property;
+    }
+
+    // the requested fields without repeats
+    static List<String> selectFields(List<String> fields) {
+        List<String> selected = fields.stream().distinct().collect(Collectors.toList());
+        if (selected.isEmpty()) {
+            throw new InvalidRequestException("At least one field must be selected");
+        }
+        for (String field : selected) {
+            if (!EmployeeRepository.PROJECTABLE_FIELDS.contains(field)) {
+                throw new InvalidRequestException("Unknown field " + field + ", fields are " + EmployeeRepository.PROJECTABLE_FIELDS);
+            }
+        }
+        return selected;
+    }
+
+    static void validatePage(int page, int size) {
+        if (page < 0) {
+            throw new InvalidRequestException("Page must not be negative: " + page);
+        }
+        validatePageSize(size);
+    }
+
+    static void validatePageSize(int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new InvalidRequestException("Page size must be between 1 and " + MAX_PAGE_SIZE + ": " + size);
+        }
+    }
+
+    private static EmployeePage toEmployeePage(Slice<Employee> employees, Integer page, int size) {
+        List<EmployeeData> content = employees.getContent().stream().map(EmployeeMapper::mapToEmployeeData)
+                .collect(Collectors.toList());
+
+        String nextCursor = null;
+        if (employees.hasNext()) {
+            nextCursor = encodeCursor(content.get(content.size() - 1).getId());
+        }
+
+        return new EmployeePage(content, page, size, employees.hasNext(), nextCursor);
+    }
+
+    static String encodeCursor(Long lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(String.valueOf(lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Long decodeCursor(String cursor) {
+        try {
+            return Long.valueOf(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException is an IllegalArgumentException too, so this covers both bad base64 and bad ids
+            throw new InvalidRequestException("Invalid cursor: " + cursor);
+        }
     }
 }
@@ -0,0 +1,312 @@
+package com.example.ems.service.impl;
+
+import com.example.ems.dto.EmployeeChangeData;
+import com.example.ems.dto.EmployeeData;
+import com.example.ems.dto.EmployeeFields;
+import com.example.ems.dto.EmployeeFilter;
+import com.example.ems.dto.EmployeeLookup;
+import com.example.ems.dto.EmployeePage;
+import com.example.ems.dto.EmployeeSearchResult;
+import com.example.ems.dto.EmployeeStats;
+import com.example.ems.exception.ChangesUnavailableException;
+import com.example.ems.exception.ResourceNotFoundException;
+import com.example.ems.offheap.OffHeapEmployeeStore;
+import com.example.ems.search.EmployeeSearchIndex;
+import com.example.ems.service.EmployeeService;
+import com.example.ems.stats.EmployeeStatistics;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+// EmployeeService without a database, for edge deployments and load tests: start with spring.profiles.active=offheap.
+// Employees are kept in an OffHeapEmployeeStore, which also enforces unique emails and versions, and are gone when the
+// process stops. Filters, sorting and pages are worked out in memory; search and statistics come from the same
+// in-memory indexes as with EmployeeServiceImpl. The change log needs the database, GET /api/employees/changes is 501
+@Timed(value = "ems.service", description = "EmployeeService calls")
+@Service
+@Profile(OffHeapEmployeeService.PROFILE)
+public class OffHeapEmployeeService implements EmployeeService {
+
+    public static final String PROFILE = "offheap";
+
+    // employees read from the store per lock, so listing or streaming a large store never holds up writes for long
+    static final int READ_CHUNK_SIZE = 1000;
+
+    private static final Comparator<EmployeeData> ID_ORDER = Comparator.comparing(EmployeeData::getId);
+
+    private static final Map<String, Function<EmployeeData, ?>> FIELDS = Map.of(
+            "id", EmployeeData::getId,
+            "firstName", EmployeeData::getFirstName,
+            "lastName", EmployeeData::getLastName,
+            "email", EmployeeData::getEmail,
+            "age", EmployeeData::getAge,
+            "phone", EmployeeData::getPhone,
+            "version", EmployeeData::getVersion);
+
+    private final OffHeapEmployeeStore store;
+
+    private final EmployeeSearchIndex searchIndex;
+
+    private final EmployeeStatistics statistics;
+
+    private final AtomicLong writeCount = new AtomicLong();
+
+    private final String startupId = Long.toString(System.currentTimeMillis(), 36);
+
+    public OffHeapEmployeeService(EmployeeSearchIndex searchIndex, EmployeeStatistics statistics,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${ems.offheap.expected-employees:100000}") int expectedEmployees) {
+        this.store = new OffHeapEmployeeStore(expectedEmployees);
+        this.searchIndex = searchIndex;
+        this.statistics = statistics;
+
+        Gauge.builder("ems.offheap.memory", store, OffHeapEmployeeStore::offHeapBytes)
+                .description("Memory taken by the employee store")
+                .tag("area", "direct")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("ems.offheap.memory", store, OffHeapEmployeeStore::heapBytes)
+                .description("Memory taken by the employee store")
+                .tag("area", "heap")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("ems.offheap.strings", store, OffHeapEmployeeStore::stringCount)
+                .description("Distinct strings in the employee store's string pool")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public EmployeeData createEmployee(EmployeeData employeeData) {
+        EmployeeData savedEmployee = store.insert(employeeData);
+        employeeWritten(savedEmployee);
+        return savedEmployee;
+    }
+
+    // unlike EmployeeServiceImpl a batch is stored all at once, there are no chunks to leave half of it behind
+    @Override
+    public List<EmployeeData> createEmployees(List<EmployeeData> employees) {
+        List<EmployeeData> savedEmployees = store.insertAll(employees);
+        savedEmployees.forEach(this::employeeWritten);
+        return savedEmployees;
+    }
+
+    @Override
+    public EmployeeData getEmployeeById(Long employeeId) {
+        EmployeeData employeeData = store.get(employeeId);
+        if (employeeData == null) {
+            throw new ResourceNotFoundException("Employee does not exist with the given id: " + employeeId);
+        }
+        return employeeData;
+    }
+
+    @Override
+    public EmployeeLookup getEmployeesByIds(List<Long> employeeIds) {
+        EmployeeServiceImpl.validateLookup(employeeIds);
+
+        List<Long> distinctIds = new ArrayList<>(new LinkedHashSet<>(employeeIds));
+        List<EmployeeData> employees = store.getAll(distinctIds);
+        Set<Long> found = employees.stream().map(EmployeeData::getId).collect(Collectors.toCollection(HashSet::new));
+        List<Long> missingIds = distinctIds.stream().filter(id -> !found.contains(id)).collect(Collectors.toList());
+
+        return new EmployeeLookup(employees, missingIds);
+    }
+
+    @Override
+    public List<EmployeeSearchResult> searchEmployees(String query, int limit) {
+        EmployeeServiceImpl.validateSearch(query, limit);
+
+        return searchIndex.search(query, limit);
+    }
+
+    @Override
+    public List<EmployeeChangeData> getChangesSince(long since, int limit) {
+        throw new ChangesUnavailableException("There is no change log without a database");
+    }
+
+    @Override
+    public EmployeeStats getStatistics() {
+        return statistics.get();
+    }
+
+    @Override
+    public String getCollectionVersion() {
+        return startupId + "-" + writeCount.get();
+    }
+
+    @Override
+    public List<EmployeeData> getAllEmployees() {
+        List<EmployeeData> employees = new ArrayList<>();
+        streamAllEmployees(employees::add);
+        return employees;
+    }
+
+    @Override
+    public List<EmployeeData> findEmployees(EmployeeFilter filter) {
+        Predicate<EmployeeData> predicate = toPredicate(filter);
+        Comparator<EmployeeData> order = toComparator(filter.getSort());
+
+        List<EmployeeData> employees = new ArrayList<>();
+        streamAllEmployees(employee -> {
+            if (predicate.test(employee)) {
+                employees.add(employee);
+            }
+        });
+        // the store reads in id order, so only another order needs sorting
+        if (order != ID_ORDER) {
+            employees.sort(order);
+        }
+        return employees;
+    }
+
+    @Override
+    public List<EmployeeFields> findEmployeeFields(EmployeeFilter filter, List<String> fields) {
+        List<String> selected = List.copyOf(EmployeeServiceImpl.selectFields(fields));
+
+        List<EmployeeFields> rows = new ArrayList<>();
+        for (EmployeeData employee : findEmployees(filter)) {
+            Object[] values = new Object[selected.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = FIELDS.get(selected.get(i)).apply(employee);
+            }
+            rows.add(new EmployeeFields(selected, values));
+        }
+        return rows;
+    }
+
+    @Override
+    public EmployeePage getEmployeePage(int page, int size) {
+        EmployeeServiceImpl.validatePage(page, size);
+
+        // one more than the page tells whether there is a next one
+        List<EmployeeData> employees = store.findFrom((long) page * size, size + 1);
+
+        return toEmployeePage(employees, page, size);
+    }
+
+    @Override
+    public EmployeePage getEmployeesAfter(String cursor, int size) {
+        EmployeeServiceImpl.validatePageSize(size);
+
+        List<EmployeeData> employees = store.findAfter(EmployeeServiceImpl.decodeCursor(cursor), size + 1);
+
+        return toEmployeePage(employees, null, size);
+    }
+
+    // Reads the store READ_CHUNK_SIZE employees at a time, each chunk seeking past the last id of the one before, so
+    // the consumer runs without holding the store's lock. An employee written while this runs may show up in its old
+    // or new state depending on which chunk it falls in
+    @Override
+    public void streamAllEmployees(Consumer<EmployeeData> consumer) {
+        long lastId = 0;
+        List<EmployeeData> chunk;
+        do {
+            chunk = store.findAfter(lastId, READ_CHUNK_SIZE);
+            chunk.forEach(consumer);
+            if (!chunk.isEmpty()) {
+                lastId = chunk.get(chunk.size() - 1).getId();
+            }
+        } while (chunk.size() == READ_CHUNK_SIZE);
+    }
+
+    // The version of updatedEmployee, when set, must still be the stored one. The store always knows which version it
+    // wrote, so unlike with EmployeeServiceImpl the returned employee carries it even for an update without a version
+    @Override
+    public EmployeeData updateEmployee(Long employeeId, EmployeeData updatedEmployee) {
+        EmployeeData employeeData = store.update(employeeId, updatedEmployee);
+        employeeWritten(employeeData);
+        return employeeData;
+    }
+
+    @Override
+    public void deleteEmployee(Long employeeId) {
+        store.delete(employeeId);
+        searchIndex.remove(employeeId);
+        statistics.remove(employeeId);
+        writeCount.incrementAndGet();
+    }
+
+    private void employeeWritten(EmployeeData employeeData) {
+        searchIndex.put(employeeData);
+        statistics.put(employeeData);
+        writeCount.incrementAndGet();
+    }
+
+    // the same conditions as EmployeeServiceImpl's WHERE clauses: a comparison with a missing value never matches
+    private static Predicate<EmployeeData> toPredicate(EmployeeFilter filter) {
+        EmployeeServiceImpl.validateAges(filter);
+
+        Predicate<EmployeeData> predicate = employee -> true;
+        if (filter.getLastName() != null) {
+            predicate = predicate.and(employee -> filter.getLastName().equals(employee.getLastName()));
+        }
+        if (filter.getMinAge() != null) {
+            predicate = predicate.and(employee -> employee.getAge() != null && employee.getAge() >= filter.getMinAge());
+        }
+        if (filter.getMaxAge() != null) {
+            predicate = predicate.and(employee -> employee.getAge() != null && employee.getAge() <= filter.getMaxAge());
+        }
+        if (filter.getEmailDomain() != null) {
+            String emailDomain = filter.getEmailDomain().toLowerCase(Locale.ROOT);
+            predicate = predicate.and(employee -> employee.getEmail() != null && emailDomain.equals(
+                    employee.getEmail().substring(employee.getEmail().indexOf('@') + 1).toLowerCase(Locale.ROOT)));
+        }
+        return predicate;
+    }
+
+    // like EmployeeServiceImpl.toSort: missing values first when ascending, ties broken by id
+    private static Comparator<EmployeeData> toComparator(List<String> fields) {
+        Comparator<EmployeeData> order = null;
+        boolean byId = false;
+        for (String field : fields) {
+            String property = EmployeeServiceImpl.sortProperty(field);
+            byId |= property.equals("id");
+            Comparator<EmployeeData> comparator = comparator(property);
+            comparator = field.startsWith("-") ? comparator.reversed() : comparator;
+            order = order == null ? comparator : order.thenComparing(comparator);
+        }
+        if (order == null) {
+            return ID_ORDER;
+        }
+        return byId ? order : order.thenComparing(ID_ORDER);
+    }
+
+    private static Comparator<EmployeeData> comparator(String property) {
+        return switch (property) {
+            case "id" -> ID_ORDER;
+            case "firstName" -> Comparator.comparing(EmployeeData::getFirstName, Comparator.nullsFirst(Comparator.naturalOrder()));
+            case "lastName" -> Comparator.comparing(EmployeeData::getLastName, Comparator.nullsFirst(Comparator.naturalOrder()));
+            case "email" -> Comparator.comparing(EmployeeData::getEmail, Comparator.nullsFirst(Comparator.naturalOrder()));
+            case "age" -> Comparator.comparing(EmployeeData::getAge, Comparator.nullsFirst(Comparator.naturalOrder()));
+            default -> throw new IllegalArgumentException("Cannot sort by " + property);
+        };
+    }
+
+    private static EmployeePage toEmployeePage(List<EmployeeData> employees, Integer page, int size) {
+        boolean hasNext = employees.size() > size;
+        List<EmployeeData> content = hasNext ? employees.subList(0, size) : employees;
+
+        String nextCursor = null;
+        if (hasNext) {
+            nextCursor = EmployeeServiceImpl.encodeCursor(content.get(content.size() - 1).getId());
+        }
+
+        return new EmployeePage(content, page, size, hasNext, nextCursor);
+    }
+}
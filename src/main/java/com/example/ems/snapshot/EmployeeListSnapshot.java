@@ -0,0 +1,152 @@
+package com.example.ems.snapshot;
+
+import com.example.ems.service.EmployeeService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+// The full employee list as GET /api/employees sends it in JSON, gzipped ahead of time. Every refresh-interval it is
+// rebuilt if the collection version has moved on, and while it is current the list endpoint sends these bytes as they
+// are to clients that accept gzip: no query, no mapping, no serialization and no compression per request.
+//
+// A snapshot is tagged with the collection version read before its rows, so a write that commits while it is being
+// built makes it stale straight away. It is then never served, and the next refresh builds it again.
+// Like the collection ETag it assumes this instance makes all the writes to the table
+@Component
+@ConditionalOnProperty(name = "ems.list-snapshot.enabled", havingValue = "true", matchIfMissing = true)
+public class EmployeeListSnapshot implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(EmployeeListSnapshot.class);
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private final EmployeeService employeeService;
+
+    private final ObjectMapper objectMapper;
+
+    private final Duration refreshInterval;
+
+    private final Timer builds;
+
+    private final Counter served;
+
+    private ScheduledExecutorService refresher;
+
+    private volatile Snapshot snapshot;
+
+    private volatile boolean running;
+
+    public EmployeeListSnapshot(EmployeeService employeeService, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                                @Value("${ems.list-snapshot.refresh-interval:10s}") Duration refreshInterval) {
+        this.employeeService = employeeService;
+        this.objectMapper = objectMapper;
+        this.refreshInterval = refreshInterval;
+
+        Gauge.builder("ems.list-snapshot.size", this, EmployeeListSnapshot::size)
+                .description("Gzipped size of the employee list snapshot")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.builds = Timer.builder("ems.list-snapshot.build")
+                .description("Time to read, serialize and gzip the full employee list")
+                .register(meterRegistry);
+        this.served = Counter.builder("ems.list-snapshot.served")
+                .description("Employee list responses sent from the snapshot")
+                .register(meterRegistry);
+    }
+
+    // the gzipped JSON list if the snapshot was built at this collection version, otherwise null
+    public byte[] getIfCurrent(String collectionVersion) {
+        Snapshot current = snapshot;
+        if (current == null || !current.version().equals(collectionVersion)) {
+            return null;
+        }
+        served.increment();
+        return current.gzippedJson();
+    }
+
+    // Rebuilds the snapshot unless it is still current
+    public void refresh() {
+        String version = employeeService.getCollectionVersion();
+        Snapshot current = snapshot;
+        if (current != null && current.version().equals(version)) {
+            return;
+        }
+        snapshot = new Snapshot(version, builds.record(this::build));
+    }
+
+    public long size() {
+        Snapshot current = snapshot;
+        return current != null ? current.gzippedJson().length : 0;
+    }
+
+    @Override
+    public void start() {
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "employee-list-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::refreshScheduled, 0, refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        refresher.shutdownNow();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void refreshScheduled() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            // the old snapshot stays, it just isn't served once it is stale
+            log.warn("Could not rebuild the employee list snapshot: {}", e.getMessage());
+        }
+    }
+
+    // streams the rows straight into the compressor, so only the gzipped list is ever held in memory
+    private byte[] build() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JsonGenerator generator = objectMapper.createGenerator(new GZIPOutputStream(bytes, GZIP_BUFFER_SIZE))) {
+            generator.writeStartArray();
+            employeeService.streamAllEmployees(employee -> {
+                try {
+                    generator.writeObject(employee);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.writeEndArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private record Snapshot(String version, byte[] gzippedJson) {
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.ems.stats;
+
+import com.example.ems.dto.EmployeeData;
+import com.example.ems.dto.EmployeeStats;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Headcount, age histogram and email domain counts of all employees, kept in memory so GET /api/employees/stats never
+// reads the table. Every write adjusts the counters in place: an update takes out what the employee was counted as
+// before and adds what it is now, so the counts don't drift. The stats handed out are cached until the next write,
+// so a read costs nothing while nothing changes and one pass over the buckets and domains after a change.
+//
+// The counters are atomics and each employee is adjusted under its own entry of a ConcurrentHashMap, so writes of
+// different employees never wait for each other. A read during a write may see that write half applied.
+// EmployeeServiceImpl keeps it up to date after every committed write, EmployeeWarmup fills it at startup
+@Component
+public class EmployeeStatistics {
+
+    static final int TOP_DOMAINS = 10;
+
+    // exclusive upper bounds of the age buckets. The last bucket is open ended, and employees without an age have
+    // their own
+    private static final int[] BUCKET_BOUNDS = {20, 30, 40, 50, 60};
+
+    private static final String[] BUCKET_LABELS = {"<20", "20-29", "30-39", "40-49", "50-59", "60+", "unknown"};
+
+    private static final int UNKNOWN_AGE = BUCKET_LABELS.length - 1;
+
+    private static final Comparator<Map.Entry<String, Long>> BY_COUNT =
+            Map.Entry.<String, Long>comparingByValue().thenComparing(Map.Entry.comparingByKey(Comparator.reverseOrder()));
+
+    // what each employee is counted as, so an update or delete takes exactly that back out
+    private final ConcurrentHashMap<Long, Counted> counted = new ConcurrentHashMap<>();
+
+    private final AtomicLong headcount = new AtomicLong();
+
+    private final AtomicLongArray ageBuckets = new AtomicLongArray(BUCKET_LABELS.length);
+
+    private final AtomicLong ageSum = new AtomicLong();
+
+    private final ConcurrentHashMap<String, Long> domains = new ConcurrentHashMap<>();
+
+    private final AtomicLong writeCount = new AtomicLong();
+
+    private volatile Snapshot snapshot;
+
+    // adds the employee, or replaces what was counted for it before
+    public void put(EmployeeData employee) {
+        Counted now = new Counted(employee.getAge(), domainOf(employee.getEmail()));
+        counted.compute(employee.getId(), (id, before) -> {
+            if (before != null) {
+                subtract(before);
+            }
+            add(now);
+            return now;
+        });
+        writeCount.incrementAndGet();
+    }
+
+    public void remove(Long employeeId) {
+        counted.computeIfPresent(employeeId, (id, before) -> {
+            subtract(before);
+            return null;
+        });
+        writeCount.incrementAndGet();
+    }
+
+    public void clear() {
+        counted.keySet().forEach(this::remove);
+    }
+
+    public EmployeeStats get() {
+        long version = writeCount.get();
+        Snapshot current = snapshot;
+        if (current != null && current.version() == version) {
+            return current.stats();
+        }
+        EmployeeStats stats = compute();
+        snapshot = new Snapshot(version, stats);
+        return stats;
+    }
+
+    private EmployeeStats compute() {
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < BUCKET_LABELS.length; i++) {
+            histogram.put(BUCKET_LABELS[i], ageBuckets.get(i));
+        }
+
+        long withAge = headcount.get() - ageBuckets.get(UNKNOWN_AGE);
+        Double averageAge = withAge > 0 ? (double) ageSum.get() / withAge : null;
+
+        return new EmployeeStats(headcount.get(), averageAge, histogram, topDomains());
+    }
+
+    private Map<String, Long> topDomains() {
+        // the least common of the top ones is at the head, and leaves first when a more common domain comes along
+        PriorityQueue<Map.Entry<String, Long>> top = new PriorityQueue<>(TOP_DOMAINS + 1, BY_COUNT);
+        for (Map.Entry<String, Long> domain : domains.entrySet()) {
+            top.add(Map.entry(domain.getKey(), domain.getValue()));
+            if (top.size() > TOP_DOMAINS) {
+                top.poll();
+            }
+        }
+
+        List<Map.Entry<String, Long>> sorted = new ArrayList<>(top);
+        sorted.sort(BY_COUNT.reversed());
+        Map<String, Long> topDomains = new LinkedHashMap<>();
+        sorted.forEach(domain -> topDomains.put(domain.getKey(), domain.getValue()));
+        return topDomains;
+    }
+
+    private void add(Counted employee) {
+        headcount.incrementAndGet();
+        ageBuckets.incrementAndGet(bucketOf(employee.age()));
+        if (employee.age() != null) {
+            ageSum.addAndGet(employee.age());
+        }
+        if (employee.domain() != null) {
+            domains.merge(employee.domain(), 1L, Long::sum);
+        }
+    }
+
+    private void subtract(Counted employee) {
+        headcount.decrementAndGet();
+        ageBuckets.decrementAndGet(bucketOf(employee.age()));
+        if (employee.age() != null) {
+            ageSum.addAndGet(-employee.age());
+        }
+        if (employee.domain() != null) {
+            // a domain nobody has any more is dropped, so the map only holds domains in use
+            domains.computeIfPresent(employee.domain(), (domain, count) -> count == 1 ? null : count - 1);
+        }
+    }
+
+    private static int bucketOf(Integer age) {
+        if (age == null) {
+            return UNKNOWN_AGE;
+        }
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            if (age < BUCKET_BOUNDS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS.length;
+    }
+
+    // lower cased like the email_domain column
+    private static String domainOf(String email) {
+        if (email == null) {
+            return null;
+        }
+        return email.substring(email.indexOf('@') + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private record Counted(Integer age, String domain) {
+    }
+
+    private record Snapshot(long version, EmployeeStats stats) {
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.ems.threads;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+
+// With ems.threads.virtual=true every request, and so every controller and EmployeeService call it makes, runs on its
+// own virtual thread instead of one of Tomcat's 200 platform threads. A request blocked on JDBC then only holds a few
+// KB of heap instead of a whole thread, so the connection pool rather than the thread pool becomes the limit.
+// The async work of /stream runs on virtual threads as well.
+//
+// The data source is limited to ems.datasource.max-concurrent-connections callers at a time (by default the pool size)
+// so the extra concurrency queues up in front of the pool instead of in it
+@Configuration
+@ConditionalOnProperty(name = "ems.threads.virtual", havingValue = "true")
+public class VirtualThreadsConfig {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadsProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    @Bean(name = TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    public AsyncTaskExecutor applicationTaskExecutor() {
+        return new TaskExecutorAdapter(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    @Bean
+    public static BeanPostProcessor connectionLimitingDataSourcePostProcessor(Environment environment,
+                                                                              ObjectProvider<MeterRegistry> meterRegistry) {
+        int maxConnections = environment.getProperty("ems.datasource.max-concurrent-connections", Integer.class,
+                environment.getProperty("spring.datasource.hikari.maximum-pool-size", Integer.class, 10));
+        Duration acquireTimeout = environment.getProperty("ems.datasource.connection-acquire-timeout", Duration.class,
+                Duration.ofSeconds(5));
+
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof ConnectionLimitingDataSource)) {
+                    ConnectionLimitingDataSource limited = new ConnectionLimitingDataSource(dataSource, maxConnections, acquireTimeout);
+                    meterRegistry.ifAvailable(registry -> {
+                        Gauge.builder("ems.datasource.connections.waiting", limited, ConnectionLimitingDataSource::getWaiting)
+                                .description("Requests queued for a database connection")
+                                .register(registry);
+                        Gauge.builder("ems.datasource.connections.available", limited, ConnectionLimitingDataSource::getAvailable)
+                                .description("Database connections that can be taken without waiting")
+                                .register(registry);
+                    });
+                    return limited;
+                }
+                return bean;
+            }
+        };
+    }
+}
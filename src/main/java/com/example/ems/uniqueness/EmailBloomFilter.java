@@ -0,0 +1,159 @@
+package com.example.ems.uniqueness;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bloom filter of every email in the employees table, so that creating or updating an employee with an email nobody
+// has only needs a uniqueness query when the filter can't rule the email out. "No" is definite, "maybe" is answered by
+// the unique index on email_id. Sized for expected-insertions emails at false-positive-probability.
+//
+// Emails are lower cased before hashing, so different spellings of one address share their bits: the filter then never
+// says no to an email the database compares as equal, whichever collation it uses.
+// Bits are only ever set. Deleted or replaced emails stay in the filter as false positives until it is refilled at the
+// next startup, and ems.email-filter.expected-false-positive-rate shows how full it has become.
+// EmployeeServiceImpl adds every email it writes, EmployeeWarmup fills it at startup
+@Component
+public class EmailBloomFilter {
+
+    private final AtomicLongArray bits;
+
+    private final long bitCount;
+
+    private final int hashCount;
+
+    private final LongAdder setBits = new LongAdder();
+
+    private final Counter misses;
+
+    private final Counter falsePositives;
+
+    private final Counter duplicates;
+
+    public EmailBloomFilter(@Value("${ems.email-filter.expected-insertions:1000000}") long expectedInsertions,
+                            @Value("${ems.email-filter.false-positive-probability:0.01}") double falsePositiveProbability,
+                            MeterRegistry meterRegistry) {
+        // the optimal size and number of hashes for n insertions at probability p: m = -n ln p / (ln 2)^2, k = m / n ln 2
+        long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, (optimalBits + 63) / 64);
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = words * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+
+        Gauge.builder("ems.email-filter.memory", this, EmailBloomFilter::memoryBytes)
+                .description("Size of the email Bloom filter")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("ems.email-filter.expected-false-positive-rate", this, EmailBloomFilter::expectedFalsePositiveRate)
+                .description("Probability that an unused email is reported as possibly taken, given how full the filter is")
+                .register(meterRegistry);
+        Gauge.builder("ems.email-filter.false-positive-rate", this, EmailBloomFilter::falsePositiveRate)
+                .description("Share of unused emails checked since startup that still needed a uniqueness query")
+                .register(meterRegistry);
+        this.misses = checks(meterRegistry, "miss");
+        this.falsePositives = checks(meterRegistry, "false_positive");
+        this.duplicates = checks(meterRegistry, "duplicate");
+    }
+
+    public void put(String email) {
+        if (email == null) {
+            return;
+        }
+        long hash = hash(email);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = index(h1 + i * h2);
+            long mask = 1L << bit;
+            long previous = bits.getAndAccumulate((int) (bit >>> 6), mask, (word, m) -> word | m);
+            if ((previous & mask) == 0) {
+                setBits.increment();
+            }
+        }
+    }
+
+    // false means no employee has this email. A true has to be confirmed with the database, and reported back through
+    // falsePositive or duplicate
+    public boolean mightContain(String email) {
+        if (email == null) {
+            return false;
+        }
+        long hash = hash(email);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = index(h1 + i * h2);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                misses.increment();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the database didn't have an email the filter said it might have
+    public void falsePositive() {
+        falsePositives.increment();
+    }
+
+    // the database confirmed the email is taken
+    public void duplicate() {
+        duplicates.increment();
+    }
+
+    public void clear() {
+        for (int i = 0; i < bits.length(); i++) {
+            bits.set(i, 0);
+        }
+        setBits.reset();
+    }
+
+    public long memoryBytes() {
+        return bits.length() * 8L;
+    }
+
+    public int hashCount() {
+        return hashCount;
+    }
+
+    // (share of bits set) ^ hashes, the chance that all the bits of an email never added happen to be set
+    public double expectedFalsePositiveRate() {
+        return Math.pow((double) setBits.sum() / bitCount, hashCount);
+    }
+
+    public double falsePositiveRate() {
+        double unused = misses.count() + falsePositives.count();
+        return unused == 0 ? 0 : falsePositives.count() / unused;
+    }
+
+    private long index(int combinedHash) {
+        // Kirsch-Mitzenmacher: the i-th hash is h1 + i * h2, flipped to non-negative
+        return (combinedHash < 0 ? ~combinedHash : combinedHash) % bitCount;
+    }
+
+    private static Counter checks(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("ems.email-filter.checks")
+                .description("Email uniqueness checks by outcome: ruled out by the filter, queried but unused, taken")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    // 64-bit FNV-1a over the lower cased email, finished with the SplitMix64 mixer so both halves are usable hashes
+    private static long hash(String email) {
+        String normalized = email.toLowerCase(Locale.ROOT);
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < normalized.length(); i++) {
+            hash ^= normalized.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.ems.warmup;
+
+import com.example.ems.search.EmployeeSearchIndex;
+import com.example.ems.service.EmployeeService;
+import com.example.ems.stats.EmployeeStatistics;
+import com.example.ems.uniqueness.EmailBloomFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+
+// Fills the in-memory views of the employees (the search index, the email filter and the statistics) from the
+// employees table in one pass once every bean exists, before the web server starts taking requests, so no write can
+// slip in between the rows being read and the views going live
+@Component
+public class EmployeeWarmup implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(EmployeeWarmup.class);
+
+    private final EmployeeService employeeService;
+
+    private final EmployeeSearchIndex searchIndex;
+
+    private final EmailBloomFilter emailFilter;
+
+    private final EmployeeStatistics statistics;
+
+    public EmployeeWarmup(EmployeeService employeeService, EmployeeSearchIndex searchIndex,
+                          EmailBloomFilter emailFilter, EmployeeStatistics statistics) {
+        this.employeeService = employeeService;
+        this.searchIndex = searchIndex;
+        this.emailFilter = emailFilter;
+        this.statistics = statistics;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        long start = System.nanoTime();
+        searchIndex.clear();
+        emailFilter.clear();
+        statistics.clear();
+        employeeService.streamAllEmployees(employee -> {
+            searchIndex.put(employee);
+            emailFilter.put(employee.getEmail());
+            statistics.put(employee);
+        });
+        log.info("Loaded {} employees into the search index, email filter and statistics in {} ms, email filter uses {} KB " +
+                        "with {} hashes", searchIndex.size(), (System.nanoTime() - start) / 1_000_000,
+                emailFilter.memoryBytes() / 1024, emailFilter.hashCount());
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.ems.wireformat;
+
+import com.example.ems.dto.EmployeeData;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.dataformat.protobuf.ProtobufMapper;
+import com.fasterxml.jackson.dataformat.protobuf.schema.NativeProtobufSchema;
+import com.fasterxml.jackson.dataformat.protobuf.schema.ProtobufSchemaLoader;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.util.List;
+
+import static com.example.ems.wireformat.WireFormatConfig.APPLICATION_PROTOBUF_VALUE;
+
+// Reads and writes employees as Protocol Buffers, by the schema in employee.proto. Jackson does the encoding, so a
+// request body is still built through EmployeeData's @JsonDeserialize builder and no classes are generated with protoc.
+// Protobuf has no top-level arrays, a List<EmployeeData> goes over the wire as one EmployeeList message.
+// Only EmployeeData and List<EmployeeData> have a schema, other bodies are left to the JSON, Smile and CBOR converters
+public class EmployeeProtobufHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+    public static final MediaType APPLICATION_PROTOBUF = MediaType.parseMediaType(APPLICATION_PROTOBUF_VALUE);
+
+    private static final String SCHEMA = "employee.proto";
+
+    private final ObjectReader employeeReader;
+
+    private final ObjectWriter employeeWriter;
+
+    private final ObjectReader listReader;
+
+    private final ObjectWriter listWriter;
+
+    private final TypeFactory typeFactory;
+
+    private final JavaType listType;
+
+    public EmployeeProtobufHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        super(APPLICATION_PROTOBUF);
+        ObjectMapper mapper = new ProtobufMapper();
+        builder.configure(mapper);
+        this.typeFactory = mapper.getTypeFactory();
+        this.listType = typeFactory.constructCollectionType(List.class, EmployeeData.class);
+
+        NativeProtobufSchema schema = loadSchema();
+        this.employeeReader = mapper.readerFor(EmployeeData.class).with(schema.forType("Employee"));
+        this.employeeWriter = mapper.writerFor(EmployeeData.class).with(schema.forType("Employee"));
+        this.listReader = mapper.readerFor(EmployeeList.class).with(schema.forType("EmployeeList"));
+        this.listWriter = mapper.writerFor(EmployeeList.class).with(schema.forType("EmployeeList"));
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return EmployeeData.class == clazz;
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return hasSchema(type) && canRead(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        return (type != null ? hasSchema(type) : supports(clazz)) && canWrite(mediaType);
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+        return EmployeeData.class == type ? readInternal(EmployeeData.class, inputMessage) : readList(inputMessage);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        try (InputStream body = inputMessage.getBody()) {
+            return employeeReader.readValue(body);
+        } catch (IOException e) {
+            throw new HttpMessageNotReadableException("Could not read protobuf employee: " + e.getMessage(), e, inputMessage);
+        }
+    }
+
+    @Override
+    protected void writeInternal(Object body, Type type, HttpOutputMessage outputMessage) throws IOException {
+        if (body instanceof EmployeeData employeeData) {
+            employeeWriter.writeValue(outputMessage.getBody(), employeeData);
+        } else {
+            @SuppressWarnings("unchecked")
+            List<EmployeeData> employees = (List<EmployeeData>) body;
+            listWriter.writeValue(outputMessage.getBody(), new EmployeeList(employees));
+        }
+    }
+
+    private List<EmployeeData> readList(HttpInputMessage inputMessage) throws IOException {
+        try (InputStream body = inputMessage.getBody()) {
+            // an empty list encodes to no bytes at all
+            byte[] message = body.readAllBytes();
+            if (message.length == 0) {
+                return List.of();
+            }
+            EmployeeList employeeList = listReader.readValue(message);
+            return employeeList.employees() != null ? employeeList.employees() : List.of();
+        } catch (IOException e) {
+            throw new HttpMessageNotReadableException("Could not read protobuf employees: " + e.getMessage(), e, inputMessage);
+        }
+    }
+
+    private boolean hasSchema(Type type) {
+        return EmployeeData.class == type || listType.equals(typeFactory.constructType(type));
+    }
+
+    private static NativeProtobufSchema loadSchema() {
+        try {
+            return ProtobufSchemaLoader.std.loadNative(new ClassPathResource(SCHEMA).getURL());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load " + SCHEMA, e);
+        }
+    }
+
+    record EmployeeList(List<EmployeeData> employees) {
+    }
+}
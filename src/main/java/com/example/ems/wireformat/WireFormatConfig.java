@@ -0,0 +1,62 @@
+package com.example.ems.wireformat;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+// Binary alternatives to JSON for the /api/employees bodies, picked by Accept and Content-Type: Smile and CBOR carry
+// the same documents as the JSON in a compact encoding, Protobuf (employees and lists of employees only) leaves the
+// field names out entirely. Every mapper starts from Spring Boot's builder, so spring.jackson.* applies to all of them.
+// Spring MVC already registers Smile and CBOR converters when the modules are on the classpath, but with plain mappers;
+// ours take their place. They and the Protobuf converter come after the JSON one, so a client that accepts anything
+// still gets JSON. The same URL now has several representations under one ETag, so responses carry Vary: Accept for
+// caches in between
+@Configuration
+public class WireFormatConfig implements WebMvcConfigurer {
+
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+
+    public static final String APPLICATION_CBOR_VALUE = "application/cbor";
+
+    public static final String APPLICATION_PROTOBUF_VALUE = "application/x-protobuf";
+
+    // a new builder each time, Boot's is a prototype bean
+    private final ObjectProvider<Jackson2ObjectMapperBuilder> builders;
+
+    public WireFormatConfig(ObjectProvider<Jackson2ObjectMapperBuilder> builders) {
+        this.builders = builders;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+                return true;
+            }
+        }).addPathPatterns("/api/employees/**");
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.removeIf(converter -> converter instanceof MappingJackson2SmileHttpMessageConverter
+                || converter instanceof MappingJackson2CborHttpMessageConverter);
+        converters.add(new MappingJackson2SmileHttpMessageConverter(builders.getObject().factory(new SmileFactory()).build()));
+        converters.add(new MappingJackson2CborHttpMessageConverter(builders.getObject().factory(new CBORFactory()).build()));
+        converters.add(new EmployeeProtobufHttpMessageConverter(builders.getObject()));
+    }
+}
@@ -0,0 +1,359 @@
+package com.example.ems.writebehind;
+
+import com.example.ems.cache.EmployeeCache;
+import com.example.ems.changes.EmployeeChangeLog;
+import com.example.ems.dto.EmployeeData;
+import com.example.ems.entity.EmployeeChange;
+import com.example.ems.mapper.EmployeeMapper;
+import com.example.ems.repository.EmployeeRepository;
+import com.example.ems.search.EmployeeSearchIndex;
+import com.example.ems.stats.EmployeeStatistics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// With ems.write-behind.enabled=true, updates without a version are acknowledged once they are in this buffer and
+// written to the database later, many of them per transaction. Updates to the same employee that arrive before the
+// next flush are coalesced, only the last one is written.
+//
+// Durability contract: an acknowledged update lives only in this process until it is flushed, which happens every
+// flush-interval or as soon as flush-size employees are pending. A crash or kill -9 loses what hasn't been flushed yet;
+// a normal shutdown drains the buffer after the web server has stopped taking requests. An update that the database
+// rejects at flush time (e.g. an email taken in the meantime, or the employee was deleted) is logged and dropped, the
+// client has already been told it succeeded. While the database is unreachable pending updates are kept and retried,
+// and once max-pending employees are waiting new updates are written synchronously again, so they fail like they
+// would without the buffer.
+//
+// Any synchronous write of an employee (conditional update, delete, overflow) goes through runExclusive, which first
+// writes that employee's pending update, so writes of one employee always reach the database in the order they were made.
+// Only writes of the same employee wait for each other: runExclusive holds the employee's lock stripe, and a flush
+// takes an employee into its batch under that stripe and marks it in flight until the batch is done. A synchronous
+// write of an employee in flight waits for that batch, the flush skips employees that are being written synchronously.
+//
+// Lists, filters and pages read the database and don't see buffered updates. The writtenListener is told whenever the
+// database has changed under them, after a batch commits or a dropped update is reverted, so that the collection
+// version only moves on once list reads return the new rows
+@Component
+@ConditionalOnProperty(name = "ems.write-behind.enabled", havingValue = "true")
+public class WriteBehindBuffer implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindBuffer.class);
+
+    // bulk updates bump the version like EmployeeRepository.updateEmployeeById does
+    private static final String UPDATE_SQL = "update employees set first_name = ?, last_name = ?, email_id = ?, " +
+            "age = ?, phone = ?, version = version + 1 where id = ?";
+
+    // stops after the web server (which stops at DEFAULT_PHASE - 2048), so nothing is added while the buffer drains
+    private static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+
+    private final Map<Long, EmployeeData> pending = new ConcurrentHashMap<>();
+
+    private static final int LOCK_STRIPES = 64;
+
+    // by employee id, so a flush and a synchronous write of the same employee can't interleave
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+    // the employees in the batch a flush is writing, each with a future completed when the batch is done
+    private final Map<Long, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final EmployeeRepository employeeRepository;
+
+    private final EmployeeCache employeeCache;
+
+    private final EmployeeSearchIndex searchIndex;
+
+    private final EmployeeChangeLog changeLog;
+
+    private final EmployeeStatistics statistics;
+
+    private final int flushSize;
+
+    private final Duration flushInterval;
+
+    private final int maxPending;
+
+    private final Counter flushed;
+
+    private final Counter dropped;
+
+    private volatile Runnable writtenListener = () -> {
+    };
+
+    private ScheduledExecutorService flusher;
+
+    private volatile boolean running;
+
+    public WriteBehindBuffer(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                             EmployeeRepository employeeRepository, EmployeeCache employeeCache,
+                             EmployeeSearchIndex searchIndex, EmployeeChangeLog changeLog,
+                             EmployeeStatistics statistics, MeterRegistry meterRegistry,
+                             @Value("${ems.write-behind.flush-size:500}") int flushSize,
+                             @Value("${ems.write-behind.flush-interval:100ms}") Duration flushInterval,
+                             @Value("${ems.write-behind.max-pending:10000}") int maxPending) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.employeeRepository = employeeRepository;
+        this.employeeCache = employeeCache;
+        this.searchIndex = searchIndex;
+        this.changeLog = changeLog;
+        this.statistics = statistics;
+        this.flushSize = flushSize;
+        this.flushInterval = flushInterval;
+        this.maxPending = maxPending;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+
+        Gauge.builder("ems.write-behind.pending", pending, Map::size)
+                .description("Employees with an acknowledged update not yet written to the database")
+                .register(meterRegistry);
+        this.flushed = Counter.builder("ems.write-behind.flushed")
+                .description("Buffered employee updates written to the database")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("ems.write-behind.dropped")
+                .description("Buffered employee updates the database rejected")
+                .register(meterRegistry);
+    }
+
+    // Buffers the update, replacing any pending one of the same employee. Returns false if the caller has to write it
+    // synchronously instead: the buffer is full or shutting down
+    public boolean offer(EmployeeData employeeData) {
+        if (!running || pending.size() >= maxPending && !pending.containsKey(employeeData.getId())) {
+            return false;
+        }
+        pending.put(employeeData.getId(), employeeData);
+        if (pending.size() >= flushSize && flushScheduled.compareAndSet(false, true)) {
+            flusher.execute(this::flushScheduled);
+        }
+        return true;
+    }
+
+    // the acknowledged but not yet written update of the employee, or null
+    public EmployeeData getPending(Long employeeId) {
+        return pending.get(employeeId);
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public void onWritten(Runnable listener) {
+        this.writtenListener = listener;
+    }
+
+    // Runs a synchronous write of the employee after writing its pending update, if it has one
+    public <T> T runExclusive(Long employeeId, Supplier<T> write) {
+        ReentrantLock lock = lockFor(employeeId);
+        lock.lock();
+        try {
+            // a flush that took the pending update before we got the lock writes it first
+            CompletableFuture<Void> flushing = inFlight.get(employeeId);
+            if (flushing != null) {
+                flushing.join();
+            }
+            EmployeeData employeeData = pending.get(employeeId);
+            if (employeeData != null) {
+                writeBatch(List.of(employeeData));
+            }
+            return write.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Writes up to flush-size pending updates in one transaction, returns how many were taken off the buffer
+    public int flush() {
+        List<EmployeeData> batch = new ArrayList<>(Math.min(flushSize, pending.size()));
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        try {
+            for (Long employeeId : pending.keySet()) {
+                if (batch.size() == flushSize) {
+                    break;
+                }
+                ReentrantLock lock = lockFor(employeeId);
+                // the employee is being written synchronously, it goes in a later batch if it is still pending then
+                if (!lock.tryLock()) {
+                    continue;
+                }
+                try {
+                    EmployeeData employeeData = pending.get(employeeId);
+                    if (employeeData != null && inFlight.putIfAbsent(employeeId, done) == null) {
+                        batch.add(employeeData);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            if (batch.isEmpty()) {
+                return 0;
+            }
+            writeBatch(batch);
+            return batch.size();
+        } finally {
+            batch.forEach(employeeData -> inFlight.remove(employeeData.getId(), done));
+            done.complete(null);
+        }
+    }
+
+    @Override
+    public void start() {
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "employee-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushScheduled, flushInterval.toMillis(), flushInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    // Called on shutdown once the web server has stopped: writes everything that is still pending
+    @Override
+    public void stop() {
+        running = false;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        long start = System.nanoTime();
+        int drained = 0;
+        try {
+            while (!pending.isEmpty()) {
+                drained += flush();
+            }
+            log.info("Wrote {} buffered employee updates on shutdown in {} ms", drained,
+                    (System.nanoTime() - start) / 1_000_000);
+        } catch (DataAccessException e) {
+            log.error("Lost {} buffered employee updates on shutdown: {}", pending.size(), pending.keySet(), e);
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    private ReentrantLock lockFor(Long employeeId) {
+        return locks[Math.floorMod(employeeId.hashCode(), LOCK_STRIPES)];
+    }
+
+    private void flushScheduled() {
+        flushScheduled.set(false);
+        try {
+            // keep going while a full batch was written, more may be waiting
+            while (flush() == flushSize) {
+                flushScheduled.set(false);
+            }
+        } catch (DataAccessException e) {
+            // the updates stay pending and are retried on the next run
+            log.warn("Could not write {} buffered employee updates, will retry: {}", pending.size(), e.getMessage());
+        }
+    }
+
+    // Writes the batch in one transaction as a single JDBC batch. If the database rejects a row the whole batch rolls
+    // back, and the rows are then written one by one to drop only the rejected ones
+    private void writeBatch(List<EmployeeData> batch) {
+        int[] updatedRows;
+        try {
+            updatedRows = transactionTemplate.execute(status -> {
+                int[] rows = jdbcTemplate.batchUpdate(UPDATE_SQL, batch, batch.size(),
+                        (statement, employeeData) -> {
+                            statement.setString(1, employeeData.getFirstName());
+                            statement.setString(2, employeeData.getLastName());
+                            statement.setString(3, employeeData.getEmail());
+                            statement.setObject(4, employeeData.getAge());
+                            statement.setString(5, employeeData.getPhone());
+                            statement.setLong(6, employeeData.getId());
+                        })[0];
+                // the change log gets the updates in the same transaction, only the ones that found their row
+                for (int i = 0; i < batch.size(); i++) {
+                    if (rows[i] != 0) {
+                        changeLog.append(EmployeeChange.Type.UPDATED, batch.get(i).getId(), batch.get(i));
+                    }
+                }
+                return rows;
+            });
+        } catch (DataIntegrityViolationException e) {
+            if (batch.size() > 1) {
+                batch.forEach(employeeData -> writeBatch(List.of(employeeData)));
+                return;
+            }
+            drop(batch.get(0), e.getMostSpecificCause().getMessage());
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            EmployeeData employeeData = batch.get(i);
+            // 0 means no such row. Drivers that don't count batched rows report SUCCESS_NO_INFO (-2) instead
+            if (updatedRows[i] == 0) {
+                drop(employeeData, "the employee no longer exists");
+                continue;
+            }
+            written(employeeData);
+            flushed.increment();
+        }
+        writtenListener.run();
+    }
+
+    // the search index and statistics were given the update when it was buffered, so they go back to what the
+    // database has
+    private void drop(EmployeeData employeeData, String reason) {
+        log.error("Dropped the buffered update of employee {}, {}", employeeData.getId(), reason);
+        written(employeeData);
+        employeeRepository.findById(employeeData.getId())
+                .map(EmployeeMapper::mapToEmployeeData)
+                .ifPresentOrElse(stored -> {
+                    searchIndex.put(stored);
+                    statistics.put(stored);
+                }, () -> {
+                    searchIndex.remove(employeeData.getId());
+                    statistics.remove(employeeData.getId());
+                });
+        dropped.increment();
+        writtenListener.run();
+    }
+
+    // Only now the database has it may the buffered value go. A newer update that arrived during the write stays
+    private void written(EmployeeData employeeData) {
+        pending.remove(employeeData.getId(), employeeData);
+        employeeCache.invalidate(employeeData.getId());
+    }
+}
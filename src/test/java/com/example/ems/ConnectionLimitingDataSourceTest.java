@@ -0,0 +1,71 @@
+package com.example.ems;
+
+import com.example.ems.threads.ConnectionLimitingDataSource;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ConnectionLimitingDataSourceTest {
+
+    @Test
+    public void getConnection_should_time_out_while_all_connections_are_taken() throws Exception {
+        // given
+        DataSource pool = mock(DataSource.class);
+        when(pool.getConnection()).thenReturn(mock(Connection.class));
+        ConnectionLimitingDataSource dataSource = new ConnectionLimitingDataSource(pool, 1, Duration.ofMillis(50));
+
+        // when
+        Connection first = dataSource.getConnection();
+
+        // then
+        assertThatThrownBy(dataSource::getConnection).isInstanceOf(SQLTransientConnectionException.class);
+        assertThat(dataSource.getAvailable()).isZero();
+        first.close();
+    }
+
+    @Test
+    public void closing_a_connection_should_let_the_next_caller_through_once() throws Exception {
+        // given
+        DataSource pool = mock(DataSource.class);
+        Connection pooled = mock(Connection.class);
+        when(pool.getConnection()).thenReturn(pooled);
+        ConnectionLimitingDataSource dataSource = new ConnectionLimitingDataSource(pool, 1, Duration.ofMillis(50));
+
+        // when
+        Connection first = dataSource.getConnection();
+        first.close();
+        // a second close must not hand out a permit that was never taken
+        first.close();
+        Connection second = dataSource.getConnection();
+
+        // then
+        verify(pooled, times(2)).close();
+        assertThat(second).isNotNull();
+        assertThat(dataSource.getAvailable()).isZero();
+    }
+
+    @Test
+    public void failing_to_get_a_connection_should_give_the_permit_back() throws Exception {
+        // given
+        DataSource pool = mock(DataSource.class);
+        when(pool.getConnection()).thenThrow(new SQLException("database down"));
+        ConnectionLimitingDataSource dataSource = new ConnectionLimitingDataSource(pool, 1, Duration.ofMillis(50));
+
+        // when
+        assertThatThrownBy(dataSource::getConnection).hasMessage("database down");
+
+        // then
+        assertThat(dataSource.getAvailable()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.ems;
+
+import com.example.ems.uniqueness.EmailBloomFilter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EmailBloomFilterTest {
+
+    private static final int EMAILS = 10_000;
+
+    @Test
+    public void should_never_rule_out_an_added_email_in_any_case() {
+        // given
+        EmailBloomFilter filter = new EmailBloomFilter(EMAILS, 0.01, new SimpleMeterRegistry());
+
+        // when
+        for (int i = 0; i < EMAILS; i++) {
+            filter.put("Employee" + i + "@Example.com");
+        }
+
+        // then
+        for (int i = 0; i < EMAILS; i++) {
+            assertThat(filter.mightContain("employee" + i + "@example.com")).isTrue();
+        }
+    }
+
+    @Test
+    public void should_stay_close_to_the_configured_false_positive_probability_when_full() {
+        // given
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        EmailBloomFilter filter = new EmailBloomFilter(EMAILS, 0.01, meterRegistry);
+        for (int i = 0; i < EMAILS; i++) {
+            filter.put("employee" + i + "@example.com");
+        }
+
+        // when
+        int falsePositives = 0;
+        for (int i = 0; i < EMAILS; i++) {
+            if (filter.mightContain("applicant" + i + "@example.com")) {
+                falsePositives++;
+            }
+        }
+
+        // then
+        assertThat(falsePositives).isLessThan(EMAILS * 2 / 100);
+        assertThat(filter.expectedFalsePositiveRate()).isBetween(0.005, 0.015);
+        // about 9.6 bits per email at 1%
+        assertThat(meterRegistry.get("ems.email-filter.memory").gauge().value()).isBetween(11_000.0, 13_000.0);
+        assertThat(meterRegistry.get("ems.email-filter.checks").tag("result", "miss").counter().count())
+                .isEqualTo(EMAILS - falsePositives);
+    }
+}
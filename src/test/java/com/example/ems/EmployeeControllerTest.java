@@ -1,20 +1,54 @@
 package com.example.ems;
 
+import com.example.ems.changes.EmployeeChangeFeed;
 import com.example.ems.controller.EmployeeController;
+import com.example.ems.dto.EmployeeChangeData;
 import com.example.ems.dto.EmployeeData;
+import com.example.ems.dto.EmployeeFields;
+import com.example.ems.dto.EmployeeFilter;
+import com.example.ems.dto.EmployeeLookup;
+import com.example.ems.dto.EmployeePage;
+import com.example.ems.dto.EmployeeSearchResult;
+import com.example.ems.dto.EmployeeStats;
+import com.example.ems.entity.EmployeeChange;
+import com.example.ems.exception.ChangesExpiredException;
+import com.example.ems.exception.InvalidRequestException;
 import com.example.ems.exception.ResourceNotFoundException;
+import com.example.ems.exception.VersionConflictException;
+import com.example.ems.idempotency.InMemoryIdempotencyStore;
 import com.example.ems.service.EmployeeService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.protobuf.ProtobufMapper;
+import com.fasterxml.jackson.dataformat.protobuf.schema.NativeProtobufSchema;
+import com.fasterxml.jackson.dataformat.protobuf.schema.ProtobufSchemaLoader;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.time.Instant;
 import java.util.Arrays;
-
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static com.example.ems.wireformat.WireFormatConfig.APPLICATION_CBOR_VALUE;
+import static com.example.ems.wireformat.WireFormatConfig.APPLICATION_PROTOBUF_VALUE;
+import static com.example.ems.wireformat.WireFormatConfig.APPLICATION_SMILE_VALUE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasSize;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.refEq;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -22,6 +56,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(EmployeeController.class)
+@Import(InMemoryIdempotencyStore.class)
 public class EmployeeControllerTest {
 
     private static final String END_POINT_PATH = "/api/employees";
@@ -31,6 +66,8 @@ public class EmployeeControllerTest {
     private ObjectMapper objectMapper;
     @MockBean
     private EmployeeService employeeService;
+    @MockBean
+    private EmployeeChangeFeed changeFeed;
 
     @Test
     public void should_return_bad_request_if_createEmployee_has_invalid_request_body() throws Exception {
@@ -74,12 +111,133 @@ public class EmployeeControllerTest {
         verifyNoMoreInteractions(employeeService);
     }
 
+    @Test
+    public void should_replay_createEmployee_response_when_Idempotency_Key_is_reused() throws Exception {
+        // given
+        EmployeeData newEmployee = new EmployeeData
+                .EmployeeDataBuilder(null, "John", "Doe", "John.Doe@gmail.com")
+                .build();
+        EmployeeData savedEmployee = new EmployeeData
+                .EmployeeDataBuilder(7L, "John", "Doe", "John.Doe@gmail.com")
+                .setVersion(0L)
+                .build();
+        when(employeeService.createEmployee(any())).thenReturn(savedEmployee);
+
+        // when
+        mockMvc.perform(post(END_POINT_PATH)
+                .header("Idempotency-Key", "create-john")
+                .contentType("application/json")
+                .content(objectMapper.writeValueAsString(newEmployee)));
+        ResultActions replay = mockMvc.perform(post(END_POINT_PATH)
+                .header("Idempotency-Key", "create-john")
+                .contentType("application/json")
+                .content(objectMapper.writeValueAsString(newEmployee)));
+        ResultActions otherBody = mockMvc.perform(post(END_POINT_PATH)
+                .header("Idempotency-Key", "create-john")
+                .contentType("application/json")
+                .content(objectMapper.writeValueAsString(new EmployeeData
+                        .EmployeeDataBuilder(null, "Jane", "Doe", "Jane.Doe@gmail.com")
+                        .build())));
+
+        // then
+        replay.andExpect(status().isCreated())
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andExpect(header().string("ETag", "\"0\""))
+                .andExpect(jsonPath("$.id").value(7L))
+                .andDo(print());
+        otherBody.andExpect(status().isUnprocessableEntity());
+
+        verify(employeeService, times(1)).createEmployee(any());
+        verifyNoMoreInteractions(employeeService);
+    }
+
+    @Test
+    public void should_let_the_Idempotency_Key_be_reused_when_createEmployee_fails() throws Exception {
+        // given
+        EmployeeData newEmployee = new EmployeeData
+                .EmployeeDataBuilder(null, "John", "Doe", "John.Doe@gmail.com")
+                .build();
+        when(employeeService.createEmployee(any()))
+                .thenThrow(new InvalidRequestException("try again"))
+                .thenReturn(new EmployeeData.EmployeeDataBuilder(7L, "John", "Doe", "John.Doe@gmail.com").build());
+
+        // when
+        ResultActions failed = mockMvc.perform(post(END_POINT_PATH)
+                .header("Idempotency-Key", "retry-john")
+                .contentType("application/json")
+                .content(objectMapper.writeValueAsString(newEmployee)));
+        ResultActions retried = mockMvc.perform(post(END_POINT_PATH)
+                .header("Idempotency-Key", "retry-john")
+                .contentType("application/json")
+                .content(objectMapper.writeValueAsString(newEmployee)));
+
+        // then
+        failed.andExpect(status().isBadRequest());
+        retried.andExpect(status().isCreated())
+                .andExpect(header().doesNotExist("Idempotent-Replayed"));
+
+        verify(employeeService, times(2)).createEmployee(any());
+    }
+
+    @Test
+    public void should_return_created_when_createEmployees_has_valid_request_body() throws Exception {
+        // given
+        EmployeeData newEmployee = new EmployeeData
+                .EmployeeDataBuilder(null, "John", "Doe", "John.Doe@gmail.com")
+                .build();
+        EmployeeData newEmployee2 = new EmployeeData
+                .EmployeeDataBuilder(null, "Tom", "Cruise", "Tom.Cruise@gmail.com")
+                .build();
+
+        String requestBody = objectMapper.writeValueAsString(List.of(newEmployee, newEmployee2));
+
+        // when
+        ResultActions response = mockMvc.perform(post(END_POINT_PATH + "/batch")
+                .contentType("application/json")
+                .content(requestBody));
+
+        // then
+        response.andExpect(status().isCreated())
+                .andDo(print());
+
+        verify(employeeService, times(1)).createEmployees(any());
+        verifyNoMoreInteractions(employeeService);
+    }
+
+    @Test
+    public void should_report_each_invalid_item_when_createEmployees_has_invalid_request_body() throws Exception {
+        // given
+        EmployeeData validEmployee = new EmployeeData
+                .EmployeeDataBuilder(null, "John", "Doe", "John.Doe@gmail.com")
+                .build();
+        EmployeeData invalidEmployee = new EmployeeData
+                .EmployeeDataBuilder(null, "Tom", "Cruise", "not-an-email")
+                .build();
+
+        String requestBody = objectMapper.writeValueAsString(List.of(validEmployee, invalidEmployee));
+
+        // when
+        ResultActions response = mockMvc.perform(post(END_POINT_PATH + "/batch")
+                .contentType("application/json")
+                .content(requestBody));
+
+        // then
+        response.andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].index").value(1))
+                .andExpect(jsonPath("$[0].messages[0]").value("email: User must have a valid email"))
+                .andDo(print());
+
+        verifyNoInteractions(employeeService);
+    }
+
     @Test
     public void should_return_employee_by_id_from_getEmployeeById() throws Exception {
         // given
         EmployeeData newEmployee = new EmployeeData
                 .EmployeeDataBuilder(1L, "John", "Doe", "John.Doe@gmail.com")
                 .setAge(25)
+                .setVersion(2L)
                 .build();
 
         when(employeeService.getEmployeeById(1L)).thenReturn(newEmployee);
@@ -95,6 +253,8 @@ public class EmployeeControllerTest {
                 .andExpect(jsonPath("$.lastName").value("Doe"))
                 .andExpect(jsonPath("$.email").value("John.Doe@gmail.com"))
                 .andExpect(jsonPath("$.age").value(25))
+                .andExpect(jsonPath("$.version").value(2L))
+                .andExpect(header().string("ETag", "\"2\""))
                 .andDo(print());
 
         verify(employeeService, times(1)).getEmployeeById(1L);
@@ -153,10 +313,263 @@ public class EmployeeControllerTest {
                 .andExpect(jsonPath("$[1].phone").value("12345678910"))
                 .andDo(print());
 
+        verify(employeeService, times(1)).getCollectionVersion();
         verify(employeeService, times(1)).getAllEmployees();
         verifyNoMoreInteractions(employeeService);
     }
 
+    @Test
+    public void should_pass_filters_to_findEmployees_from_getAllEmployees() throws Exception {
+        // given
+        EmployeeData newEmployee = new EmployeeData
+                .EmployeeDataBuilder(1L, "John", "Smith", "John.Smith@gmail.com")
+                .setAge(35)
+                .build();
+
+        EmployeeFilter filter = new EmployeeFilter("Smith", 30, 40, "gmail.com", List.of("-age", "firstName"));
+        when(employeeService.findEmployees(refEq(filter))).thenReturn(List.of(newEmployee));
+
+        // when
+        ResultActions response = mockMvc.perform(get(END_POINT_PATH
+                + "?lastName=Smith&minAge=30&maxAge=40&emailDomain=gmail.com&sort=-age,firstName")
+                .contentType("application/json"));
+
+        // then
+        response.andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id").value(1L))
+                .andDo(print());
+
+        verify(employeeService, times(1)).getCollectionVersion();
+        verify(employeeService, times(1)).findEmployees(refEq(filter));
+        verifyNoMoreInteractions(employeeService);
+    }
+
+    @Test
+    public void should_return_only_requested_fields_from_getEmployeeFields() throws Exception {
+        // given
+        when(employeeService.findEmployeeFields(refEq(new EmployeeFilter(null, null, null, "gmail.com", null)),
+                eq(List.of("id", "email"))))
+                .thenReturn(List.of(new EmployeeFields(List.of("id", "email"), new Object[]{1L, "John.Doe@gmail.com"})));
+
+        // when
+        ResultActions response = mockMvc.perform(get(END_POINT_PATH + "?fields=id,email&emailDomain=gmail.com")
+                .contentType("application/json"));
+
+        // then
+        response.andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id").value(1L))
+                .andExpect(jsonPath("$[0].email").value("John.Doe@gmail.com"))
+                .andExpect(jsonPath("$[0].firstName").doesNotExist())
+                .andDo(print());
+
+        verify(employeeService, times(1)).getCollectionVersion();
+        verify(employeeService, never()).getAllEmployees();
+    }
+
+    @Test
+    public void should_return_bad_request_from_getEmployeePage_when_filters_are_given() throws Exception {
+        // when
+        ResultActions response = mockMvc.perform(get(END_POINT_PATH + "?size=1&lastName=Smith")
+                .contentType("application/json"));
+
+        // then
+        response.andExpect(status().isBadRequest())
+                .andDo(print());
+
+        verifyNoInteractions(employeeService);
+    }
+
+    @Test
+    public void should_return_found_and_missing_employees_from_getEmployeesByIds() throws Exception {
+        // given
+        EmployeeData newEmployee = new EmployeeData
+                .EmployeeDataBuilder(2L, "Tom", "Cruise", "Tom.Cruise@gmail.com")
+                .build();
+
+        when(employeeService.getEmployeesByIds(List.of(2L, 3L)))
+                .thenReturn(new EmployeeLookup(List.of(newEmployee), List.of(3L)));
+
+        // when
+        ResultActions response = mockMvc.perform(post(END_POINT_PATH + "/lookup")
+                .contentType("application/json")
+                .content("[2, 3]"));
+
+        // then
+        response.andExpect(status().isOk())
+                .andExpect(jsonPath("$.employees", hasSize(1)))
+                .andExpect(jsonPath("$.employees[0].id").value(2L))
+                .andExpect(jsonPath("$.missingIds[0]").value(3L))
+                .andDo(print());
+
+        verify(employeeService, times(1)).getEmployeesByIds(List.of(2L, 3L));
+        verifyNoMoreInteractions(employeeService);
+    }
+
+    @Test
+    public void should_return_ranked_matches_from_searchEmployees() throws Exception {
+        // given
+        when(employeeService.searchEmployees("dan sm", 5))
+                .thenReturn(List.of(new EmployeeSearchResult(2L, "Dan", "Smith", "Dan@gmail.com", 6)));
+
+        // when
+        ResultActions response = mockMvc.perform(get(END_POINT_PATH + "/search")
+                .param("q", "dan sm")
+                .param("limit", "5"));
+
+        // then
+        response.andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id").value(2L))
+                .andExpect(jsonPath("$[0].lastName").value("Smith"))
+                .andExpect(jsonPath("$[0].score").value(6))
+                .andDo(print());
+
+        verify(employeeService, times(1)).searchEmployees("dan sm", 5);
+        verifyNoMoreInteractions(employeeService);
+    }
+
+    @Test
+    public void should_return_page_with_next_cursor_from_getEmployeePage() throws Exception {
+        // given
+        EmployeeData newEmployee = new EmployeeData
+                .EmployeeDataBuilder(1L, "John", "Doe", "John.Doe@gmail.com")
+                .build();
+
+        when(employeeService.getEmployeePage(0, 1))
+                .thenReturn(new EmployeePage(List.of(newEmployee), 0, 1, true, "MQ"));
+
+        // when
+        ResultActions response = mockMvc.perform(get(END_POINT_PATH + "?size=1")
+                .contentType("application/json"));
+
+        // then
+        response.andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(1)))
+                .andExpect(jsonPath("$.content[0].id").value(1L))
+                .andExpect(jsonPath("$.page").value(0))
+                .andExpect(jsonPath("$.size").value(1))
+                .andExpect(jsonPath("$.hasNext").value(true))
+                .andExpect(jsonPath("$.nextCursor").value("MQ"))
+                .andDo(print());
+
+        verify(employeeService, times(1)).getCollectionVersion();
+        verify(employeeService, times(1)).getEmployeePage(0, 1);
+        verifyNoMoreInteractions(employeeService);
+    }
+
+    @Test
+    public void should_seek_by_cursor_from_getEmployeePage() throws Exception {
+        // given
+        EmployeeData newEmployee = new EmployeeData
+                .EmployeeDataBuilder(2L, "Tom", "Cruise", "Tom.Cruise@gmail.com")
+                .build();
+
+        when(employeeService.getEmployeesAfter("MQ", 1))
+                .thenReturn(new EmployeePage(List.of(newEmployee), null, 1, false, null));
+
+        // when
+        ResultActions response = mockMvc.perform(get(END_POINT_PATH + "?size=1&cursor=MQ")
+                .contentType("application/json"));
+
+        // then
+        response.andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].id").value(2L))
+                .andExpect(jsonPath("$.hasNext").value(false))
+                .andDo(print());
+
+        verify(employeeService, times(1)).getCollectionVersion();
+        verify(employeeService, times(1)).getEmployeesAfter("MQ", 1);
+        verifyNoMoreInteractions(employeeService);
+    }
+
+    @Test
+    public void should_return_bad_request_from_getEmployeePage_when_page_and_cursor_are_both_given() throws Exception {
+        // when
+        ResultActions response = mockMvc.perform(get(END_POINT_PATH + "?size=1&page=2&cursor=MQ")
+                .contentType("application/json"));
+
+        // then
+        response.andExpect(status().isBadRequest())
+                .andDo(print());
+
+        verifyNoInteractions(employeeService);
+    }
+
+    @Test
+    public void should_write_one_employee_per_line_from_streamAllEmployees() throws Exception {
+        // given
+        EmployeeData newEmployee = new EmployeeData
+                .EmployeeDataBuilder(1L, "John", "Doe", "John.Doe@gmail.com")
+                .build();
+        EmployeeData newEmployee2 = new EmployeeData
+                .EmployeeDataBuilder(2L, "Tom", "Cruise", "Tom.Cruise@gmail.com")
+                .build();
+
+        doAnswer(invocation -> {
+            Consumer<EmployeeData> consumer = invocation.getArgument(0);
+            consumer.accept(newEmployee);
+            consumer.accept(newEmployee2);
+            return null;
+        }).when(employeeService).streamAllEmployees(any());
+
+        // when
+        MvcResult result = mockMvc.perform(get(END_POINT_PATH + "/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        ResultActions response = mockMvc.perform(asyncDispatch(result));
+
+        // then
+        response.andExpect(status().isOk())
+                .andExpect(content().contentType(EmployeeController.APPLICATION_NDJSON))
+                .andExpect(content().string(objectMapper.writeValueAsString(newEmployee) + "\n"
+                        + objectMapper.writeValueAsString(newEmployee2) + "\n"))
+                .andDo(print());
+
+        verify(employeeService, times(1)).streamAllEmployees(any());
+        verifyNoMoreInteractions(employeeService);
+    }
+
+    @Test
+    public void should_return_not_modified_from_getAllEmployees_without_loading_when_ETag_matches() throws Exception {
+        // given
+        when(employeeService.getCollectionVersion()).thenReturn("abc-7");
+
+        // when
+        ResultActions response = mockMvc.perform(get(END_POINT_PATH)
+                .header("If-None-Match", "W/\"list-abc-7\""));
+
+        // then
+        response.andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "W/\"list-abc-7\""))
+                .andExpect(content().string(""))
+                .andDo(print());
+
+        verify(employeeService, times(1)).getCollectionVersion();
+        verifyNoMoreInteractions(employeeService);
+    }
+
+    @Test
+    public void should_return_not_modified_from_getEmployeeById_when_ETag_matches() throws Exception {
+        // given
+        EmployeeData newEmployee = new EmployeeData
+                .EmployeeDataBuilder(1L, "John", "Doe", "John.Doe@gmail.com")
+                .setVersion(2L)
+                .build();
+
+        when(employeeService.getEmployeeById(1L)).thenReturn(newEmployee);
+
+        // when
+        ResultActions response = mockMvc.perform(get(END_POINT_PATH + "/1")
+                .header("If-None-Match", "\"2\""));
+
+        // then
+        response.andExpect(status().isNotModified())
+                .andExpect(content().string(""))
+                .andDo(print());
+    }
+
     @Test
     public void should_return_ResourceNotFoundException_from_updateEmployee_when_employee_does_not_exist() throws Exception {
         // given
@@ -217,6 +630,79 @@ public class EmployeeControllerTest {
         verifyNoMoreInteractions(employeeService);
     }
 
+    @Test
+    public void should_update_the_version_given_by_If_Match_and_return_new_ETag_from_updateEmployee() throws Exception {
+        // given
+        EmployeeData employeeToBeUpdated = new EmployeeData
+                .EmployeeDataBuilder(1L, "John", "Doe", "John.Doe@gmail.com")
+                .build();
+        EmployeeData expectedVersion = new EmployeeData
+                .EmployeeDataBuilder(1L, "John", "Doe", "John.Doe@gmail.com")
+                .setVersion(3L)
+                .build();
+        EmployeeData updatedEmployee = new EmployeeData
+                .EmployeeDataBuilder(1L, "John", "Doe", "John.Doe@gmail.com")
+                .setVersion(4L)
+                .build();
+
+        when(employeeService.updateEmployee(refEq(1L), refEq(expectedVersion))).thenReturn(updatedEmployee);
+
+        // when
+        ResultActions response = mockMvc.perform(put(END_POINT_PATH + "/1")
+                .contentType("application/json")
+                .header("If-Match", "\"3\"")
+                .content(objectMapper.writeValueAsString(employeeToBeUpdated)));
+
+        // then
+        response.andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"4\""))
+                .andExpect(jsonPath("$.version").value(4L))
+                .andDo(print());
+
+        verify(employeeService, times(1)).updateEmployee(refEq(1L), refEq(expectedVersion));
+        verifyNoMoreInteractions(employeeService);
+    }
+
+    @Test
+    public void should_return_precondition_failed_from_updateEmployee_when_If_Match_is_stale() throws Exception {
+        // given
+        EmployeeData employeeToBeUpdated = new EmployeeData
+                .EmployeeDataBuilder(1L, "John", "Doe", "John.Doe@gmail.com")
+                .build();
+
+        when(employeeService.updateEmployee(refEq(1L), any())).thenThrow(VersionConflictException.class);
+
+        // when
+        ResultActions response = mockMvc.perform(put(END_POINT_PATH + "/1")
+                .contentType("application/json")
+                .header("If-Match", "\"2\"")
+                .content(objectMapper.writeValueAsString(employeeToBeUpdated)));
+
+        // then
+        response.andExpect(status().isPreconditionFailed())
+                .andDo(print());
+    }
+
+    @Test
+    public void should_return_precondition_failed_from_updateEmployee_when_If_Match_is_not_a_version() throws Exception {
+        // given
+        EmployeeData employeeToBeUpdated = new EmployeeData
+                .EmployeeDataBuilder(1L, "John", "Doe", "John.Doe@gmail.com")
+                .build();
+
+        // when
+        ResultActions response = mockMvc.perform(put(END_POINT_PATH + "/1")
+                .contentType("application/json")
+                .header("If-Match", "W/\"2\"")
+                .content(objectMapper.writeValueAsString(employeeToBeUpdated)));
+
+        // then
+        response.andExpect(status().isPreconditionFailed())
+                .andDo(print());
+
+        verifyNoInteractions(employeeService);
+    }
+
     @Test
     public void should_return_ResourceNotFoundException_from_deleteEmployee_when_employee_does_not_exist() throws Exception {
         // given
@@ -251,4 +737,211 @@ public class EmployeeControllerTest {
         verify(employeeService, times(1)).deleteEmployee(refEq(userId));
         verifyNoMoreInteractions(employeeService);
     }
+
+    @Test
+    public void should_return_the_changes_after_since_from_getChanges() throws Exception {
+        // given
+        EmployeeData employee = new EmployeeData.EmployeeDataBuilder(1L, "John", "Doe", "John@gmail.com").build();
+        when(employeeService.getChangesSince(41L, 100)).thenReturn(List.of(
+                new EmployeeChangeData(42L, EmployeeChange.Type.UPDATED, 1L, employee, Instant.parse("2023-09-01T10:00:00Z")),
+                new EmployeeChangeData(43L, EmployeeChange.Type.DELETED, 1L, null, Instant.parse("2023-09-01T10:00:01Z"))));
+
+        // when
+        ResultActions response = mockMvc.perform(get(END_POINT_PATH + "/changes").param("since", "41")
+                .accept("application/json"));
+
+        // then
+        response.andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].seq").value(42))
+                .andExpect(jsonPath("$[0].type").value("UPDATED"))
+                .andExpect(jsonPath("$[0].employee.email").value("John@gmail.com"))
+                .andExpect(jsonPath("$[1].type").value("DELETED"))
+                .andDo(print());
+        verify(changeFeed, never()).subscribe(anyLong());
+    }
+
+    @Test
+    public void should_return_gone_from_getChanges_when_the_changes_have_been_purged() throws Exception {
+        // given
+        when(employeeService.getChangesSince(0L, 100)).thenThrow(ChangesExpiredException.class);
+
+        // when
+        ResultActions response = mockMvc.perform(get(END_POINT_PATH + "/changes").param("since", "0")
+                .accept("application/json"));
+
+        // then
+        response.andExpect(status().isGone())
+                .andDo(print());
+    }
+
+    @Test
+    public void should_follow_changes_from_Last_Event_ID_when_an_event_stream_reconnects() throws Exception {
+        // given
+        when(changeFeed.subscribe(57L)).thenReturn(new SseEmitter());
+
+        // when
+        ResultActions response = mockMvc.perform(get(END_POINT_PATH + "/changes").param("since", "0")
+                .header("Last-Event-ID", "57")
+                .accept("text/event-stream"));
+
+        // then
+        response.andExpect(request().asyncStarted());
+        verify(changeFeed).subscribe(57L);
+    }
+
+    @Test
+    public void should_return_the_aggregates_from_getStatistics() throws Exception {
+        // given
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        histogram.put("<20", 0L);
+        histogram.put("20-29", 2L);
+        when(employeeService.getStatistics()).thenReturn(new EmployeeStats(2, 24.5, histogram, Map.of("gmail.com", 2L)));
+
+        // when
+        ResultActions response = mockMvc.perform(get(END_POINT_PATH + "/stats"));
+
+        // then
+        response.andExpect(status().isOk())
+                .andExpect(jsonPath("$.headcount").value(2))
+                .andExpect(jsonPath("$.averageAge").value(24.5))
+                .andExpect(jsonPath("$.ageHistogram['20-29']").value(2))
+                .andExpect(jsonPath("$.topEmailDomains['gmail.com']").value(2))
+                .andDo(print());
+    }
+
+    @Test
+    public void should_create_employee_from_Smile_and_answer_in_CBOR_from_createEmployee() throws Exception {
+        // given
+        EmployeeData newEmployee = new EmployeeData
+                .EmployeeDataBuilder(null, "John", "Doe", "John.Doe@gmail.com")
+                .setAge(25)
+                .build();
+        EmployeeData savedEmployee = new EmployeeData
+                .EmployeeDataBuilder(7L, "John", "Doe", "John.Doe@gmail.com")
+                .setAge(25)
+                .setVersion(0L)
+                .build();
+
+        when(employeeService.createEmployee(any())).thenReturn(savedEmployee);
+
+        // when
+        MvcResult result = mockMvc.perform(post(END_POINT_PATH)
+                        .contentType(APPLICATION_SMILE_VALUE)
+                        .accept(APPLICATION_CBOR_VALUE)
+                        .content(objectMapper.copyWith(new SmileFactory()).writeValueAsBytes(newEmployee)))
+                .andExpect(status().isCreated())
+                .andExpect(content().contentType(APPLICATION_CBOR_VALUE))
+                .andReturn();
+
+        // then
+        EmployeeData responseEmployee = objectMapper.copyWith(new CBORFactory())
+                .readValue(result.getResponse().getContentAsByteArray(), EmployeeData.class);
+        assertThat(responseEmployee).usingRecursiveComparison().isEqualTo(savedEmployee);
+        verify(employeeService, times(1)).createEmployee(refEq(newEmployee));
+    }
+
+    @Test
+    public void should_return_all_employees_as_one_protobuf_message_from_getAllEmployees() throws Exception {
+        // given
+        EmployeeData newEmployee = new EmployeeData
+                .EmployeeDataBuilder(1L, "John", "Doe", "John.Doe@gmail.com")
+                .setAge(25)
+                .build();
+        EmployeeData newEmployee2 = new EmployeeData
+                .EmployeeDataBuilder(2L, "Tom", "Cruise", "Tom.Cruise@gmail.com")
+                .setPhone("12345678910")
+                .build();
+
+        when(employeeService.getAllEmployees()).thenReturn(Arrays.asList(newEmployee, newEmployee2));
+
+        // when
+        MvcResult result = mockMvc.perform(get(END_POINT_PATH)
+                        .accept(APPLICATION_PROTOBUF_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(APPLICATION_PROTOBUF_VALUE))
+                .andExpect(header().string("Vary", containsString("Accept")))
+                .andReturn();
+
+        // then
+        Map<String, List<Map<String, Object>>> message = new ProtobufMapper().readerFor(Map.class)
+                .with(protobufSchema().forType("EmployeeList"))
+                .readValue(result.getResponse().getContentAsByteArray());
+        List<Map<String, Object>> employees = message.get("employees");
+        assertThat(employees).hasSize(2);
+        assertThat(employees.get(0)).containsEntry("id", 1L).containsEntry("firstName", "John")
+                .containsEntry("age", 25).doesNotContainKey("phone");
+        assertThat(employees.get(1)).containsEntry("id", 2L).containsEntry("email", "Tom.Cruise@gmail.com")
+                .containsEntry("phone", "12345678910");
+    }
+
+    @Test
+    public void should_read_protobuf_request_body_through_the_builder_from_updateEmployee() throws Exception {
+        // given
+        EmployeeData employeeToBeUpdated = new EmployeeData
+                .EmployeeDataBuilder(1L, "John", "Doe", "John.Doe@gmail.com")
+                .setAge(25)
+                .setPhone("12345678910")
+                .setVersion(4L)
+                .build();
+
+        when(employeeService.updateEmployee(refEq(1L), refEq(employeeToBeUpdated))).thenReturn(employeeToBeUpdated);
+
+        Map<String, Object> message = Map.of("id", 1L, "firstName", "John", "lastName", "Doe",
+                "email", "John.Doe@gmail.com", "age", 25, "phone", "12345678910", "version", 4L);
+        ProtobufMapper protobufMapper = new ProtobufMapper();
+        byte[] requestBody = protobufMapper.writerFor(Map.class)
+                .with(protobufSchema().forType("Employee"))
+                .writeValueAsBytes(message);
+
+        // when
+        MvcResult result = mockMvc.perform(put(END_POINT_PATH + "/1")
+                        .contentType(APPLICATION_PROTOBUF_VALUE)
+                        .accept(APPLICATION_PROTOBUF_VALUE)
+                        .content(requestBody))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(APPLICATION_PROTOBUF_VALUE))
+                .andReturn();
+
+        // then
+        Map<String, Object> responseMessage = protobufMapper.readerFor(Map.class)
+                .with(protobufSchema().forType("Employee"))
+                .readValue(result.getResponse().getContentAsByteArray());
+        assertThat(responseMessage).isEqualTo(message);
+        verify(employeeService, times(1)).updateEmployee(refEq(1L), refEq(employeeToBeUpdated));
+    }
+
+    @Test
+    public void should_prefer_JSON_when_any_format_is_accepted_from_getEmployeeById() throws Exception {
+        // given
+        EmployeeData employee = new EmployeeData
+                .EmployeeDataBuilder(1L, "John", "Doe", "John.Doe@gmail.com")
+                .build();
+
+        when(employeeService.getEmployeeById(1L)).thenReturn(employee);
+
+        // when
+        ResultActions response = mockMvc.perform(get(END_POINT_PATH + "/1")
+                .accept("*/*"));
+
+        // then
+        response.andExpect(status().isOk())
+                .andExpect(content().contentType(TestUtil.APPLICATION_JSON))
+                .andExpect(jsonPath("$.firstName").value("John"));
+    }
+
+    @Test
+    public void should_reject_getEmployeePage_in_protobuf_instead_of_returning_the_full_list() throws Exception {
+        // when
+        ResultActions response = mockMvc.perform(get(END_POINT_PATH).param("size", "10")
+                .accept(APPLICATION_PROTOBUF_VALUE));
+
+        // then
+        response.andExpect(status().isBadRequest());
+        verifyNoInteractions(employeeService);
+    }
+
+    private static NativeProtobufSchema protobufSchema() throws IOException {
+        return ProtobufSchemaLoader.std.loadNative(EmployeeControllerTest.class.getResource("/employee.proto"));
+    }
 }
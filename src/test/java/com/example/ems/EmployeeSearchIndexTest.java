@@ -0,0 +1,104 @@
+package com.example.ems;
+
+import com.example.ems.dto.EmployeeData;
+import com.example.ems.dto.EmployeeSearchResult;
+import com.example.ems.search.EmployeeSearchIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EmployeeSearchIndexTest {
+
+    private final EmployeeSearchIndex index = new EmployeeSearchIndex();
+
+    @Test
+    public void search_should_match_name_and_email_prefixes_ignoring_case_and_accents() {
+        // given
+        index.put(employee(1L, "José", "Álvarez", "jose.alvarez@acme.com"));
+        index.put(employee(2L, "Dan", "Smith", "dan@gmail.com"));
+
+        // then
+        assertThat(ids(index.search("JOS", 10))).containsExactly(1L);
+        assertThat(ids(index.search("alva", 10))).containsExactly(1L);
+        assertThat(ids(index.search("dan@gm", 10))).containsExactly(2L);
+        assertThat(ids(index.search("acme", 10))).containsExactly(1L);
+        assertThat(index.search("mith", 10)).isEmpty();
+    }
+
+    @Test
+    public void search_should_require_every_word_to_match() {
+        // given
+        index.put(employee(1L, "Dan", "Smith", "dan@gmail.com"));
+        index.put(employee(2L, "Dan", "Brown", "dbrown@gmail.com"));
+
+        // then
+        assertThat(ids(index.search("dan sm", 10))).containsExactly(1L);
+        assertThat(ids(index.search("dan", 10))).containsExactlyInAnyOrder(1L, 2L);
+    }
+
+    @Test
+    public void search_should_rank_whole_name_matches_first_and_enforce_the_limit() {
+        // given
+        index.put(employee(1L, "Danielle", "Smith", "danielle@gmail.com"));
+        index.put(employee(2L, "Dan", "Smith", "ds@gmail.com"));
+        index.put(employee(3L, "Tom", "Dane", "tom@gmail.com"));
+        index.put(employee(4L, "Ann", "Lee", "dan.lee@gmail.com"));
+
+        // when
+        List<EmployeeSearchResult> results = index.search("dan", 3);
+
+        // then
+        // the exact first name beats the prefixes, a name prefix beats an email prefix, shorter names come first
+        assertThat(ids(results)).containsExactly(2L, 3L, 1L);
+        assertThat(results.get(0).getScore()).isGreaterThan(results.get(1).getScore());
+    }
+
+    @Test
+    public void search_should_only_count_employees_matching_every_word_towards_the_candidate_limit() {
+        // given
+        // "dan" is read first for "da" and holds more employees than the limit, none of them a Smith
+        for (long id = 1; id <= 1500; id++) {
+            index.put(employee(id, "Dan", "Brown", "dan" + id + "@gmail.com"));
+            index.put(employee(10000 + id, "Tom", "Smith", "tom" + id + "@gmail.com"));
+        }
+        index.put(employee(20001L, "Danz", "Smith", "danz1@gmail.com"));
+        index.put(employee(20002L, "Danz", "Smith", "danz2@gmail.com"));
+        index.put(employee(20003L, "Danz", "Smith", "danz3@gmail.com"));
+
+        // when
+        List<EmployeeSearchResult> results = index.search("da smith", 10);
+
+        // then
+        assertThat(ids(results)).containsExactlyInAnyOrder(20001L, 20002L, 20003L);
+    }
+
+    @Test
+    public void put_should_replace_and_remove_should_drop_what_was_indexed() {
+        // given
+        index.put(employee(1L, "Dan", "Smith", "dan@gmail.com"));
+
+        // when
+        index.put(employee(1L, "John", "Doe", "john@gmail.com"));
+
+        // then
+        assertThat(index.search("dan", 10)).isEmpty();
+        assertThat(ids(index.search("doe", 10))).containsExactly(1L);
+
+        // when
+        index.remove(1L);
+
+        // then
+        assertThat(index.search("doe", 10)).isEmpty();
+        assertThat(index.size()).isZero();
+    }
+
+    private static EmployeeData employee(Long id, String firstName, String lastName, String email) {
+        return new EmployeeData.EmployeeDataBuilder(id, firstName, lastName, email).build();
+    }
+
+    private static List<Long> ids(List<EmployeeSearchResult> results) {
+        return results.stream().map(EmployeeSearchResult::getId).toList();
+    }
+}
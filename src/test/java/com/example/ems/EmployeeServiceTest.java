@@ -1,20 +1,47 @@
 package com.example.ems;
 
+import com.example.ems.cache.EmployeeCache;
+import com.example.ems.changes.EmployeeChangeLog;
 import com.example.ems.dto.EmployeeData;
+import com.example.ems.dto.EmployeeFilter;
+import com.example.ems.dto.EmployeeLookup;
+import com.example.ems.dto.EmployeePage;
+import com.example.ems.dto.EmployeeSearchResult;
+import com.example.ems.dto.EmployeeStats;
 import com.example.ems.entity.Employee;
+import com.example.ems.exception.DuplicateEmailException;
+import com.example.ems.exception.InvalidRequestException;
+import com.example.ems.exception.ResourceNotFoundException;
+import com.example.ems.exception.VersionConflictException;
 import com.example.ems.repository.EmployeeRepository;
+import com.example.ems.search.EmployeeSearchIndex;
 import com.example.ems.service.impl.EmployeeServiceImpl;
+import com.example.ems.stats.EmployeeStatistics;
+import com.example.ems.uniqueness.EmailBloomFilter;
+import com.example.ems.writebehind.WriteBehindBuffer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -25,6 +52,28 @@ public class EmployeeServiceTest {
     @Mock
     EmployeeRepository repository;
 
+    @Mock
+    PlatformTransactionManager transactionManager;
+
+    @Mock
+    EmployeeChangeLog changeLog;
+
+    // without write-behind, getIfAvailable returns null
+    @Mock
+    ObjectProvider<WriteBehindBuffer> writeBehind;
+
+    @Spy
+    EmployeeCache cache = new EmployeeCache(100, Duration.ofMinutes(1), new SimpleMeterRegistry());
+
+    @Spy
+    EmployeeSearchIndex searchIndex = new EmployeeSearchIndex();
+
+    @Spy
+    EmployeeStatistics statistics = new EmployeeStatistics();
+
+    @Spy
+    EmailBloomFilter emailFilter = new EmailBloomFilter(1000, 0.01, new SimpleMeterRegistry());
+
     @Test
     public void getEmployeeById_should_return_correct_employee() {
         // given
@@ -47,7 +96,49 @@ public class EmployeeServiceTest {
     }
 
     @Test
-    public void getAllEmployees_should_return_all_employees() {
+    public void getEmployeeById_should_serve_repeated_lookups_from_cache_until_employee_is_updated() {
+        // given
+        Employee employee = Employee.builder()
+                .id(1L)
+                .firstName("Dan")
+                .lastName("Smith")
+                .email("Dan@gmail.com")
+                .build();
+
+        Employee updatedEmployee = Employee.builder()
+                .id(1L)
+                .firstName("John")
+                .lastName("Doe")
+                .email("John@gmail.com")
+                .build();
+
+        EmployeeData employeeData = new EmployeeData
+                .EmployeeDataBuilder(1L, "John", "Doe", "John@gmail.com")
+                .build();
+
+        // when
+        when(repository.findById(1L)).thenReturn(Optional.of(employee), Optional.of(updatedEmployee));
+        when(repository.updateEmployeeById(1L, "John", "Doe", "John@gmail.com", null, null)).thenReturn(1);
+        EmployeeData first = service.getEmployeeById(1L);
+        EmployeeData second = service.getEmployeeById(1L);
+
+        // then
+        assertThat(second).isSameAs(first);
+        verify(repository, times(1)).findById(1L);
+        assertThat(cache.stats().hitCount()).isEqualTo(1);
+        assertThat(cache.stats().missCount()).isEqualTo(1);
+
+        // when
+        service.updateEmployee(1L, employeeData);
+        EmployeeData afterUpdate = service.getEmployeeById(1L);
+
+        // then
+        assertThat(afterUpdate.getFirstName()).isEqualTo("John");
+        verify(repository, times(2)).findById(1L);
+    }
+
+    @Test
+    public void getEmployeesByIds_should_keep_request_order_and_report_missing_ids() {
         // given
         Employee employee1 = Employee.builder()
                 .id(1L)
@@ -55,15 +146,45 @@ public class EmployeeServiceTest {
                 .lastName("Smith")
                 .email("Dan@gmail.com")
                 .build();
-        Employee employee2 = Employee.builder()
-                .id(2L)
+        Employee employee3 = Employee.builder()
+                .id(3L)
                 .firstName("John")
                 .lastName("Doe")
                 .email("John@gmail.com")
                 .build();
 
         // when
-        when(repository.findAll()).thenReturn(List.of(employee1, employee2));
+        when(repository.findAllById(List.of(3L, 2L, 1L))).thenReturn(List.of(employee1, employee3));
+        EmployeeLookup lookup = service.getEmployeesByIds(List.of(3L, 2L, 1L, 3L));
+
+        // then
+        assertThat(lookup.getEmployees()).extracting(EmployeeData::getId).containsExactly(3L, 1L);
+        assertThat(lookup.getMissingIds()).containsExactly(2L);
+    }
+
+    @Test
+    public void getEmployeesByIds_should_query_in_bounded_chunks() {
+        // given
+        List<Long> employeeIds = LongStream.rangeClosed(1, 450).boxed().collect(Collectors.toList());
+
+        // when
+        when(repository.findAllById(anyList())).thenReturn(List.of());
+        EmployeeLookup lookup = service.getEmployeesByIds(employeeIds);
+
+        // then
+        verify(repository, times(3)).findAllById(anyList());
+        assertThat(lookup.getEmployees()).isEmpty();
+        assertThat(lookup.getMissingIds()).isEqualTo(employeeIds);
+    }
+
+    @Test
+    public void getAllEmployees_should_return_all_employees() {
+        // given
+        EmployeeData employee1 = new EmployeeData(1L, "Dan", "Smith", "Dan@gmail.com", null, null, 0L);
+        EmployeeData employee2 = new EmployeeData(2L, "John", "Doe", "John@gmail.com", null, null, 0L);
+
+        // when
+        when(repository.findAllAsEmployeeData(null, Sort.by("id"))).thenReturn(List.of(employee1, employee2));
         List<EmployeeData> employees = service.getAllEmployees();
 
         // then
@@ -75,6 +196,71 @@ public class EmployeeServiceTest {
         assertThat(employees.get(1).getFirstName()).isEqualTo("John");
         assertThat(employees.get(1).getLastName()).isEqualTo("Doe");
         assertThat(employees.get(1).getEmail()).isEqualTo("John@gmail.com");
+        verify(repository, never()).findAll();
+    }
+
+    @Test
+    public void findEmployees_should_reject_invalid_age_range_and_sort_field() {
+        assertThatThrownBy(() -> service.findEmployees(new EmployeeFilter(null, 40, 30, null, null)))
+                .isInstanceOf(InvalidRequestException.class);
+        assertThatThrownBy(() -> service.findEmployees(new EmployeeFilter(null, -1, null, null, null)))
+                .isInstanceOf(InvalidRequestException.class);
+        assertThatThrownBy(() -> service.findEmployees(new EmployeeFilter(null, null, null, null, List.of("-phone"))))
+                .isInstanceOf(InvalidRequestException.class);
+
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    public void findEmployeeFields_should_reject_unknown_and_missing_fields() {
+        EmployeeFilter noFilter = new EmployeeFilter(null, null, null, null, null);
+
+        assertThatThrownBy(() -> service.findEmployeeFields(noFilter, List.of("id", "salary")))
+                .isInstanceOf(InvalidRequestException.class);
+        assertThatThrownBy(() -> service.findEmployeeFields(noFilter, List.of()))
+                .isInstanceOf(InvalidRequestException.class);
+
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    public void getEmployeePage_should_return_cursor_to_next_page() {
+        // given
+        Employee employee = Employee.builder()
+                .id(7L)
+                .firstName("Dan")
+                .lastName("Smith")
+                .email("Dan@gmail.com")
+                .build();
+        PageRequest pageRequest = PageRequest.of(0, 1, Sort.by("id"));
+
+        // when
+        when(repository.findAllBy(pageRequest)).thenReturn(new SliceImpl<>(List.of(employee), pageRequest, true));
+        EmployeePage page = service.getEmployeePage(0, 1);
+
+        // then
+        assertThat(page.getContent()).size().isEqualTo(1);
+        assertThat(page.isHasNext()).isTrue();
+        assertThat(page.getNextCursor()).isNotNull();
+
+        // when
+        when(repository.findByIdGreaterThan(7L, pageRequest)).thenReturn(new SliceImpl<>(List.of(), pageRequest, false));
+        EmployeePage nextPage = service.getEmployeesAfter(page.getNextCursor(), 1);
+
+        // then
+        assertThat(nextPage.getContent()).isEmpty();
+        assertThat(nextPage.isHasNext()).isFalse();
+        assertThat(nextPage.getNextCursor()).isNull();
+    }
+
+    @Test
+    public void getEmployeesAfter_should_reject_invalid_cursor_and_page_size() {
+        assertThatThrownBy(() -> service.getEmployeesAfter("not-a-cursor!", 10))
+                .isInstanceOf(InvalidRequestException.class);
+        assertThatThrownBy(() -> service.getEmployeePage(0, EmployeeServiceImpl.MAX_PAGE_SIZE + 1))
+                .isInstanceOf(InvalidRequestException.class);
+
+        verifyNoInteractions(repository);
     }
 
     @Test
@@ -94,8 +280,7 @@ public class EmployeeServiceTest {
                 .build();
 
         // when
-        when(repository.findById(employee.getId())).thenReturn(Optional.of(employee));
-        when(repository.save(employee)).thenReturn(employee);
+        when(repository.updateEmployeeById(1L, "John", "Doe", "John@gmail.com", 25, null)).thenReturn(1);
         EmployeeData savedEmployee = service.updateEmployee(employee.getId(), employeeData);
 
         // then
@@ -103,6 +288,193 @@ public class EmployeeServiceTest {
         assertThat(savedEmployee.getFirstName()).isEqualTo("John");
         assertThat(savedEmployee.getLastName()).isEqualTo("Doe");
         assertThat(savedEmployee.getEmail()).isEqualTo("John@gmail.com");
+        // a single UPDATE, the employee is not loaded first
+        verify(repository, times(1)).updateEmployeeById(1L, "John", "Doe", "John@gmail.com", 25, null);
+        verifyNoMoreInteractions(repository);
+    }
+
+    @Test
+    public void createEmployee_should_not_query_for_an_email_the_filter_rules_out() {
+        // given
+        EmployeeData employeeData = new EmployeeData
+                .EmployeeDataBuilder(null, "John", "Doe", "John@gmail.com")
+                .build();
+        Employee saved = Employee.builder().id(1L).firstName("John").lastName("Doe").email("John@gmail.com").version(0L).build();
+
+        // when
+        when(repository.save(any(Employee.class))).thenReturn(saved);
+        service.createEmployee(employeeData);
+
+        // then
+        verify(repository, never()).existsByEmail(any());
+        assertThat(emailFilter.mightContain("john@GMAIL.com")).isTrue();
+    }
+
+    @Test
+    public void createEmployee_should_throw_DuplicateEmailException_before_inserting_a_taken_email() {
+        // given
+        emailFilter.put("John@gmail.com");
+        EmployeeData employeeData = new EmployeeData
+                .EmployeeDataBuilder(null, "John", "Doe", "John@gmail.com")
+                .build();
+
+        // when
+        when(repository.existsByEmail("John@gmail.com")).thenReturn(true);
+
+        // then
+        assertThatThrownBy(() -> service.createEmployee(employeeData))
+                .isInstanceOf(DuplicateEmailException.class);
+        verify(repository, never()).save(any());
+    }
+
+    @Test
+    public void updateEmployee_should_not_query_when_the_cached_employee_keeps_its_email() {
+        // given
+        emailFilter.put("John@gmail.com");
+        cache.get(1L, id -> new EmployeeData.EmployeeDataBuilder(1L, "John", "Doe", "John@gmail.com").build());
+        EmployeeData employeeData = new EmployeeData
+                .EmployeeDataBuilder(1L, "Johnny", "Doe", "John@gmail.com")
+                .build();
+
+        // when
+        when(repository.updateEmployeeById(1L, "Johnny", "Doe", "John@gmail.com", null, null)).thenReturn(1);
+        service.updateEmployee(1L, employeeData);
+
+        // then
+        verify(repository, never()).existsByEmailAndIdNot(any(), any());
+    }
+
+    @Test
+    public void createEmployees_should_reject_repeated_and_taken_emails_before_inserting_anything() {
+        // given
+        emailFilter.put("Dan@gmail.com");
+        List<EmployeeData> repeated = List.of(
+                new EmployeeData.EmployeeDataBuilder(null, "John", "Doe", "John@gmail.com").build(),
+                new EmployeeData.EmployeeDataBuilder(null, "Johnny", "Doe", "john@gmail.com").build());
+        List<EmployeeData> taken = List.of(
+                new EmployeeData.EmployeeDataBuilder(null, "John", "Doe", "John@gmail.com").build(),
+                new EmployeeData.EmployeeDataBuilder(null, "Dan", "Smith", "Dan@gmail.com").build());
+
+        // when
+        when(repository.findExistingEmails(List.of("Dan@gmail.com"))).thenReturn(List.of("Dan@gmail.com"));
+
+        // then
+        assertThatThrownBy(() -> service.createEmployees(repeated))
+                .isInstanceOf(DuplicateEmailException.class)
+                .hasMessageContaining("john@gmail.com");
+        assertThatThrownBy(() -> service.createEmployees(taken))
+                .isInstanceOf(DuplicateEmailException.class)
+                .hasMessageContaining("Dan@gmail.com");
+        verify(repository, never()).saveAll(anyList());
+    }
+
+    @Test
+    public void updateEmployee_should_throw_ResourceNotFoundException_when_no_row_was_updated() {
+        // given
+        EmployeeData employeeData = new EmployeeData
+                .EmployeeDataBuilder(123L, "John", "Doe", "John@gmail.com")
+                .build();
+
+        // when
+        when(repository.updateEmployeeById(123L, "John", "Doe", "John@gmail.com", null, null)).thenReturn(0);
+
+        // then
+        assertThatThrownBy(() -> service.updateEmployee(123L, employeeData))
+                .isInstanceOf(ResourceNotFoundException.class);
+        verifyNoMoreInteractions(repository);
+    }
+
+    @Test
+    public void updateEmployee_should_bump_the_expected_version() {
+        // given
+        EmployeeData employeeData = new EmployeeData
+                .EmployeeDataBuilder(1L, "John", "Doe", "John@gmail.com")
+                .setVersion(3L)
+                .build();
+
+        // when
+        when(repository.updateEmployeeByIdAndVersion(1L, 3L, "John", "Doe", "John@gmail.com", null, null)).thenReturn(1);
+        EmployeeData savedEmployee = service.updateEmployee(1L, employeeData);
+
+        // then
+        assertThat(savedEmployee.getVersion()).isEqualTo(4L);
+        verifyNoMoreInteractions(repository);
+    }
+
+    @Test
+    public void updateEmployee_should_throw_VersionConflictException_when_version_is_stale() {
+        // given
+        EmployeeData employeeData = new EmployeeData
+                .EmployeeDataBuilder(1L, "John", "Doe", "John@gmail.com")
+                .setVersion(3L)
+                .build();
+
+        // when
+        when(repository.updateEmployeeByIdAndVersion(1L, 3L, "John", "Doe", "John@gmail.com", null, null)).thenReturn(0);
+        when(repository.existsById(1L)).thenReturn(true);
+
+        // then
+        assertThatThrownBy(() -> service.updateEmployee(1L, employeeData))
+                .isInstanceOf(VersionConflictException.class);
+    }
+
+    @Test
+    public void updateEmployee_and_deleteEmployee_should_keep_search_index_up_to_date() {
+        // given
+        searchIndex.put(new EmployeeData.EmployeeDataBuilder(1L, "Dan", "Smith", "Dan@gmail.com").build());
+        EmployeeData employeeData = new EmployeeData
+                .EmployeeDataBuilder(1L, "John", "Doe", "John@gmail.com")
+                .build();
+
+        // when
+        when(repository.updateEmployeeById(1L, "John", "Doe", "John@gmail.com", null, null)).thenReturn(1);
+        when(repository.deleteEmployeeById(1L)).thenReturn(1);
+        service.updateEmployee(1L, employeeData);
+        List<Long> afterUpdate = service.searchEmployees("jo", 10).stream().map(EmployeeSearchResult::getId).toList();
+        List<Long> oldName = service.searchEmployees("dan", 10).stream().map(EmployeeSearchResult::getId).toList();
+        service.deleteEmployee(1L);
+
+        // then
+        assertThat(afterUpdate).containsExactly(1L);
+        assertThat(oldName).isEmpty();
+        assertThat(service.searchEmployees("jo", 10)).isEmpty();
+    }
+
+    @Test
+    public void getStatistics_should_follow_creates_updates_and_deletes_without_querying() {
+        // given
+        Employee saved = Employee.builder().id(1L).firstName("Dan").lastName("Smith").email("Dan@gmail.com").age(25).version(0L).build();
+        when(repository.save(any(Employee.class))).thenReturn(saved);
+        when(repository.updateEmployeeById(1L, "Dan", "Smith", "Dan@yahoo.com", 45, null)).thenReturn(1);
+        when(repository.deleteEmployeeById(1L)).thenReturn(1);
+
+        // when
+        service.createEmployee(new EmployeeData.EmployeeDataBuilder(null, "Dan", "Smith", "Dan@gmail.com").setAge(25).build());
+        EmployeeStats afterCreate = service.getStatistics();
+        service.updateEmployee(1L, new EmployeeData.EmployeeDataBuilder(1L, "Dan", "Smith", "Dan@yahoo.com").setAge(45).build());
+        EmployeeStats afterUpdate = service.getStatistics();
+        service.deleteEmployee(1L);
+        EmployeeStats afterDelete = service.getStatistics();
+
+        // then
+        assertThat(afterCreate.getHeadcount()).isEqualTo(1);
+        assertThat(afterCreate.getAgeHistogram()).containsEntry("20-29", 1L);
+        assertThat(afterUpdate.getAgeHistogram()).containsEntry("20-29", 0L).containsEntry("40-49", 1L);
+        assertThat(afterUpdate.getTopEmailDomains()).containsOnlyKeys("yahoo.com");
+        assertThat(afterDelete.getHeadcount()).isZero();
+        verify(repository, never()).findAll();
+    }
+
+    @Test
+    public void searchEmployees_should_reject_blank_query_and_out_of_range_limit() {
+        // then
+        assertThatThrownBy(() -> service.searchEmployees(" ", 10)).isInstanceOf(InvalidRequestException.class);
+        assertThatThrownBy(() -> service.searchEmployees("a".repeat(EmployeeServiceImpl.MAX_SEARCH_QUERY_LENGTH + 1), 10))
+                .isInstanceOf(InvalidRequestException.class);
+        assertThatThrownBy(() -> service.searchEmployees("dan", 0)).isInstanceOf(InvalidRequestException.class);
+        assertThatThrownBy(() -> service.searchEmployees("dan", EmployeeServiceImpl.MAX_SEARCH_LIMIT + 1))
+                .isInstanceOf(InvalidRequestException.class);
+        verifyNoInteractions(repository);
     }
 
     @Test
@@ -116,10 +488,26 @@ public class EmployeeServiceTest {
                 .build();
 
         // when
-        when(repository.findById(1L)).thenReturn(Optional.of(employee));
-        doNothing().when(repository).deleteById(1L);
+        when(repository.deleteEmployeeById(1L)).thenReturn(1);
+
+        String collectionVersion = service.getCollectionVersion();
 
         // then
         assertAll(() -> service.deleteEmployee(employee.getId()));
+        assertThat(service.getCollectionVersion()).isNotEqualTo(collectionVersion);
+        // a single DELETE, the employee is not loaded first
+        verify(repository, times(1)).deleteEmployeeById(1L);
+        verifyNoMoreInteractions(repository);
+    }
+
+    @Test
+    public void deleteEmployee_should_throw_ResourceNotFoundException_when_no_row_was_deleted() {
+        // when
+        when(repository.deleteEmployeeById(123L)).thenReturn(0);
+
+        // then
+        assertThatThrownBy(() -> service.deleteEmployee(123L))
+                .isInstanceOf(ResourceNotFoundException.class);
+        verifyNoMoreInteractions(repository);
     }
 }
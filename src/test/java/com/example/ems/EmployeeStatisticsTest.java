@@ -0,0 +1,84 @@
+package com.example.ems;
+
+import com.example.ems.dto.EmployeeData;
+import com.example.ems.dto.EmployeeStats;
+import com.example.ems.stats.EmployeeStatistics;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+public class EmployeeStatisticsTest {
+
+    @Test
+    public void should_count_employees_by_age_bucket_and_email_domain() {
+        // given
+        EmployeeStatistics statistics = new EmployeeStatistics();
+
+        // when
+        statistics.put(employee(1L, "Dan@gmail.com", 19));
+        statistics.put(employee(2L, "John@Gmail.com", 25));
+        statistics.put(employee(3L, "Tom@yahoo.com", 60));
+        statistics.put(employee(4L, "Ann@example.com", null));
+        EmployeeStats stats = statistics.get();
+
+        // then
+        assertThat(stats.getHeadcount()).isEqualTo(4);
+        assertThat(stats.getAverageAge()).isCloseTo(104 / 3.0, offset(0.001));
+        assertThat(stats.getAgeHistogram()).containsExactly(Map.entry("<20", 1L), Map.entry("20-29", 1L),
+                Map.entry("30-39", 0L), Map.entry("40-49", 0L), Map.entry("50-59", 0L), Map.entry("60+", 1L),
+                Map.entry("unknown", 1L));
+        assertThat(stats.getTopEmailDomains()).containsExactly(Map.entry("gmail.com", 2L), Map.entry("example.com", 1L),
+                Map.entry("yahoo.com", 1L));
+    }
+
+    @Test
+    public void should_move_updated_employees_and_forget_deleted_ones() {
+        // given
+        EmployeeStatistics statistics = new EmployeeStatistics();
+        statistics.put(employee(1L, "Dan@gmail.com", 19));
+        statistics.put(employee(2L, "John@gmail.com", 25));
+
+        // when
+        statistics.put(employee(1L, "Dan@yahoo.com", 45));
+        statistics.remove(2L);
+        statistics.remove(404L);
+        EmployeeStats stats = statistics.get();
+
+        // then
+        assertThat(stats.getHeadcount()).isEqualTo(1);
+        assertThat(stats.getAverageAge()).isEqualTo(45.0);
+        assertThat(stats.getAgeHistogram()).containsEntry("<20", 0L).containsEntry("20-29", 0L).containsEntry("40-49", 1L);
+        assertThat(stats.getTopEmailDomains()).containsExactly(Map.entry("yahoo.com", 1L));
+    }
+
+    @Test
+    public void should_keep_only_the_most_common_domains_and_reuse_the_stats_until_the_next_write() {
+        // given
+        EmployeeStatistics statistics = new EmployeeStatistics();
+        long id = 0;
+        for (int domain = 0; domain < 15; domain++) {
+            for (int i = 0; i <= domain; i++) {
+                statistics.put(employee(++id, "e" + id + "@domain" + domain + ".com", 30));
+            }
+        }
+
+        // when
+        EmployeeStats stats = statistics.get();
+
+        // then
+        assertThat(stats.getTopEmailDomains()).hasSize(10);
+        assertThat(List.copyOf(stats.getTopEmailDomains().keySet()).subList(0, 2)).containsExactly("domain14.com", "domain13.com");
+        assertThat(stats.getTopEmailDomains()).doesNotContainKey("domain4.com");
+        assertThat(statistics.get()).isSameAs(stats);
+        statistics.remove(1L);
+        assertThat(statistics.get()).isNotSameAs(stats);
+    }
+
+    private static EmployeeData employee(Long id, String email, Integer age) {
+        return new EmployeeData.EmployeeDataBuilder(id, "Dan", "Smith", email).setAge(age).build();
+    }
+}
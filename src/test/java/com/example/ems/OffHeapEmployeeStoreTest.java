@@ -0,0 +1,221 @@
+package com.example.ems;
+
+import com.example.ems.dto.EmployeeData;
+import com.example.ems.exception.DuplicateEmailException;
+import com.example.ems.exception.ResourceNotFoundException;
+import com.example.ems.exception.VersionConflictException;
+import com.example.ems.offheap.OffHeapEmployeeStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class OffHeapEmployeeStoreTest {
+
+    @Test
+    public void should_read_back_what_was_stored_with_the_next_id_at_version_0() {
+        // given
+        OffHeapEmployeeStore store = new OffHeapEmployeeStore(16);
+
+        // when
+        EmployeeData john = store.insert(new EmployeeData.EmployeeDataBuilder(99L, "John", "Doe", "John@gmail.com")
+                .setAge(30)
+                .setPhone("012345678910")
+                .setVersion(7L)
+                .build());
+        EmployeeData tom = store.insert(new EmployeeData.EmployeeDataBuilder(null, "Tom", "Doe", "Tom@gmail.com").build());
+
+        // then
+        assertThat(john.getId()).isEqualTo(1L);
+        assertThat(john.getVersion()).isEqualTo(0L);
+        assertThat(tom.getId()).isEqualTo(2L);
+        EmployeeData stored = store.get(1L);
+        assertThat(stored).usingRecursiveComparison().isEqualTo(john);
+        assertThat(stored.getAge()).isEqualTo(30);
+        assertThat(stored.getPhone()).isEqualTo("012345678910");
+        assertThat(store.get(2L).getAge()).isNull();
+        assertThat(store.get(2L).getPhone()).isNull();
+        assertThat(store.get(3L)).isNull();
+        // both are called Doe
+        assertThat(store.stringCount()).isEqualTo(6);
+    }
+
+    @Test
+    public void should_keep_emails_unique_in_any_case() {
+        // given
+        OffHeapEmployeeStore store = new OffHeapEmployeeStore(16);
+        store.insert(employee("John@gmail.com"));
+        EmployeeData tom = store.insert(employee("Tom@gmail.com"));
+
+        // when, then
+        assertThatThrownBy(() -> store.insert(employee("john@GMAIL.com"))).isInstanceOf(DuplicateEmailException.class);
+        assertThatThrownBy(() -> store.update(tom.getId(), employee("JOHN@gmail.com")))
+                .isInstanceOf(DuplicateEmailException.class);
+        assertThatThrownBy(() -> store.insertAll(List.of(employee("Ann@gmail.com"), employee("ann@gmail.com"))))
+                .isInstanceOf(DuplicateEmailException.class)
+                .hasMessageContaining("more than once");
+        assertThatThrownBy(() -> store.insertAll(List.of(employee("Ann@gmail.com"), employee("tom@gmail.com"))))
+                .isInstanceOf(DuplicateEmailException.class)
+                .hasMessageContaining("already in use");
+        // a rejected batch stores none of its employees
+        assertThat(store.size()).isEqualTo(2);
+
+        // an employee may change the case of its own email, and a deleted employee's email is free again
+        assertThat(store.update(tom.getId(), employee("TOM@gmail.com")).getEmail()).isEqualTo("TOM@gmail.com");
+        store.delete(1L);
+        assertThat(store.insert(employee("john@gmail.com")).getId()).isEqualTo(3L);
+    }
+
+    @Test
+    public void should_only_update_the_expected_version() {
+        // given
+        OffHeapEmployeeStore store = new OffHeapEmployeeStore(16);
+        EmployeeData john = store.insert(employee("John@gmail.com"));
+
+        // when
+        EmployeeData updated = store.update(john.getId(), withVersion("John.Doe@gmail.com", 0L));
+        EmployeeData overwritten = store.update(john.getId(), withVersion("John@gmail.com", null));
+
+        // then
+        assertThat(updated.getVersion()).isEqualTo(1L);
+        assertThat(overwritten.getVersion()).isEqualTo(2L);
+        assertThat(store.get(john.getId()).getEmail()).isEqualTo("John@gmail.com");
+        assertThatThrownBy(() -> store.update(john.getId(), withVersion("John@gmail.com", 1L)))
+                .isInstanceOf(VersionConflictException.class);
+        assertThatThrownBy(() -> store.update(42L, employee("John@gmail.com")))
+                .isInstanceOf(ResourceNotFoundException.class);
+        assertThatThrownBy(() -> store.delete(42L)).isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    @Test
+    public void should_page_in_id_order_past_deleted_employees() {
+        // given
+        OffHeapEmployeeStore store = new OffHeapEmployeeStore(16);
+        for (int i = 0; i < 10; i++) {
+            store.insert(employee("employee" + i + "@gmail.com"));
+        }
+        store.delete(3L);
+        store.delete(4L);
+        // takes the slot of a deleted employee, but comes last in id order
+        store.insert(employee("new@gmail.com"));
+
+        // when
+        List<EmployeeData> afterCursor = store.findAfter(2L, 3);
+        List<EmployeeData> secondPage = store.findFrom(3, 3);
+        List<EmployeeData> lastPage = store.findFrom(9, 3);
+
+        // then
+        assertThat(afterCursor).extracting(EmployeeData::getId).containsExactly(5L, 6L, 7L);
+        assertThat(secondPage).extracting(EmployeeData::getId).containsExactly(6L, 7L, 8L);
+        assertThat(lastPage).isEmpty();
+        assertThat(store.findAfter(0, Integer.MAX_VALUE)).extracting(EmployeeData::getId)
+                .containsExactly(1L, 2L, 5L, 6L, 7L, 8L, 9L, 10L, 11L);
+    }
+
+    @Test
+    public void should_find_every_employee_after_random_inserts_and_deletes() {
+        // given
+        OffHeapEmployeeStore store = new OffHeapEmployeeStore(16);
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        // when
+        for (int i = 0; i < 20_000; i++) {
+            if (expected.isEmpty() || random.nextInt(3) > 0) {
+                EmployeeData stored = store.insert(employee("employee" + i + "@gmail.com"));
+                expected.put(stored.getId(), stored.getEmail());
+            } else {
+                List<Long> ids = new ArrayList<>(expected.keySet());
+                Long id = ids.get(random.nextInt(ids.size()));
+                store.delete(id);
+                expected.remove(id);
+            }
+        }
+
+        // then
+        assertThat(store.size()).isEqualTo(expected.size());
+        for (long id = 1; id <= 20_000; id++) {
+            EmployeeData stored = store.get(id);
+            assertThat(stored != null ? stored.getEmail() : null).isEqualTo(expected.get(id));
+        }
+        for (String email : expected.values()) {
+            assertThatThrownBy(() -> store.insert(employee(email.toUpperCase()))).isInstanceOf(DuplicateEmailException.class);
+        }
+    }
+
+    @Test
+    public void should_reclaim_the_strings_an_employee_no_longer_uses() {
+        // given
+        OffHeapEmployeeStore store = new OffHeapEmployeeStore(16);
+        EmployeeData john = store.insert(employee("John@gmail.com"));
+
+        // when
+        for (int i = 0; i < 200_000; i++) {
+            store.update(john.getId(), new EmployeeData.EmployeeDataBuilder(null, "John", "Doe", "John@gmail.com")
+                    .setPhone(String.format("0123%08d", i))
+                    .build());
+        }
+
+        // then
+        // about 3 MB of phones were written, compaction keeps the pool to the strings still in use
+        assertThat(store.stringCount()).isEqualTo(4);
+        assertThat(store.offHeapBytes()).isLessThan(4 * 1024 * 1024);
+        assertThat(store.get(john.getId()).getPhone()).isEqualTo("012300199999");
+    }
+
+    @Test
+    public void should_apply_concurrent_versioned_updates_one_at_a_time() throws Exception {
+        // given
+        OffHeapEmployeeStore store = new OffHeapEmployeeStore(16);
+        EmployeeData john = store.insert(employee("John@gmail.com"));
+        int threads = 8;
+        int updatesPerThread = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        // when
+        // every thread reads the version and updates at it, retrying when another thread got there first
+        List<Future<Integer>> conflicts = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            conflicts.add(executor.submit(() -> {
+                int conflicted = 0;
+                for (int i = 0; i < updatesPerThread; ) {
+                    long version = store.get(john.getId()).getVersion();
+                    try {
+                        store.update(john.getId(), withVersion("John@gmail.com", version));
+                        i++;
+                    } catch (VersionConflictException e) {
+                        conflicted++;
+                    }
+                }
+                return conflicted;
+            }));
+        }
+        for (Future<Integer> future : conflicts) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // then
+        assertThat(store.get(john.getId()).getVersion()).isEqualTo((long) threads * updatesPerThread);
+    }
+
+    private static EmployeeData employee(String email) {
+        return withVersion(email, null);
+    }
+
+    private static EmployeeData withVersion(String email, Long version) {
+        return new EmployeeData.EmployeeDataBuilder(null, "John", "Doe", email)
+                .setAge(30)
+                .setVersion(version)
+                .build();
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.ems;
+
+import com.example.ems.cache.SingleFlight;
+import com.example.ems.exception.ResourceNotFoundException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SingleFlightTest {
+
+    private static final int CALLERS = 8;
+
+    @Test
+    public void concurrent_calls_for_the_same_key_should_share_one_load() throws Exception {
+        // given
+        SingleFlight<Long, String> singleFlight = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        AtomicInteger published = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+
+        // when
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(executor.submit(() -> singleFlight.execute(1L, () -> {
+                loads.incrementAndGet();
+                await(release);
+                return "Dan";
+            }, value -> published.incrementAndGet())));
+        }
+        while (singleFlight.coalesced() < CALLERS - 1) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+
+        // then
+        for (Future<String> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("Dan");
+        }
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(published.get()).isEqualTo(1);
+        assertThat(singleFlight.executions()).isEqualTo(1);
+        assertThat(singleFlight.coalesced()).isEqualTo(CALLERS - 1);
+        executor.shutdown();
+    }
+
+    @Test
+    public void joined_callers_should_get_the_exception_of_the_shared_load() throws Exception {
+        // given
+        SingleFlight<Long, String> singleFlight = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        // when
+        Future<String> leader = executor.submit(() -> singleFlight.execute(1L, () -> {
+            await(release);
+            throw new ResourceNotFoundException("Employee does not exist with the given id: 1");
+        }, value -> { }));
+        while (singleFlight.executions() < 1) {
+            Thread.onSpinWait();
+        }
+        Future<String> follower = executor.submit(() -> singleFlight.execute(1L, () -> "unexpected", value -> { }));
+        while (singleFlight.coalesced() < 1) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+
+        // then
+        assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(ResourceNotFoundException.class);
+        assertThatThrownBy(() -> follower.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(ResourceNotFoundException.class);
+        executor.shutdown();
+    }
+
+    @Test
+    public void forgotten_load_should_not_be_published() {
+        // given
+        SingleFlight<Long, String> singleFlight = new SingleFlight<>();
+        AtomicReference<String> published = new AtomicReference<>();
+
+        // when
+        String value = singleFlight.execute(1L, () -> {
+            // a write invalidates the key while its old value is being loaded
+            singleFlight.forget(1L);
+            return "stale";
+        }, published::set);
+
+        // then
+        assertThat(value).isEqualTo("stale");
+        assertThat(published.get()).isNull();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
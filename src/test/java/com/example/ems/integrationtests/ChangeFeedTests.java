@@ -0,0 +1,197 @@
+package com.example.ems.integrationtests;
+
+import com.example.ems.changes.EmployeeChangeLog;
+import com.example.ems.dto.EmployeeData;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doThrow;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+
+// A short heartbeat, a stream that has nothing to send yet only answers with the first heartbeat
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "ems.changes.heartbeat-interval=1s")
+public class ChangeFeedTests {
+
+    @LocalServerPort
+    private int port;
+
+    @SpyBean
+    private EmployeeChangeLog changeLog;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    @Test
+    @Sql(statements = "DELETE FROM EMPLOYEES", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void should_list_creates_updates_and_deletes_in_order_after_since() {
+        // given
+        long since = lastSeq();
+        Map<?, ?> created = restTemplate.postForObject(url(""),
+                new EmployeeData.EmployeeDataBuilder(null, "John", "Doe", "John@gmail.com").build(), Map.class);
+        long id = ((Number) created.get("id")).longValue();
+        restTemplate.put(url("/" + id), new EmployeeData.EmployeeDataBuilder(id, "Johnny", "Doe", "John@gmail.com").build());
+        restTemplate.delete(url("/" + id));
+
+        // when
+        List<Map<String, Object>> changes = changesSince(since, 100);
+
+        // then
+        assertEquals(List.of("CREATED", "UPDATED", "DELETED"), changes.stream().map(change -> change.get("type")).toList());
+        assertEquals(since + 1, ((Number) changes.get(0).get("seq")).longValue());
+        assertEquals(since + 3, ((Number) changes.get(2).get("seq")).longValue());
+        assertEquals("Johnny", ((Map<?, ?>) changes.get(1).get("employee")).get("firstName"));
+        assertNull(changes.get(2).get("employee"));
+        assertEquals(1, changesSince(since + 2, 100).size());
+        assertEquals(1, changesSince(since, 1).size());
+    }
+
+    @Test
+    public void should_reject_a_negative_since() {
+        HttpClientErrorException badRequest = assertThrows(HttpClientErrorException.class,
+                () -> restTemplate.getForObject(url("/changes?since=-1"), String.class));
+        assertEquals(BAD_REQUEST, badRequest.getStatusCode());
+    }
+
+    @Test
+    @Sql(statements = "DELETE FROM EMPLOYEES", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void should_stream_changes_as_server_sent_events_as_they_commit() throws Exception {
+        // given
+        long since = lastSeq();
+        restTemplate.postForObject(url(""), new EmployeeData.EmployeeDataBuilder(null, "John", "Doe", "John@gmail.com").build(),
+                Map.class);
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url("/changes?since=" + since)))
+                .header("Accept", "text/event-stream")
+                .build();
+        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+
+        // when
+        // the first change was in the log already, the second one commits while the stream is open
+        CompletableFuture<List<String>> events = CompletableFuture.supplyAsync(() -> readEvents(response, 2));
+        restTemplate.postForObject(url(""), new EmployeeData.EmployeeDataBuilder(null, "Tom", "Cruise", "Tom@gmail.com").build(),
+                Map.class);
+
+        // then
+        List<String> lines = events.get(10, TimeUnit.SECONDS);
+        response.body().close();
+        assertEquals("id:" + (since + 1), lines.get(0));
+        assertEquals("event:CREATED", lines.get(1));
+        assertTrue(lines.get(2).contains("John@gmail.com"));
+        assertEquals("id:" + (since + 2), lines.get(3));
+        assertTrue(lines.get(5).contains("Tom@gmail.com"));
+    }
+
+    @Test
+    @Sql(statements = "DELETE FROM EMPLOYEES", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void should_expire_a_subscriber_whose_changes_were_purged_and_keep_streaming_to_the_others() throws Exception {
+        // given
+        long since = lastSeq();
+        restTemplate.postForObject(url(""), new EmployeeData.EmployeeDataBuilder(null, "John", "Doe", "John@gmail.com").build(),
+                Map.class);
+        // reads fail while the lagging subscriber connects and two more changes commit, so it stays at since
+        doThrow(new DataAccessResourceFailureException("database unavailable")).when(changeLog).findSince(anyLong(), anyInt());
+        HttpClient client = HttpClient.newHttpClient();
+        HttpResponse<InputStream> lagging = client.send(subscribe(since), HttpResponse.BodyHandlers.ofInputStream());
+        restTemplate.postForObject(url(""), new EmployeeData.EmployeeDataBuilder(null, "Tom", "Cruise", "Tom@gmail.com").build(),
+                Map.class);
+        restTemplate.postForObject(url(""), new EmployeeData.EmployeeDataBuilder(null, "Ann", "Lee", "Ann@gmail.com").build(),
+                Map.class);
+        jdbcTemplate.update("UPDATE EMPLOYEE_CHANGES SET CHANGED_AT = ? WHERE SEQ <= ?",
+                Timestamp.from(Instant.now().minus(Duration.ofDays(30))), since + 3);
+        changeLog.deleteExpiredChanges();
+        doCallRealMethod().when(changeLog).findSince(anyLong(), anyInt());
+
+        // when
+        HttpResponse<InputStream> current = client.send(subscribe(since + 2), HttpResponse.BodyHandlers.ofInputStream());
+        CompletableFuture<List<String>> currentEvents = CompletableFuture.supplyAsync(() -> readEvents(current, 2));
+        restTemplate.postForObject(url(""), new EmployeeData.EmployeeDataBuilder(null, "Dan", "Brown", "Dan@gmail.com").build(),
+                Map.class);
+
+        // then
+        List<String> laggingLines = CompletableFuture.supplyAsync(() -> readEvents(lagging, Integer.MAX_VALUE))
+                .get(10, TimeUnit.SECONDS);
+        assertEquals("event:EXPIRED", laggingLines.get(0));
+        assertTrue(laggingLines.get(1).contains("purged"));
+        assertEquals(2, laggingLines.size());
+        List<String> currentLines = currentEvents.get(10, TimeUnit.SECONDS);
+        current.body().close();
+        assertEquals("id:" + (since + 3), currentLines.get(0));
+        assertTrue(currentLines.get(2).contains("Ann@gmail.com"));
+        assertEquals("id:" + (since + 4), currentLines.get(3));
+        assertTrue(currentLines.get(5).contains("Dan@gmail.com"));
+    }
+
+    // read from the table, the log itself refuses since=0 once a test purged it
+    private long lastSeq() {
+        Long seq = jdbcTemplate.queryForObject("SELECT MAX(SEQ) FROM EMPLOYEE_CHANGES", Long.class);
+        return seq == null ? 0 : seq;
+    }
+
+    private HttpRequest subscribe(long since) {
+        return HttpRequest.newBuilder(URI.create(url("/changes?since=" + since)))
+                .header("Accept", "text/event-stream")
+                .build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> changesSince(long since, int limit) {
+        return restTemplate.getForObject(url("/changes?since=" + since + "&limit=" + limit), List.class);
+    }
+
+    // the id, event and data lines of the first count events (or all of them until the stream ends), heartbeat comments
+    // and blank lines are skipped
+    private static List<String> readEvents(HttpResponse<InputStream> response, int count) {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+            String line;
+            while (lines.size() / 3 < count && (line = reader.readLine()) != null) {
+                if (!line.isEmpty() && !line.startsWith(":")) {
+                    lines.add(line);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return lines;
+    }
+
+    private String url(String path) {
+        return "http://localhost:" + port + "/api/employees" + path;
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.ems.integrationtests;
+
+import com.example.ems.dto.EmployeeData;
+import net.ttddyy.dsproxy.QueryType;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.http.HttpStatus.CREATED;
+import static org.springframework.http.HttpStatus.UNPROCESSABLE_ENTITY;
+
+// The application with ems.idempotency.store=database, keys go to the idempotency_keys table
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"ems.idempotency.store=database", "spring.jpa.show-sql=false"})
+@Import(SqlStatementRecorder.class)
+public class IdempotencyTests {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRepository repository;
+
+    @Autowired
+    private SqlStatementRecorder sqlStatements;
+
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    @Test
+    @Sql(statements = {"DELETE FROM EMPLOYEES", "DELETE FROM IDEMPOTENCY_KEYS"},
+            executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void should_replay_from_the_idempotency_keys_table_without_touching_employees() {
+        // given
+        ResponseEntity<String> created = restTemplate.postForEntity(url(), request("create-john", "John"), String.class);
+
+        // when
+        sqlStatements.reset();
+        ResponseEntity<String> replayed = restTemplate.postForEntity(url(), request("create-john", "John"), String.class);
+
+        // then
+        // the SELECT by key on idempotency_keys is all a replay costs
+        sqlStatements.assertBudget("POST /api/employees replay", Map.of(QueryType.SELECT, 1));
+        assertEquals(CREATED, replayed.getStatusCode());
+        assertEquals("true", replayed.getHeaders().getFirst("Idempotent-Replayed"));
+        assertEquals(created.getBody(), replayed.getBody());
+        assertEquals(1, repository.findAll().size());
+
+        // when
+        HttpClientErrorException otherBody = assertThrows(HttpClientErrorException.class,
+                () -> restTemplate.postForEntity(url(), request("create-john", "Jane"), String.class));
+
+        // then
+        assertEquals(UNPROCESSABLE_ENTITY, otherBody.getStatusCode());
+        assertEquals(1, repository.findAll().size());
+    }
+
+    @Test
+    @Sql(statements = {
+            "INSERT INTO IDEMPOTENCY_KEYS (idempotency_key, request_hash, created_at) VALUES ('abandoned', 'lost', DATEADD('MINUTE', -5, CURRENT_TIMESTAMP))",
+            "INSERT INTO IDEMPOTENCY_KEYS (idempotency_key, request_hash, created_at) VALUES ('running', 'busy', CURRENT_TIMESTAMP)"
+    }, executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(statements = {"DELETE FROM EMPLOYEES", "DELETE FROM IDEMPOTENCY_KEYS"},
+            executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void should_let_a_retry_take_over_a_claim_older_than_the_lease() {
+        // given
+        // both keys were claimed by requests that never completed, the first one longer ago than the lease
+
+        // when
+        ResponseEntity<String> created = restTemplate.postForEntity(url(), request("abandoned", "John"), String.class);
+        ResponseEntity<String> replayed = restTemplate.postForEntity(url(), request("abandoned", "John"), String.class);
+        HttpClientErrorException held = assertThrows(HttpClientErrorException.class,
+                () -> restTemplate.postForEntity(url(), request("running", "Jane"), String.class));
+
+        // then
+        assertEquals(CREATED, created.getStatusCode());
+        assertEquals("true", replayed.getHeaders().getFirst("Idempotent-Replayed"));
+        // the claim within the lease still holds the key, so its fingerprint is checked
+        assertEquals(UNPROCESSABLE_ENTITY, held.getStatusCode());
+        assertEquals(1, repository.findAll().size());
+    }
+
+    private static HttpEntity<EmployeeData> request(String idempotencyKey, String firstName) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Idempotency-Key", idempotencyKey);
+        return new HttpEntity<>(new EmployeeData.EmployeeDataBuilder(null, firstName, "Doe", firstName + "@gmail.com").build(),
+                headers);
+    }
+
+    private String url() {
+        return "http://localhost:" + port + "/api/employees";
+    }
+}
@@ -1,30 +1,55 @@
 package com.example.ems.integrationtests;
 
+import com.example.ems.cache.EmployeeCache;
 import com.example.ems.dto.EmployeeData;
 import com.example.ems.entity.Employee;
+import com.example.ems.exception.DuplicateEmailException;
+import com.example.ems.service.EmployeeService;
+import com.example.ems.uniqueness.EmailBloomFilter;
+import net.ttddyy.dsproxy.QueryType;
 import org.json.JSONException;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.skyscreamer.jsonassert.Customization;
 import org.skyscreamer.jsonassert.JSONAssert;
+import org.skyscreamer.jsonassert.JSONCompareMode;
+import org.skyscreamer.jsonassert.comparator.CustomComparator;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
 import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.jdbc.Sql;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static com.example.ems.TestUtil.APPLICATION_JSON;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.http.HttpStatus.CONFLICT;
 import static org.springframework.http.HttpStatus.CREATED;
+import static org.springframework.http.HttpStatus.NOT_MODIFIED;
 import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.HttpStatus.PRECONDITION_FAILED;
 
 // This annotation loads the application context, so you can bootstrap the web environment and port here
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+// Spring Boot tests don't export metrics unless asked to, we need /actuator/prometheus
+@AutoConfigureObservability(tracing = false)
+// every statement the app runs is counted by type, so tests can hold endpoints to a statement budget
+@Import(SqlStatementRecorder.class)
 public class IntegrationTests {
 
     // This annotation helps us get the random port where our application starts when the tests run
@@ -40,6 +65,20 @@ public class IntegrationTests {
     @Autowired
     private TestRepository repository;
 
+    @Autowired
+    private SqlStatementRecorder sqlStatements;
+
+    // @Sql changes the table behind the cache's back, so tests that read through it start from an empty cache
+    @Autowired
+    private EmployeeCache employeeCache;
+
+    // the filter never forgets an email, so emails written by earlier tests would cost later ones a uniqueness query
+    @Autowired
+    private EmailBloomFilter emailFilter;
+
+    @Autowired
+    private EmployeeService employeeService;
+
     // This JUnit annotation means we will run this ONCE init before all test cases since we need it as setup
     @BeforeAll
     public static void init() {
@@ -50,12 +89,14 @@ public class IntegrationTests {
     @BeforeEach
     public void setUp() {
         baseUrl = baseUrl.concat(":").concat(port + "").concat("/api/employees");
+        emailFilter.clear();
     }
 
     @Test
+    @Sql(statements = "DELETE FROM EMPLOYEES", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
     public void should_return_EmployeeData_and_created_status_when_createEmployee() throws JSONException {
         // given
-        String expectedResponse = "{\"id\":1,\"firstName\":\"John\",\"lastName\":\"Doe\",\"email\":\"John@gmail.com\",\"age\":20,\"phone\":null}";
+        String expectedResponse = "{\"id\":1,\"firstName\":\"John\",\"lastName\":\"Doe\",\"email\":\"John@gmail.com\",\"age\":20,\"phone\":null,\"version\":0}";
         EmployeeData employee = new EmployeeData.EmployeeDataBuilder(1L, "John", "Doe", "John@gmail.com")
                 .setAge(20)
                 .build();
@@ -68,7 +109,9 @@ public class IntegrationTests {
         assertEquals(CREATED, response.getStatusCode());
         assertEquals(APPLICATION_JSON, response.getHeaders().getContentType());
         assertEquals(1, repository.findAll().size());
-        JSONAssert.assertEquals(expectedResponse, response.getBody(), true);
+        // ids come from a pooled sequence shared by every test, so only check that the id is the one that was stored
+        JSONAssert.assertEquals(expectedResponse, response.getBody(), new CustomComparator(JSONCompareMode.STRICT,
+                new Customization("id", (actual, expected) -> actual.equals(repository.findAll().get(0).getId().intValue()))));
     }
 
     @Test
@@ -77,30 +120,214 @@ public class IntegrationTests {
     @Sql(statements = "DELETE FROM EMPLOYEES WHERE id = 1", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
     public void should_return_all_employees_when_getAllEmployees() throws JSONException {
         // given
-        String expectedResponse = "[{\"id\":1,\"firstName\":\"John\",\"lastName\":\"Doe\",\"email\":\"John@gmail.com\",\"age\":20,\"phone\":012345678910}]";
+        String expectedResponse = "[{\"id\":1,\"firstName\":\"John\",\"lastName\":\"Doe\",\"email\":\"John@gmail.com\",\"age\":20,\"phone\":012345678910,\"version\":0}]";
 
         // when
+        sqlStatements.reset();
         List<EmployeeData> response = restTemplate.getForObject(baseUrl, List.class);
 
         // then
+        sqlStatements.assertBudget("GET /api/employees", Map.of(QueryType.SELECT, 1));
         assertNotNull(response);
         assertEquals(1, repository.findAll().size());
         assertEquals(1, repository.findAll().size());
         JSONAssert.assertEquals(expectedResponse, response.toString(), true);
     }
 
+    @Test
+    @Sql(statements = {
+            "INSERT INTO EMPLOYEES (id, email_id, first_name, last_name, age, phone) VALUES (1, 'John@Gmail.com', 'John', 'Smith', 20, null)",
+            "INSERT INTO EMPLOYEES (id, email_id, first_name, last_name, age, phone) VALUES (2, 'Jane@gmail.com', 'Jane', 'Smith', 35, null)",
+            "INSERT INTO EMPLOYEES (id, email_id, first_name, last_name, age, phone) VALUES (3, 'Jim@yahoo.com', 'Jim', 'Smith', 40, null)",
+            "INSERT INTO EMPLOYEES (id, email_id, first_name, last_name, age, phone) VALUES (4, 'Tom@gmail.com', 'Tom', 'Cruise', 45, null)"
+    }, executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(statements = "DELETE FROM EMPLOYEES WHERE id IN (1, 2, 3, 4)", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void should_return_matching_employees_in_requested_order_when_getAllEmployees_is_filtered() throws JSONException {
+        // when
+        sqlStatements.reset();
+        String bySmithAndAge = restTemplate.getForObject(baseUrl + "?lastName=Smith&minAge=30&maxAge=40&sort=-age", String.class);
+
+        // then
+        sqlStatements.assertBudget("GET /api/employees?lastName=&minAge=&maxAge=", Map.of(QueryType.SELECT, 1));
+        JSONAssert.assertEquals("[{\"id\":3},{\"id\":2}]", bySmithAndAge, JSONCompareMode.STRICT_ORDER);
+
+        // when
+        // the domain is compared case-insensitively
+        String byDomain = restTemplate.getForObject(baseUrl + "?emailDomain=GMAIL.com&sort=lastName,-firstName", String.class);
+
+        // then
+        JSONAssert.assertEquals("[{\"id\":4},{\"id\":1},{\"id\":2}]", byDomain, JSONCompareMode.STRICT_ORDER);
+        assertThrows(HttpClientErrorException.BadRequest.class,
+                () -> restTemplate.getForObject(baseUrl + "?sort=phone", String.class));
+    }
+
+    @Test
+    @Sql(statements = {
+            "INSERT INTO EMPLOYEES (id, email_id, first_name, last_name, age, phone) VALUES (1, 'John@gmail.com', 'John', 'Smith', 20, null)",
+            "INSERT INTO EMPLOYEES (id, email_id, first_name, last_name, age, phone) VALUES (2, 'Tom@yahoo.com', 'Tom', 'Cruise', 45, null)"
+    }, executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(statements = "DELETE FROM EMPLOYEES WHERE id IN (1, 2)", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void should_return_only_requested_fields_when_getEmployeeFields() throws JSONException {
+        // when
+        sqlStatements.reset();
+        String response = restTemplate.getForObject(baseUrl + "?fields=email,id,phone&sort=-age", String.class);
+
+        // then
+        sqlStatements.assertBudget("GET /api/employees?fields=", Map.of(QueryType.SELECT, 1));
+        JSONAssert.assertEquals("[{\"email\":\"Tom@yahoo.com\",\"id\":2,\"phone\":null},"
+                + "{\"email\":\"John@gmail.com\",\"id\":1,\"phone\":null}]", response, JSONCompareMode.STRICT);
+        JSONAssert.assertEquals("[{\"id\":1}]", restTemplate.getForObject(baseUrl + "?fields=id&emailDomain=gmail.com", String.class),
+                JSONCompareMode.STRICT);
+        assertThrows(HttpClientErrorException.BadRequest.class,
+                () -> restTemplate.getForObject(baseUrl + "?fields=id,salary", String.class));
+    }
+
+    @Test
+    @Sql(statements = "DELETE FROM EMPLOYEES", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void should_insert_once_and_replay_the_response_when_createEmployee_is_retried_with_an_Idempotency_Key() {
+        // given
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Idempotency-Key", "0b7c1e52-retry");
+        HttpEntity<EmployeeData> request = new HttpEntity<>(
+                new EmployeeData.EmployeeDataBuilder(null, "John", "Doe", "John@gmail.com").build(), headers);
+        ResponseEntity<String> created = restTemplate.postForEntity(baseUrl, request, String.class);
+
+        // when
+        sqlStatements.reset();
+        ResponseEntity<String> replayed = restTemplate.postForEntity(baseUrl, request, String.class);
+
+        // then
+        sqlStatements.assertBudget("POST /api/employees replay", Map.of());
+        assertEquals(CREATED, replayed.getStatusCode());
+        assertEquals("true", replayed.getHeaders().getFirst("Idempotent-Replayed"));
+        assertEquals(created.getBody(), replayed.getBody());
+        assertEquals(1, repository.findAll().size());
+    }
+
+    @Test
+    @Sql(statements = "DELETE FROM EMPLOYEES", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void should_return_conflict_without_inserting_when_createEmployee_uses_a_taken_email() {
+        // given
+        restTemplate.postForEntity(baseUrl, new EmployeeData.EmployeeDataBuilder(null, "John", "Doe", "John@gmail.com")
+                .build(), String.class);
+        EmployeeData duplicate = new EmployeeData.EmployeeDataBuilder(null, "Johnny", "Doe", "John@gmail.com").build();
+
+        // when
+        sqlStatements.reset();
+        HttpClientErrorException conflict = assertThrows(HttpClientErrorException.class,
+                () -> restTemplate.postForEntity(baseUrl, duplicate, String.class));
+
+        // then
+        // one indexed lookup because the filter has the email, no INSERT to roll back
+        sqlStatements.assertBudget("POST /api/employees with a taken email", Map.of(QueryType.SELECT, 1));
+        assertEquals(CONFLICT, conflict.getStatusCode());
+        assertEquals(1, repository.findAll().size());
+    }
+
+    @Test
+    @Sql(statements = {
+            "INSERT INTO EMPLOYEES (id, email_id, first_name, last_name, age, phone) VALUES (100000, 'Tom@gmail.com', 'Tom', 'Cruise', 45, '012345678910')",
+            "INSERT INTO EMPLOYEES (id, email_id, first_name, last_name, age, phone) VALUES (100001, 'Ann@gmail.com', 'Ann', 'Lee', 30, null)"
+    }, executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(statements = "DELETE FROM EMPLOYEES", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void should_return_conflict_when_createEmployee_uses_an_email_the_filter_has_not_seen() {
+        // given
+        // @Sql inserted Tom and Ann behind the filter's back, like a write from another instance would. Their ids are
+        // out of the sequence's range, so an insert can only fail on the email
+        EmployeeData duplicateTom = new EmployeeData.EmployeeDataBuilder(null, "Tom", "Cruise", "Tom@gmail.com").build();
+        EmployeeData duplicateAnn = new EmployeeData.EmployeeDataBuilder(null, "Ann", "Lee", "Ann@gmail.com").build();
+
+        // when
+        DuplicateEmailException duplicate = assertThrows(DuplicateEmailException.class,
+                () -> employeeService.createEmployee(duplicateTom));
+        HttpClientErrorException conflict = assertThrows(HttpClientErrorException.class,
+                () -> restTemplate.postForEntity(baseUrl, duplicateAnn, String.class));
+
+        // then
+        assertEquals("Email is already in use: Tom@gmail.com", duplicate.getMessage());
+        assertEquals(CONFLICT, conflict.getStatusCode());
+        assertTrue(emailFilter.mightContain("Tom@gmail.com"));
+        assertTrue(emailFilter.mightContain("Ann@gmail.com"));
+        assertEquals(2, repository.findAll().size());
+    }
+
+    @Test
+    @Sql(statements = "DELETE FROM EMPLOYEES", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void should_serve_stats_that_follow_every_write_without_querying() {
+        // given
+        // @Sql in other tests changes the table behind the statistics' back, so only the difference is checked
+        Map<?, ?> before = restTemplate.getForObject(baseUrl + "/stats", Map.class);
+        restTemplate.postForEntity(baseUrl, new EmployeeData.EmployeeDataBuilder(null, "John", "Doe", "John@stats.example")
+                .setAge(34)
+                .build(), String.class);
+
+        // when
+        sqlStatements.reset();
+        Map<?, ?> after = restTemplate.getForObject(baseUrl + "/stats", Map.class);
+
+        // then
+        sqlStatements.assertBudget("GET /api/employees/stats", Map.of());
+        assertEquals(((Number) before.get("headcount")).longValue() + 1, ((Number) after.get("headcount")).longValue());
+        assertEquals(((Number) ((Map<?, ?>) before.get("ageHistogram")).get("30-39")).longValue() + 1,
+                ((Number) ((Map<?, ?>) after.get("ageHistogram")).get("30-39")).longValue());
+    }
+
+    @Test
+    @Sql(statements = "DELETE FROM EMPLOYEES", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void should_insert_all_employees_when_createEmployees() {
+        // given
+        List<EmployeeData> employees = List.of(
+                new EmployeeData.EmployeeDataBuilder(null, "John", "Doe", "John.Doe@gmail.com").build(),
+                new EmployeeData.EmployeeDataBuilder(null, "Tom", "Cruise", "Tom.Cruise@gmail.com").build(),
+                new EmployeeData.EmployeeDataBuilder(null, "Dan", "Smith", "Dan.Smith@gmail.com").setAge(30).build());
+
+        // when
+        // the test chunk size is 2, so this commits one chunk of 2 and one chunk of 1
+        ResponseEntity<List> response = restTemplate.postForEntity(baseUrl + "/batch", employees, List.class);
+
+        // then
+        assertEquals(CREATED, response.getStatusCode());
+        assertEquals(3, response.getBody().size());
+        assertEquals(3, repository.findAll().size());
+        assertEquals(30, repository.findAll().stream().filter(e -> e.getEmail().equals("Dan.Smith@gmail.com"))
+                .findFirst().orElseThrow().getAge());
+    }
+
+    @Test
+    @Sql(statements = {
+            "INSERT INTO EMPLOYEES (id, email_id, first_name, last_name, age, phone) VALUES (1, 'John@gmail.com', 'John', 'Doe', 20, '012345678910')",
+            "INSERT INTO EMPLOYEES (id, email_id, first_name, last_name, age, phone) VALUES (2, 'Tom@gmail.com', 'Tom', 'Cruise', 45, null)"
+    }, executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(statements = "DELETE FROM EMPLOYEES WHERE id IN (1, 2)", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void should_stream_all_employees_as_ndjson_when_streamAllEmployees() throws JSONException {
+        // when
+        ResponseEntity<String> response = restTemplate.getForEntity(baseUrl + "/stream", String.class);
+
+        // then
+        assertEquals(OK, response.getStatusCode());
+        assertEquals("application/x-ndjson", response.getHeaders().getContentType().toString());
+        String[] lines = response.getBody().split("\n");
+        assertEquals(2, lines.length);
+        JSONAssert.assertEquals("{\"id\":1,\"firstName\":\"John\",\"lastName\":\"Doe\",\"email\":\"John@gmail.com\",\"age\":20,\"phone\":\"012345678910\",\"version\":0}", lines[0], true);
+        JSONAssert.assertEquals("{\"id\":2,\"firstName\":\"Tom\",\"lastName\":\"Cruise\",\"email\":\"Tom@gmail.com\",\"age\":45,\"phone\":null,\"version\":0}", lines[1], true);
+    }
+
     @Test
     @Sql(statements = "INSERT INTO EMPLOYEES (id, email_id, first_name, last_name, age, phone) VALUES (1, 'Tom@gmail.com', 'Tom', 'Cruise', 45, '012345678910')",
             executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
     @Sql(statements = "DELETE FROM EMPLOYEES WHERE id = 1", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
     public void should_return_employee_by_id_when_getEmployeeById() throws JSONException {
         // given
-        String expectedResponse = "{\"id\":1,\"firstName\":\"Tom\",\"lastName\":\"Cruise\",\"email\":\"Tom@gmail.com\",\"age\":45,\"phone\":\"012345678910\"}";
+        String expectedResponse = "{\"id\":1,\"firstName\":\"Tom\",\"lastName\":\"Cruise\",\"email\":\"Tom@gmail.com\",\"age\":45,\"phone\":\"012345678910\",\"version\":0}";
+
+        employeeCache.invalidate(1L);
 
         // when
+        sqlStatements.reset();
         ResponseEntity<String> response = restTemplate.getForEntity(baseUrl + "/{id}", String.class, 1);
 
         // then
+        sqlStatements.assertBudget("GET /api/employees/{id}", Map.of(QueryType.SELECT, 1));
         assertNotNull(response.getBody());
         assertEquals(OK, response.getStatusCode());
         assertEquals(APPLICATION_JSON, response.getHeaders().getContentType());
@@ -119,16 +346,70 @@ public class IntegrationTests {
                 .build();
 
         // when
+        sqlStatements.reset();
         restTemplate.put(baseUrl + "/{id}", employeeDataToBeUpdated, 1);
-        Optional<Employee> updatedEmployee = repository.findById(1L);
 
         // then
+        // a single UPDATE, no SELECT to load the employee first, and the change log INSERT
+        sqlStatements.assertBudget("PUT /api/employees/{id}", Map.of(QueryType.UPDATE, 1, QueryType.INSERT, 1));
+        Optional<Employee> updatedEmployee = repository.findById(1L);
         assertEquals("Tommy", updatedEmployee.orElseThrow().getFirstName());
         assertEquals("Cruise", updatedEmployee.orElseThrow().getLastName());
         assertEquals(50, updatedEmployee.orElseThrow().getAge());
         assertEquals("Tommy@gmail.com", updatedEmployee.orElseThrow().getEmail());
     }
 
+    @Test
+    @Sql(statements = "INSERT INTO EMPLOYEES (id, email_id, first_name, last_name, age, phone) VALUES (1, 'Tom@gmail.com', 'Tom', 'Cruise', 45, '012345678910')",
+            executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(statements = "DELETE FROM EMPLOYEES WHERE id = 1", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void should_reject_update_with_stale_If_Match_when_updateEmployee() {
+        // given
+        EmployeeData employeeDataToBeUpdated = new EmployeeData.EmployeeDataBuilder(1L, "Tommy", "Cruise", "Tommy@gmail.com")
+                .setAge(50)
+                .build();
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfMatch("\"0\"");
+
+        // when
+        ResponseEntity<String> response = restTemplate.exchange(baseUrl + "/{id}", HttpMethod.PUT,
+                new HttpEntity<>(employeeDataToBeUpdated, headers), String.class, 1);
+        // the same If-Match again: the first update moved the employee to version 1
+        HttpClientErrorException conflict = assertThrows(HttpClientErrorException.class, () ->
+                restTemplate.exchange(baseUrl + "/{id}", HttpMethod.PUT,
+                        new HttpEntity<>(employeeDataToBeUpdated, headers), String.class, 1));
+
+        // then
+        assertEquals(OK, response.getStatusCode());
+        assertEquals("\"1\"", response.getHeaders().getETag());
+        assertEquals(PRECONDITION_FAILED, conflict.getStatusCode());
+        assertEquals(1, repository.findById(1L).orElseThrow().getVersion());
+    }
+
+    @Test
+    @Sql(statements = "INSERT INTO EMPLOYEES (id, email_id, first_name, last_name, age, phone) VALUES (1, 'Tom@gmail.com', 'Tom', 'Cruise', 45, '012345678910')",
+            executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(statements = "DELETE FROM EMPLOYEES WHERE id = 1", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void should_return_not_modified_until_employees_change_when_getAllEmployees() {
+        // given
+        String eTag = restTemplate.getForEntity(baseUrl, String.class).getHeaders().getETag();
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(eTag);
+
+        // when
+        sqlStatements.reset();
+        ResponseEntity<String> unchanged = restTemplate.exchange(baseUrl, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+        sqlStatements.assertBudget("GET /api/employees with a current If-None-Match", Map.of());
+        restTemplate.put(baseUrl + "/{id}", new EmployeeData.EmployeeDataBuilder(1L, "Tommy", "Cruise", "Tommy@gmail.com").build(), 1);
+        ResponseEntity<String> changed = restTemplate.exchange(baseUrl, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+
+        // then
+        assertNotNull(eTag);
+        assertEquals(NOT_MODIFIED, unchanged.getStatusCode());
+        assertEquals(OK, changed.getStatusCode());
+        assertNotEquals(eTag, changed.getHeaders().getETag());
+    }
+
     @Test
     @Sql(statements = "INSERT INTO EMPLOYEES (id, email_id, first_name, last_name, age, phone) VALUES (1, 'Tom@gmail.com', 'Tom', 'Cruise', 45, '012345678910')",
             executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
@@ -138,10 +419,60 @@ public class IntegrationTests {
         assertEquals(1, recordCountBeforeDeletion);
 
         // when
+        sqlStatements.reset();
         restTemplate.delete(baseUrl + "/{id}", 1);
 
         // then
+        // a single DELETE, no SELECT to load the employee first, and the change log INSERT
+        sqlStatements.assertBudget("DELETE /api/employees/{id}", Map.of(QueryType.DELETE, 1, QueryType.INSERT, 1));
         int recordCountAfterDeletion = repository.findAll().size();
         assertEquals(0, recordCountAfterDeletion);
     }
+
+    @Test
+    public void should_find_created_employees_until_they_are_deleted_when_searchEmployees() throws JSONException {
+        // given
+        // created through the API so the search index sees them, @Sql inserts would bypass it
+        ResponseEntity<String> created = restTemplate.postForEntity(baseUrl,
+                new EmployeeData.EmployeeDataBuilder(null, "Zelda", "Quartz", "zelda.quartz@example.com").build(), String.class);
+        restTemplate.postForEntity(baseUrl,
+                new EmployeeData.EmployeeDataBuilder(null, "Zeke", "Quill", "zq@example.com").build(), String.class);
+        List<Employee> employees = repository.findAll();
+
+        // when
+        String matches = restTemplate.getForObject(baseUrl + "/search?q={q}", String.class, "zel qua");
+        employees.forEach(employee -> restTemplate.delete(baseUrl + "/{id}", employee.getId()));
+        String afterDelete = restTemplate.getForObject(baseUrl + "/search?q={q}", String.class, "ze");
+
+        // then
+        assertEquals(CREATED, created.getStatusCode());
+        JSONAssert.assertEquals("[{\"firstName\":\"Zelda\",\"lastName\":\"Quartz\",\"email\":\"zelda.quartz@example.com\"}]",
+                matches, JSONCompareMode.LENIENT);
+        assertEquals("[]", afterDelete);
+    }
+
+    @Test
+    @Sql(statements = "INSERT INTO EMPLOYEES (id, email_id, first_name, last_name, age, phone) VALUES (1, 'Tom@gmail.com', 'Tom', 'Cruise', 45, '012345678910')",
+            executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(statements = "DELETE FROM EMPLOYEES WHERE id = 1", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void should_expose_endpoint_service_repository_and_sql_metrics_when_scraping_prometheus() {
+        // given
+        restTemplate.getForEntity(baseUrl, String.class);
+        restTemplate.getForEntity(baseUrl + "/1", String.class);
+
+        // when
+        String metrics = restTemplate.getForObject("http://localhost:" + port + "/actuator/prometheus", String.class);
+
+        // then
+        assertNotNull(metrics);
+        assertTrue(metrics.contains("http_server_requests_seconds_bucket{error=\"none\",exception=\"none\",method=\"GET\",outcome=\"SUCCESS\",status=\"200\",uri=\"/api/employees\""));
+        assertTrue(metrics.contains("ems_service_seconds_count{class=\"com.example.ems.service.impl.EmployeeServiceImpl\",exception=\"none\",method=\"getAllEmployees\""));
+        assertTrue(metrics.contains("spring_data_repository_invocations_seconds_count{exception=\"None\",method=\"findAllAsEmployeeData\",repository=\"EmployeeRepository\",state=\"SUCCESS\""));
+        assertTrue(metrics.contains("ems_http_sql_statements_bucket{method=\"GET\",status=\"200\",uri=\"/api/employees\""));
+        assertTrue(metrics.contains("ems_sql_queries_seconds_count{type=\"select\""));
+        assertTrue(metrics.contains("hikaricp_connections_acquire_seconds_bucket"));
+        assertTrue(metrics.contains("cache_gets_total{cache=\"employees\",result=\"miss\""));
+        assertTrue(metrics.contains("ems_cache_employee_loads_total"));
+        assertTrue(metrics.contains("ems_cache_employee_coalesced_loads_total"));
+    }
 }
@@ -0,0 +1,141 @@
+package com.example.ems.integrationtests;
+
+import com.example.ems.dto.EmployeeData;
+import com.example.ems.snapshot.EmployeeListSnapshot;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The application with the list snapshot on. It is only rebuilt when a test asks for it.
+// RestTemplate doesn't send Accept-Encoding, the requests that take gzip go through java.net.http.HttpClient
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"ems.list-snapshot.enabled=true", "ems.list-snapshot.refresh-interval=1h", "spring.jpa.show-sql=false"})
+@Import(SqlStatementRecorder.class)
+public class ListSnapshotTests {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private EmployeeListSnapshot listSnapshot;
+
+    @Autowired
+    private SqlStatementRecorder sqlStatements;
+
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    @Sql(statements = "DELETE FROM EMPLOYEES", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void should_send_the_current_snapshot_without_querying_the_database() throws Exception {
+        // given
+        create("John", "John@gmail.com");
+        create("Tom", "Tom@gmail.com");
+        listSnapshot.refresh();
+        String list = restTemplate.getForObject(url(""), String.class);
+        sqlStatements.reset();
+
+        // when
+        HttpResponse<byte[]> response = get("", "application/json");
+
+        // then
+        assertEquals(200, response.statusCode());
+        assertEquals(Optional.of("gzip"), response.headers().firstValue("Content-Encoding"));
+        assertEquals(list, gunzip(response.body()));
+        sqlStatements.assertBudget("GET /api/employees from the snapshot", Map.of());
+
+        // a binary format is never answered from the JSON snapshot
+        HttpResponse<byte[]> cbor = get("", "application/cbor");
+        assertEquals(Optional.of("application/cbor"), cbor.headers().firstValue("Content-Type"));
+    }
+
+    @Test
+    @Sql(statements = "DELETE FROM EMPLOYEES", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void should_read_the_list_again_once_the_snapshot_is_stale() throws Exception {
+        // given
+        create("John", "John@gmail.com");
+        listSnapshot.refresh();
+        create("Tom", "Tom@gmail.com");
+
+        // when
+        HttpResponse<byte[]> response = get("", "application/json");
+
+        // then
+        // two employees are under min-response-size, so they aren't compressed either
+        assertEquals(Optional.empty(), response.headers().firstValue("Content-Encoding"));
+        List<?> employees = objectMapper.readValue(response.body(), List.class);
+        assertEquals(2, employees.size());
+    }
+
+    @Test
+    @Sql(statements = "DELETE FROM EMPLOYEES", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void should_only_compress_responses_over_the_minimum_size() throws Exception {
+        // given
+        List<EmployeeData> batch = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            batch.add(new EmployeeData.EmployeeDataBuilder(null, "First" + i, "Last" + i, "employee" + i + "@gmail.com")
+                    .setAge(30)
+                    .setPhone("012345678910")
+                    .build());
+        }
+        List<?> created = restTemplate.postForObject(url("/batch"), batch, List.class);
+        Object id = ((Map<?, ?>) created.get(0)).get("id");
+
+        // when
+        HttpResponse<byte[]> list = get("", "application/json");
+        HttpResponse<byte[]> single = get("/" + id, "application/json");
+
+        // then
+        assertEquals(Optional.of("gzip"), list.headers().firstValue("Content-Encoding"));
+        assertEquals(50, objectMapper.readValue(gunzip(list.body()), List.class).size());
+        assertEquals(Optional.empty(), single.headers().firstValue("Content-Encoding"));
+        assertTrue(new String(single.body(), StandardCharsets.UTF_8).contains("employee0@gmail.com"));
+    }
+
+    private void create(String firstName, String email) {
+        restTemplate.postForObject(url(""), new EmployeeData.EmployeeDataBuilder(null, firstName, "Doe", email).build(),
+                Map.class);
+    }
+
+    private HttpResponse<byte[]> get(String path, String accept) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url(path)))
+                .header("Accept", accept)
+                .header("Accept-Encoding", "gzip")
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private static String gunzip(byte[] body) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private String url(String path) {
+        return "http://localhost:" + port + "/api/employees" + path;
+    }
+}
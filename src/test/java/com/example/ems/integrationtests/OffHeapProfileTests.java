@@ -0,0 +1,140 @@
+package com.example.ems.integrationtests;
+
+import com.example.ems.dto.EmployeeData;
+import com.example.ems.service.EmployeeService;
+import com.example.ems.service.impl.OffHeapEmployeeService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.http.HttpStatus.CONFLICT;
+import static org.springframework.http.HttpStatus.NOT_FOUND;
+import static org.springframework.http.HttpStatus.NOT_IMPLEMENTED;
+import static org.springframework.http.HttpStatus.PRECONDITION_FAILED;
+
+// The application in the offheap profile: no data source at all, employees live in the off-heap store. There is no
+// table to clear between tests, so every test deletes what it created
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles(OffHeapEmployeeService.PROFILE)
+public class OffHeapProfileTests {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Autowired
+    private EmployeeService employeeService;
+
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    @AfterEach
+    public void deleteEmployees() {
+        employeeService.getAllEmployees().forEach(employee -> employeeService.deleteEmployee(employee.getId()));
+    }
+
+    @Test
+    public void should_run_without_a_database() {
+        // then
+        assertInstanceOf(OffHeapEmployeeService.class, employeeService);
+        assertEquals(0, context.getBeanNamesForType(DataSource.class).length);
+    }
+
+    @Test
+    public void should_create_update_and_delete_employees() {
+        // given
+        Object id = restTemplate.postForObject(url(""), employee("John", "John@gmail.com", null), Map.class).get("id");
+        restTemplate.postForObject(url(""), employee("Tom", "Tom@gmail.com", null), Map.class);
+
+        // when
+        ResponseEntity<Map> updated = restTemplate.exchange(url("/" + id), HttpMethod.PUT,
+                ifMatch(employee("Johnny", "Johnny@gmail.com", null), "\"0\""), Map.class);
+
+        // then
+        assertEquals("\"1\"", updated.getHeaders().getETag());
+        assertEquals("Johnny", restTemplate.getForObject(url("/" + id), Map.class).get("firstName"));
+        HttpClientErrorException stale = assertThrows(HttpClientErrorException.class, () -> restTemplate.exchange(
+                url("/" + id), HttpMethod.PUT, ifMatch(employee("John", "John@gmail.com", null), "\"0\""), Map.class));
+        assertEquals(PRECONDITION_FAILED, stale.getStatusCode());
+        HttpClientErrorException duplicate = assertThrows(HttpClientErrorException.class,
+                () -> restTemplate.postForObject(url(""), employee("Tommy", "tom@GMAIL.com", null), Map.class));
+        assertEquals(CONFLICT, duplicate.getStatusCode());
+
+        // when
+        restTemplate.delete(url("/" + id));
+
+        // then
+        HttpClientErrorException deleted = assertThrows(HttpClientErrorException.class,
+                () -> restTemplate.getForObject(url("/" + id), Map.class));
+        assertEquals(NOT_FOUND, deleted.getStatusCode());
+        assertEquals(1, restTemplate.getForObject(url(""), List.class).size());
+    }
+
+    @Test
+    public void should_filter_sort_and_page_in_memory() {
+        // given
+        List<EmployeeData> batch = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            batch.add(employee("First" + i, "employee" + i + (i % 2 == 0 ? "@gmail.com" : "@yahoo.com"), 20 + i));
+        }
+        restTemplate.postForObject(url("/batch"), batch, List.class);
+
+        // when
+        List<Map<String, Object>> filtered = restTemplate.exchange(url("?emailDomain=GMAIL.com&minAge=21&sort=-age"),
+                HttpMethod.GET, null, new ParameterizedTypeReference<List<Map<String, Object>>>() {
+                }).getBody();
+        Map<?, ?> firstPage = restTemplate.getForObject(url("?size=2"), Map.class);
+        Map<?, ?> secondPage = restTemplate.getForObject(url("?size=2&cursor=" + firstPage.get("nextCursor")), Map.class);
+
+        // then
+        assertEquals(List.of(24, 22), filtered.stream().map(employee -> employee.get("age")).toList());
+        assertEquals(2, ((List<?>) firstPage.get("content")).size());
+        assertEquals("First2", ((Map<?, ?>) ((List<?>) secondPage.get("content")).get(0)).get("firstName"));
+        assertEquals(5, ((Number) restTemplate.getForObject(url("/stats"), Map.class).get("headcount")).intValue());
+    }
+
+    @Test
+    public void should_answer_501_for_the_change_log() {
+        // when
+        HttpServerErrorException changes = assertThrows(HttpServerErrorException.class,
+                () -> restTemplate.getForObject(url("/changes?since=0"), String.class));
+
+        // then
+        assertEquals(NOT_IMPLEMENTED, changes.getStatusCode());
+    }
+
+    private static EmployeeData employee(String firstName, String email, Integer age) {
+        return new EmployeeData.EmployeeDataBuilder(null, firstName, "Doe", email).setAge(age).build();
+    }
+
+    private static HttpEntity<EmployeeData> ifMatch(EmployeeData employeeData, String eTag) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfMatch(eTag);
+        return new HttpEntity<>(employeeData, headers);
+    }
+
+    private String url(String path) {
+        return "http://localhost:" + port + "/api/employees" + path;
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.ems.integrationtests;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.QueryType;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.listener.QueryUtils;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Counts the statements run on the data source by type, so a test can hold an endpoint to its statement budget.
+// The data source wrapper in MetricsConfig picks it up like any other QueryExecutionListener bean
+public class SqlStatementRecorder implements QueryExecutionListener {
+
+    private final Map<QueryType, Integer> statements = new EnumMap<>(QueryType.class);
+
+    public synchronized void reset() {
+        statements.clear();
+    }
+
+    // fails unless exactly the given statements ran since the last reset, e.g. assertBudget(Map.of(SELECT, 1))
+    public synchronized void assertBudget(String endpoint, Map<QueryType, Integer> budget) {
+        assertEquals(budget, new HashMap<>(statements),
+                endpoint + " went over its statement budget");
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    }
+
+    @Override
+    public synchronized void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        for (QueryInfo queryInfo : queryInfoList) {
+            statements.merge(QueryUtils.getQueryType(queryInfo.getQuery()), 1, Integer::sum);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.ems.integrationtests;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.jdbc.Sql;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The application with ems.threads.virtual=true: requests and the service and repository calls they make run on
+// virtual threads, and none of them pins its carrier thread by blocking inside synchronized code. The database is H2,
+// so this says nothing about the MySQL driver's own locking
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"ems.threads.virtual=true", "spring.jpa.show-sql=false"})
+public class VirtualThreadsTests {
+
+    private static final int CONCURRENT_REQUESTS = 200;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ThreadRecorder threadRecorder;
+
+    private final HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    @Test
+    @Sql(statements = "INSERT INTO EMPLOYEES (id, email_id, first_name, last_name, age, phone) VALUES (1, 'Tom@gmail.com', 'Tom', 'Cruise', 45, '012345678910')",
+            executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(statements = "DELETE FROM EMPLOYEES", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void should_run_requests_and_their_SQL_on_virtual_threads() throws Exception {
+        // given
+        threadRecorder.threads.clear();
+
+        // when
+        HttpResponse<String> response = httpClient.send(get("/api/employees"), HttpResponse.BodyHandlers.ofString());
+
+        // then
+        assertEquals(200, response.statusCode());
+        assertEquals(Set.of(true), threadRecorder.threads);
+    }
+
+    @Test
+    // well above the ids the sequence hands to the employees created here
+    @Sql(statements = "INSERT INTO EMPLOYEES (id, email_id, first_name, last_name, age, phone) VALUES (100000, 'Tom@gmail.com', 'Tom', 'Cruise', 45, '012345678910')",
+            executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(statements = "DELETE FROM EMPLOYEES", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void should_not_pin_carrier_threads_when_many_requests_run_at_once() throws Exception {
+        // given
+        List<String> pinned = new CopyOnWriteArrayList<>();
+        List<Integer> statuses = new ArrayList<>();
+
+        // when
+        try (RecordingStream recording = new RecordingStream();
+             ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            recording.onEvent("jdk.VirtualThreadPinned", event -> pinned.add(describe(event)));
+            recording.startAsync();
+
+            List<Future<HttpResponse<String>>> responses = new ArrayList<>();
+            for (int i = 0; i < CONCURRENT_REQUESTS; i++) {
+                HttpRequest request = switch (i % 4) {
+                    case 0 -> get("/api/employees/100000");
+                    case 1 -> get("/api/employees?size=10&page=0");
+                    case 2 -> put("/api/employees/100000", "{\"firstName\":\"Tom\",\"lastName\":\"Cruise\",\"email\":\"Tom@gmail.com\",\"age\":" + i + "}");
+                    default -> post("/api/employees", "{\"firstName\":\"Dan\",\"lastName\":\"Smith\",\"email\":\"Dan" + i + "@gmail.com\"}");
+                };
+                responses.add(clients.submit(() -> httpClient.send(request, HttpResponse.BodyHandlers.ofString())));
+            }
+            for (Future<HttpResponse<String>> response : responses) {
+                statuses.add(response.get().statusCode());
+            }
+            recording.stop();
+        }
+
+        // then
+        assertTrue(statuses.stream().allMatch(status -> status < 400), "Failed requests: " + statuses);
+        assertTrue(pinned.isEmpty(), "Virtual threads were pinned:\n" + String.join("\n\n", pinned));
+    }
+
+    private static String describe(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return event.getThread().getJavaName() + " for " + event.getDuration();
+        }
+        return event.getThread().getJavaName() + " for " + event.getDuration() + "\n" + event.getStackTrace().getFrames().stream()
+                .map(RecordedFrame::getMethod)
+                .map(method -> "  at " + method.getType().getName() + "." + method.getName())
+                .collect(Collectors.joining("\n"));
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).GET().build();
+    }
+
+    private HttpRequest put(String path, String json) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private HttpRequest post(String path, String json) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    // records whether the threads running SQL are virtual
+    @TestConfiguration
+    static class ThreadRecorderConfig {
+
+        @Bean
+        ThreadRecorder threadRecorder() {
+            return new ThreadRecorder();
+        }
+    }
+
+    static class ThreadRecorder implements QueryExecutionListener {
+
+        final Set<Boolean> threads = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+            threads.add(Thread.currentThread().isVirtual());
+        }
+
+        @Override
+        public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        }
+    }
+}
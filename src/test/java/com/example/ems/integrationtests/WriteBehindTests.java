@@ -0,0 +1,202 @@
+package com.example.ems.integrationtests;
+
+import com.example.ems.dto.EmployeeData;
+import com.example.ems.writebehind.WriteBehindBuffer;
+import net.ttddyy.dsproxy.QueryType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.HttpStatus.PRECONDITION_FAILED;
+
+// The application with ems.write-behind.enabled=true. The interval is long enough that nothing is flushed unless the
+// test asks for it or flush-size employees are pending
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"ems.write-behind.enabled=true", "ems.write-behind.flush-interval=1h",
+                "ems.write-behind.flush-size=3", "spring.jpa.show-sql=false"})
+@Import(SqlStatementRecorder.class)
+public class WriteBehindTests {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRepository repository;
+
+    @Autowired
+    private WriteBehindBuffer writeBehind;
+
+    @Autowired
+    private SqlStatementRecorder sqlStatements;
+
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    // nothing a test buffered may leak into the next one
+    @AfterEach
+    public void flushBuffer() {
+        while (writeBehind.flush() > 0) {
+        }
+    }
+
+    @Test
+    @Sql(statements = {
+            "INSERT INTO EMPLOYEES (id, email_id, first_name, last_name, age, phone) VALUES (1, 'John@gmail.com', 'John', 'Doe', 20, null)",
+            "INSERT INTO EMPLOYEES (id, email_id, first_name, last_name, age, phone) VALUES (2, 'Tom@gmail.com', 'Tom', 'Cruise', 45, null)"
+    }, executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(statements = "DELETE FROM EMPLOYEES", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void should_serve_buffered_updates_until_they_are_written_in_one_batch() {
+        // given
+        put(1, "John", 30);
+        put(1, "John", 31);
+        put(2, "Tom", 46);
+
+        // when
+        Map<?, ?> buffered = restTemplate.getForObject(url("/1"), Map.class);
+        Integer storedAge = repository.findById(1L).orElseThrow().getAge();
+        sqlStatements.reset();
+        int flushed = writeBehind.flush();
+
+        // then
+        assertEquals(31, buffered.get("age"));
+        assertEquals(20, storedAge);
+        assertEquals(2, flushed);
+        // one JDBC batch of updates and one of change log inserts
+        sqlStatements.assertBudget("write-behind flush", Map.of(QueryType.UPDATE, 1, QueryType.INSERT, 1));
+        assertEquals(31, repository.findById(1L).orElseThrow().getAge());
+        assertEquals(1L, repository.findById(1L).orElseThrow().getVersion());
+        assertEquals(46, repository.findById(2L).orElseThrow().getAge());
+        assertEquals(0, writeBehind.getPendingCount());
+    }
+
+    @Test
+    @Sql(statements = "INSERT INTO EMPLOYEES (id, email_id, first_name, last_name, age, phone) VALUES (1, 'John@gmail.com', 'John', 'Doe', 20, null)",
+            executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(statements = "DELETE FROM EMPLOYEES", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void should_write_the_buffered_update_before_a_conditional_update_or_delete() {
+        // given
+        put(1, "John", 30);
+
+        // when
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfMatch("\"0\"");
+        EmployeeData update = new EmployeeData.EmployeeDataBuilder(1L, "John", "Doe", "John@gmail.com").setAge(40).build();
+
+        // then
+        // the buffered update moved the employee to version 1 before the conditional update ran
+        HttpClientErrorException conflict = assertThrows(HttpClientErrorException.class, () -> restTemplate.exchange(url("/1"),
+                HttpMethod.PUT, new HttpEntity<>(update, headers), String.class));
+        assertEquals(PRECONDITION_FAILED, conflict.getStatusCode());
+        assertEquals(30, repository.findById(1L).orElseThrow().getAge());
+
+        // when
+        put(1, "John", 50);
+        restTemplate.delete(url("/1"));
+
+        // then
+        assertFalse(repository.existsById(1L));
+        assertEquals(0, writeBehind.getPendingCount());
+    }
+
+    @Test
+    @Sql(statements = "INSERT INTO EMPLOYEES (id, email_id, first_name, last_name, age, phone) VALUES (1, 'John@gmail.com', 'John', 'Doe', 20, null)",
+            executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(statements = "DELETE FROM EMPLOYEES", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void should_drain_the_buffer_when_stopped_and_write_synchronously_until_restarted() {
+        // given
+        put(1, "John", 30);
+
+        // when
+        writeBehind.stop();
+        try {
+            put(1, "John", 31);
+
+            // then
+            assertEquals(31, repository.findById(1L).orElseThrow().getAge());
+            assertEquals(0, writeBehind.getPendingCount());
+        } finally {
+            writeBehind.start();
+        }
+    }
+
+    @Test
+    @Sql(statements = {
+            "INSERT INTO EMPLOYEES (id, email_id, first_name, last_name, age, phone) VALUES (1, 'John@gmail.com', 'John', 'Doe', 20, null)",
+            "INSERT INTO EMPLOYEES (id, email_id, first_name, last_name, age, phone) VALUES (2, 'Tom@gmail.com', 'Tom', 'Cruise', 45, null)"
+    }, executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(statements = "DELETE FROM EMPLOYEES", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void should_drop_only_the_updates_the_database_rejects() {
+        // given
+        restTemplate.put(url("/1"), new EmployeeData.EmployeeDataBuilder(1L, "John", "Doe", "Shared@gmail.com")
+                .setAge(30)
+                .build());
+        // neither update is in the database yet, so the email check lets both through and only the unique constraint
+        // catches them when the batch is written
+        restTemplate.put(url("/2"), new EmployeeData.EmployeeDataBuilder(2L, "Tom", "Cruise", "Shared@gmail.com").build());
+
+        // when
+        int flushed = writeBehind.flush();
+
+        // then
+        assertEquals(2, flushed);
+        assertEquals(0, writeBehind.getPendingCount());
+        assertEquals(30, repository.findById(1L).orElseThrow().getAge());
+        assertEquals("Shared@gmail.com", repository.findById(1L).orElseThrow().getEmail());
+        assertEquals("Tom@gmail.com", repository.findById(2L).orElseThrow().getEmail());
+        assertEquals("Tom@gmail.com", restTemplate.getForObject(url("/2"), Map.class).get("email"));
+    }
+
+    @Test
+    @Sql(statements = "INSERT INTO EMPLOYEES (id, email_id, first_name, last_name, age, phone) VALUES (1, 'John@gmail.com', 'John', 'Doe', 20, null)",
+            executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(statements = "DELETE FROM EMPLOYEES", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void should_move_the_list_etag_on_once_a_buffered_update_is_written() {
+        // given
+        put(1, "John", 30);
+        ResponseEntity<List> buffered = restTemplate.getForEntity(url(""), List.class);
+
+        // when
+        writeBehind.flush();
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(buffered.getHeaders().getETag());
+        ResponseEntity<List> written = restTemplate.exchange(url(""), HttpMethod.GET, new HttpEntity<>(headers), List.class);
+
+        // then
+        // lists read the database, the buffered update only shows up in them once it is written
+        assertEquals(20, ((Map<?, ?>) buffered.getBody().get(0)).get("age"));
+        assertEquals(OK, written.getStatusCode());
+        assertEquals(30, ((Map<?, ?>) written.getBody().get(0)).get("age"));
+    }
+
+    @Test
+    public void should_not_buffer_updates_of_missing_employees() {
+        assertThrows(HttpClientErrorException.NotFound.class, () -> put(404, "Nobody", 30));
+        assertEquals(0, writeBehind.getPendingCount());
+    }
+
+    private void put(long id, String firstName, int age) {
+        restTemplate.put(url("/" + id), new EmployeeData.EmployeeDataBuilder(id, firstName, "Doe", firstName + "@gmail.com")
+                .setAge(age)
+                .build());
+    }
+
+    private String url(String path) {
+        return "http://localhost:" + port + "/api/employees" + path;
+    }
+}